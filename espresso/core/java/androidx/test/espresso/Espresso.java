@@ -37,8 +37,11 @@ import android.view.Choreographer;
 import android.view.View;
 import android.view.ViewConfiguration;
 import androidx.annotation.CheckResult;
+import androidx.test.annotation.ExperimentalTestApi;
 import androidx.test.espresso.action.ViewActions;
 import androidx.test.espresso.base.IdlingResourceRegistry;
+import androidx.test.espresso.base.ViewIndex;
+import androidx.test.espresso.matcher.ViewMatchers;
 import androidx.test.espresso.util.TracingUtil;
 import androidx.test.espresso.util.TreeIterables;
 import androidx.test.espresso.util.concurrent.ListenableFutureTask;
@@ -191,6 +194,22 @@ public final class Espresso {
     BASE.failureHolder().update(checkNotNull(failureHandler));
   }
 
+  /**
+   * Enables or disables indexing of the view hierarchy for {@link #onView} lookups.
+   *
+   * <p>When enabled, view lookups which use {@link ViewMatchers#withId(int)} or {@link
+   * ViewMatchers#isAssignableFrom(Class)} directly are resolved against an index of the current
+   * root, which is built once and reused until the next layout or draw pass of that root. This
+   * speeds up tests which issue many lookups against an unchanged screen.
+   *
+   * <p>Hierarchy changes which trigger neither a layout nor a draw, such as changing a view's id
+   * without requesting a layout, are not observed while indexing is enabled.
+   */
+  @ExperimentalTestApi
+  public static void setViewIndexingEnabled(boolean enabled) {
+    ViewIndex.setEnabled(enabled);
+  }
+
   /**
    * ******************************** Top Level Actions *****************************************
    */
@@ -19,6 +19,7 @@ package androidx.test.espresso;
 import android.os.SystemClock;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
+import androidx.test.annotation.ExperimentalTestApi;
 import java.util.Iterator;
 
 /**
@@ -87,6 +88,23 @@ public interface UiController {
    */
   boolean injectString(String str) throws InjectEventSecurityException;
 
+  /**
+   * Types a string into the application like {@link #injectString(String)}, but injects all the
+   * key events of the string as a single batch and synchronizes with the main thread once for the
+   * whole string rather than once per key event.
+   *
+   * <p>Implementations which do not support batching fall back to {@link #injectString(String)}.
+   *
+   * @param str the (non-null!) string to type
+   * @return true if the string was injected, false otherwise
+   * @throws InjectEventSecurityException if the events couldn't be injected because it would
+   *     interact with another application.
+   */
+  @ExperimentalTestApi
+  default boolean injectStringInBulk(String str) throws InjectEventSecurityException {
+    return injectString(str);
+  }
+
   /**
    * Loops the main thread until the application goes idle.
    *
@@ -54,6 +54,9 @@ public final class TypeTextAction implements ViewAction {
   // The click action to use when tapping to focus is needed before typing in text.
   @Nullable final GeneralClickAction clickAction;
 
+  // Whether the string is injected with UiController#injectStringInBulk.
+  final boolean inBulk;
+
   /**
    * Constructs {@link TypeTextAction} with given string. If the string is empty it results in no-op
    * (nothing is typed). By default this action sends a tap event to the center of the view to
@@ -89,10 +92,19 @@ public final class TypeTextAction implements ViewAction {
    */
   public TypeTextAction(
       String stringToBeTyped, boolean tapToFocus, GeneralClickAction clickAction) {
+    this(stringToBeTyped, tapToFocus, clickAction, false);
+  }
+
+  TypeTextAction(
+      String stringToBeTyped,
+      boolean tapToFocus,
+      @Nullable GeneralClickAction clickAction,
+      boolean inBulk) {
     checkNotNull(stringToBeTyped);
     this.stringToBeTyped = stringToBeTyped;
     this.tapToFocus = tapToFocus;
     this.clickAction = clickAction;
+    this.inBulk = inBulk;
   }
 
   @SuppressWarnings("unchecked")
@@ -132,7 +144,11 @@ public final class TypeTextAction implements ViewAction {
     }
 
     try {
-      if (!uiController.injectString(stringToBeTyped)) {
+      boolean injected =
+          inBulk
+              ? uiController.injectStringInBulk(stringToBeTyped)
+              : uiController.injectString(stringToBeTyped);
+      if (!injected) {
         Log.e(TAG, "Failed to type text: " + stringToBeTyped);
         throw new PerformException.Builder()
             .withActionDescription(this.getDescription())
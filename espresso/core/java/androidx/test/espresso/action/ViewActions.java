@@ -30,6 +30,7 @@ import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import androidx.annotation.NonNull;
+import androidx.test.annotation.ExperimentalTestApi;
 import androidx.test.espresso.PerformException;
 import androidx.test.espresso.UiController;
 import androidx.test.espresso.ViewAction;
@@ -454,6 +455,18 @@ public final class ViewActions {
     return actionWithAssertions(new TypeTextAction(stringToBeTyped));
   }
 
+  /**
+   * Same as {@link #typeText(String)}, but injects the key events of the whole string as a single
+   * batch and waits for the application to become idle once, instead of after every key event. This
+   * makes typing long strings considerably faster, at the cost of the application not going idle
+   * between two characters.
+   */
+  @ExperimentalTestApi
+  public static ViewAction typeTextInBulk(String stringToBeTyped) {
+    return actionWithAssertions(
+        new TypeTextAction(stringToBeTyped, true /* tapToFocus */, null, true /* inBulk */));
+  }
+
   /**
    * Returns an action that updates the text attribute of a view. <br>
    * <br>
@@ -16,6 +16,7 @@
 
 package androidx.test.espresso.base;
 
+import android.os.SystemClock;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import androidx.test.espresso.InjectEventSecurityException;
@@ -46,4 +47,32 @@ interface EventInjectionStrategy {
    *     screen that is not owned by the application under test.
    */
   boolean injectMotionEvent(MotionEvent me, boolean sync) throws InjectEventSecurityException;
+
+  /**
+   * Injects the given {@link MotionEvent}s in order, as a single gesture.
+   *
+   * <p>Each event is injected no earlier than its event time shifted by {@code timeShiftMillis}.
+   * All events but the last are injected asynchronously and the last one in synchronized mode.
+   * This method sleeps between events and must not be called from the UI thread.
+   *
+   * @param events The events to inject, ordered by event time
+   * @param timeShiftMillis The difference between {@link SystemClock#uptimeMillis()} and the time
+   *     base of the events
+   * @return {@code true} if every event was injected successfully, {@code false} otherwise.
+   * @throws InjectEventSecurityException if one of the events would be delivered to an area of the
+   *     screen that is not owned by the application under test.
+   */
+  default boolean injectMotionEventSequence(MotionEvent[] events, long timeShiftMillis)
+      throws InjectEventSecurityException {
+    boolean success = true;
+    for (int i = 0; i < events.length; i++) {
+      MotionEvent event = events[i];
+      long timeUntilDesired = event.getEventTime() + timeShiftMillis - SystemClock.uptimeMillis();
+      if (timeUntilDesired > 10) {
+        SystemClock.sleep(timeUntilDesired);
+      }
+      success &= injectMotionEvent(event, i == events.length - 1);
+    }
+    return success;
+  }
 }
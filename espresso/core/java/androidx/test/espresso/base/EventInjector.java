@@ -95,4 +95,9 @@ final class EventInjector {
   boolean injectMotionEventAsync(MotionEvent event) throws InjectEventSecurityException {
     return injectionStrategy.injectMotionEvent(event, false);
   }
+
+  boolean injectMotionEventSequence(MotionEvent[] events, long timeShiftMillis)
+      throws InjectEventSecurityException {
+    return injectionStrategy.injectMotionEventSequence(events, timeShiftMillis);
+  }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Aggregates how long Espresso waited on each source of idleness: the AsyncTask and compat pools,
+ * the main looper, and every registered {@link androidx.test.espresso.IdlingResource}.
+ *
+ * <p>Every wait is recorded as a single sample in a histogram of its source, with buckets growing
+ * by powers of four from 1ms to 1s. Recording is disabled by default and costs a single volatile
+ * read when disabled.
+ *
+ * <p>Samples are recorded on the main thread and drained from the instrumentation thread.
+ */
+final class IdleWaitProfile {
+
+  static final String ASYNC_TASKS = "AsyncTasks";
+  static final String COMPAT_TASKS = "CompatTasks";
+  static final String MAIN_LOOPER = "MainLooper";
+  static final String IDLING_RESOURCES = "IdlingResources";
+  static final String IDLING_RESOURCE_PREFIX = "IdlingResource:";
+
+  /** Exclusive upper bounds of the histogram buckets, the last bucket being unbounded. */
+  private static final long[] BUCKET_BOUNDS_MS = {1, 4, 16, 64, 256, 1024};
+
+  private static volatile boolean enabled = false;
+
+  private static final Object lock = new Object();
+  private static Map<String, Histogram> histograms = new LinkedHashMap<>();
+
+  private IdleWaitProfile() {}
+
+  static void setEnabled(boolean enabled) {
+    IdleWaitProfile.enabled = enabled;
+  }
+
+  static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Records that Espresso waited {@code waitMs} on {@code source}, if profiling is enabled. */
+  static void record(String source, long waitMs) {
+    if (!enabled) {
+      return;
+    }
+    synchronized (lock) {
+      Histogram histogram = histograms.get(source);
+      if (histogram == null) {
+        histogram = new Histogram();
+        histograms.put(source, histogram);
+      }
+      histogram.add(waitMs);
+    }
+  }
+
+  /** Returns the histograms recorded since the previous call, keyed by source. */
+  static Map<String, Histogram> drain() {
+    synchronized (lock) {
+      Map<String, Histogram> drained = histograms;
+      histograms = new LinkedHashMap<>();
+      return drained;
+    }
+  }
+
+  /** Returns the tab separated header line matching {@link Histogram#toString()}. */
+  static String header() {
+    StringBuilder header = new StringBuilder("count\ttotal_ms\tmax_ms");
+    long lower = 0;
+    for (long bound : BUCKET_BOUNDS_MS) {
+      header.append(String.format(Locale.ROOT, "\t[%d,%d)ms", lower, bound));
+      lower = bound;
+    }
+    header.append(String.format(Locale.ROOT, "\t[%d,)ms", lower));
+    return header.toString();
+  }
+
+  /** The distribution of the waits recorded for a single source. */
+  static final class Histogram {
+    private long count;
+    private long totalMs;
+    private long maxMs;
+    private final long[] buckets = new long[BUCKET_BOUNDS_MS.length + 1];
+
+    void add(long waitMs) {
+      count++;
+      totalMs += waitMs;
+      maxMs = Math.max(maxMs, waitMs);
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_MS.length && waitMs >= BUCKET_BOUNDS_MS[bucket]) {
+        bucket++;
+      }
+      buckets[bucket]++;
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    long getTotalMs() {
+      return totalMs;
+    }
+
+    long getMaxMs() {
+      return maxMs;
+    }
+
+    long getBucketCount(int bucket) {
+      return buckets[bucket];
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder line = new StringBuilder();
+      line.append(count).append('\t').append(totalMs).append('\t').append(maxMs);
+      for (long bucketCount : buckets) {
+        line.append('\t').append(bucketCount);
+      }
+      return line.toString();
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.internal.util.Checks.checkNotNull;
+
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+import androidx.test.annotation.ExperimentalTestApi;
+import androidx.test.platform.io.PlatformTestStorage;
+import androidx.test.platform.io.PlatformTestStorageRegistry;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * A {@link RunListener} which profiles how long Espresso waits on each source of idleness
+ * (AsyncTask and compat pools, the main looper and every registered idling resource) and writes
+ * the aggregated histograms of every test to the {@value #OUTPUT_FILE} test output file at the end
+ * of the run.
+ *
+ * <p>Register it with the {@code listener} instrumentation argument:
+ *
+ * <pre>
+ *   -e listener androidx.test.espresso.base.IdleWaitProfileListener
+ * </pre>
+ *
+ * <p>The output file holds one tab separated line per test and source, with the number of waits,
+ * their total and maximum duration in milliseconds and the number of waits in each bucket. It is
+ * appended to, so runs split across processes (e.g. by the orchestrator) share a single file.
+ */
+@ExperimentalTestApi
+public final class IdleWaitProfileListener extends RunListener {
+  private static final String TAG = IdleWaitProfileListener.class.getSimpleName();
+
+  static final String OUTPUT_FILE = "espresso_idle_wait_profile.tsv";
+
+  private final PlatformTestStorage testStorage;
+  private final Map<String, Map<String, IdleWaitProfile.Histogram>> profiles =
+      new LinkedHashMap<>();
+
+  public IdleWaitProfileListener() {
+    this(PlatformTestStorageRegistry.getInstance());
+  }
+
+  @VisibleForTesting
+  IdleWaitProfileListener(PlatformTestStorage testStorage) {
+    this.testStorage = checkNotNull(testStorage);
+  }
+
+  @Override
+  public void testRunStarted(Description description) {
+    IdleWaitProfile.setEnabled(true);
+  }
+
+  @Override
+  public void testStarted(Description description) {
+    // Drop waits recorded outside of a test, e.g. in class level setup.
+    IdleWaitProfile.drain();
+  }
+
+  @Override
+  public void testFinished(Description description) {
+    Map<String, IdleWaitProfile.Histogram> profile = IdleWaitProfile.drain();
+    if (!profile.isEmpty()) {
+      profiles.put(description.getClassName() + "#" + description.getMethodName(), profile);
+    }
+  }
+
+  @Override
+  public void testRunFinished(Result result) {
+    IdleWaitProfile.setEnabled(false);
+    IdleWaitProfile.drain();
+    if (profiles.isEmpty()) {
+      return;
+    }
+    try (OutputStream out = testStorage.openOutputFile(OUTPUT_FILE, /* append= */ true)) {
+      Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+      writer.write("test\tsource\t" + IdleWaitProfile.header() + "\n");
+      for (Map.Entry<String, Map<String, IdleWaitProfile.Histogram>> test : profiles.entrySet()) {
+        for (Map.Entry<String, IdleWaitProfile.Histogram> source : test.getValue().entrySet()) {
+          writer.write(test.getKey() + "\t" + source.getKey() + "\t" + source.getValue() + "\n");
+        }
+      }
+      writer.flush();
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write the idle wait profile", e);
+    }
+    profiles.clear();
+  }
+}
@@ -26,6 +26,7 @@ import static kotlin.collections.CollectionsKt.toMutableList;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.test.espresso.IdlingPolicies;
@@ -38,9 +39,12 @@ import androidx.test.platform.tracing.Tracer.Span;
 import androidx.test.platform.tracing.Tracing;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -76,8 +80,14 @@ public final class IdlingResourceRegistry {
         public void resourcesHaveTimedOut(List<String> busys) {}
       };
 
-  // IdlingStates should only be accessed on main thread
-  private final List<IdlingState> idlingStates = new ArrayList<>();
+  // IdlingStates should only be accessed on main thread, keyed by resource name in registration
+  // order.
+  private final Map<String, IdlingState> idlingStates = new LinkedHashMap<>();
+  // The registered resources which are not known to be idle, maintained as resources go busy and
+  // transition back to idle. Only accessed on main thread.
+  private final Set<IdlingState> busyStates = new LinkedHashSet<>();
+  // IdlingResources of the loopers synced so far. Only accessed on main thread.
+  private final Map<Looper, IdlingResource> looperResources = new HashMap<>();
   private final Looper looper;
   private final Handler handler;
   private final Dispatcher dispatcher;
@@ -111,6 +121,10 @@ public final class IdlingResourceRegistry {
             }
           });
     } else {
+      if (isInSync(resources, loopers)) {
+        // Nothing was registered or unregistered since the last sync.
+        return;
+      }
       Map<String, IdlingResource> resourcesToRegister = new HashMap<>();
 
       // Add everything from resources
@@ -125,7 +139,7 @@ public final class IdlingResourceRegistry {
       // Convert all Loopers into IdlingResources and add them to the list of resourcesToRegister
       // in order for them to be considered part of the syncing logic.
       for (Looper looper : loopers) {
-        IdlingResource resource = LooperIdlingResourceInterrogationHandler.forLooper(looper);
+        IdlingResource resource = getLooperResource(looper);
         if (resourcesToRegister.containsKey(resource.getName())) {
           logDuplicateRegistrationError(resource, resourcesToRegister.get(resource.getName()));
         } else {
@@ -137,7 +151,7 @@ public final class IdlingResourceRegistry {
       // At the same time figure which resources are already registered and shouldn't be attempted
       // to register again.
       List<IdlingResource> resourcesToUnRegister = new ArrayList<>();
-      for (IdlingState oldState : idlingStates) {
+      for (IdlingState oldState : idlingStates.values()) {
         IdlingResource ir = resourcesToRegister.remove(oldState.resource.getName());
         if (null == ir) {
           resourcesToUnRegister.add(oldState.resource);
@@ -154,6 +168,42 @@ public final class IdlingResourceRegistry {
     }
   }
 
+  /**
+   * Returns true if exactly the given resources and loopers are registered, in which case {@link
+   * #sync} has nothing to do. Must be called on main thread.
+   */
+  private boolean isInSync(Iterable<IdlingResource> resources, Iterable<Looper> loopers) {
+    int count = 0;
+    for (IdlingResource resource : resources) {
+      if (!isRegistered(resource)) {
+        return false;
+      }
+      count++;
+    }
+    for (Looper looper : loopers) {
+      IdlingResource resource = looperResources.get(looper);
+      if (resource == null || !isRegistered(resource)) {
+        return false;
+      }
+      count++;
+    }
+    return count == idlingStates.size();
+  }
+
+  private boolean isRegistered(IdlingResource resource) {
+    IdlingState state = idlingStates.get(resource.getName());
+    return state != null && state.resource == resource;
+  }
+
+  private IdlingResource getLooperResource(Looper looper) {
+    IdlingResource resource = looperResources.get(looper);
+    if (resource == null) {
+      resource = LooperIdlingResourceInterrogationHandler.forLooper(looper);
+      looperResources.put(looper, resource);
+    }
+    return resource;
+  }
+
   /**
    * Registers the given resources. If any of the given resources are already registered, a warning
    * is logged.
@@ -174,23 +224,16 @@ public final class IdlingResourceRegistry {
       for (IdlingResource resource : resourceList) {
         checkNotNull(resource.getName(), "IdlingResource.getName() should not be null");
 
-        boolean duplicate = false;
-        for (IdlingState oldState : idlingStates) {
-          if (resource.getName().equals(oldState.resource.getName())) {
-            // This does not throw an error to avoid leaving tests that register resource in test
-            // setup in an undeterministic state (we cannot assume that everyone clears vm state
-            // between each test run)
-            logDuplicateRegistrationError(resource, oldState.resource);
-            duplicate = true;
-            break;
-          }
-        }
-
-        if (!duplicate) {
+        IdlingState oldState = idlingStates.get(resource.getName());
+        if (oldState == null) {
           IdlingState is = new IdlingState(resource, handler);
-          idlingStates.add(is);
+          idlingStates.put(resource.getName(), is);
           is.registerSelf();
         } else {
+          // This does not throw an error to avoid leaving tests that register resource in test
+          // setup in an undeterministic state (we cannot assume that everyone clears vm state
+          // between each test run)
+          logDuplicateRegistrationError(resource, oldState.resource);
           allRegisteredSuccessfully = false;
         }
       }
@@ -216,17 +259,11 @@ public final class IdlingResourceRegistry {
     } else {
       boolean allUnregisteredSuccessfully = true;
       for (IdlingResource resource : resourceList) {
-        boolean found = false;
-        for (int i = 0; i < idlingStates.size(); i++) {
-          if (idlingStates.get(i).resource.getName().equals(resource.getName())) {
-            idlingStates.get(i).closeSpan();
-            idlingStates.remove(i);
-            found = true;
-            break;
-          }
-        }
-
-        if (!found) {
+        IdlingState state = idlingStates.remove(resource.getName());
+        if (state != null) {
+          state.closeSpan();
+          busyStates.remove(state);
+        } else {
           allUnregisteredSuccessfully = false;
           Log.e(
               TAG,
@@ -266,7 +303,7 @@ public final class IdlingResourceRegistry {
           });
     } else {
       List<IdlingResource> irs = mutableListOf();
-      for (IdlingState is : idlingStates) {
+      for (IdlingState is : idlingStates.values()) {
         irs.add(is.resource);
       }
       return CollectionsKt.toList(irs);
@@ -275,11 +312,13 @@ public final class IdlingResourceRegistry {
 
   boolean allResourcesAreIdle() {
     checkState(Looper.myLooper() == looper);
-    for (IdlingState is : idlingStates) {
-      if (is.idle) {
-        // ensure resource has not gone busy.
-        is.setIdle(is.resource.isIdleNow());
-      }
+    if (!busyStates.isEmpty()) {
+      // Busy resources notify us of their transition to idle, there is no need to poll them.
+      return false;
+    }
+    for (IdlingState is : idlingStates.values()) {
+      // ensure resource has not gone busy.
+      is.setIdle(is.resource.isIdleNow());
       // TODO(b/214584779): We should not return early here as this call also has the side effect of
       // updating all the current idle states so we may miss a chance to notice another resource
       // has gone busy and start a tracing span for it.
@@ -367,15 +406,13 @@ public final class IdlingResourceRegistry {
     List<String> busyResourceNames = mutableListOf();
     List<IdlingState> racyResources = mutableListOf();
 
-    for (IdlingState state : idlingStates) {
-      if (!state.idle) {
-        if (state.resource.isIdleNow()) {
-          // We have not been notified of a BUSY -> IDLE transition, but the resource is telling us
-          // its that its idle. Either it's a race condition or is this resource buggy.
-          racyResources.add(state);
-        } else {
-          busyResourceNames.add(state.resource.getName());
-        }
+    for (IdlingState state : busyStates) {
+      if (state.resource.isIdleNow()) {
+        // We have not been notified of a BUSY -> IDLE transition, but the resource is telling us
+        // its that its idle. Either it's a race condition or is this resource buggy.
+        racyResources.add(state);
+      } else {
+        busyResourceNames.add(state.resource.getName());
       }
     }
 
@@ -399,6 +436,8 @@ public final class IdlingResourceRegistry {
     private boolean idle;
     // on main
     Tracer.Span tracerSpan;
+    // on main, when the resource was first seen busy or -1 while it is idle.
+    private long busySinceMs = -1;
 
     private IdlingState(IdlingResource resource, Handler handler) {
       this.resource = resource;
@@ -433,8 +472,21 @@ public final class IdlingResourceRegistry {
         tracerSpan.close();
         tracerSpan = null;
       }
+      if (!idle && busySinceMs < 0) {
+        busySinceMs = SystemClock.uptimeMillis();
+      } else if (idle && busySinceMs >= 0) {
+        IdleWaitProfile.record(
+            IdleWaitProfile.IDLING_RESOURCE_PREFIX + resource.getName(),
+            SystemClock.uptimeMillis() - busySinceMs);
+        busySinceMs = -1;
+      }
 
       this.idle = idle;
+      if (idle) {
+        busyStates.remove(this);
+      } else {
+        busyStates.add(this);
+      }
     }
 
     /**
@@ -481,24 +533,11 @@ public final class IdlingResourceRegistry {
     private void handleResourceIdled(Message m) {
       IdlingState is = (IdlingState) m.obj;
       is.setIdle(true);
-      boolean unknownResource = true;
-      boolean allIdle = true;
-      for (IdlingState state : idlingStates) {
-        allIdle = allIdle && state.idle;
-        if (!unknownResource && !allIdle) {
-          // we've made sure that we are actually monitoring this resource - and we've encountered
-          // a different resource that is currently not idle. Lets stop checking the others.
-          break;
-        }
-        if (unknownResource && state == is) {
-          unknownResource = false;
-        }
-      }
-      if (unknownResource) {
+      if (idlingStates.get(is.resource.getName()) != is) {
         Log.i(TAG, "Ignoring message from unregistered resource: " + is.resource);
         return;
       }
-      if (allIdle) {
+      if (busyStates.isEmpty()) {
         try {
           idleNotificationCallback.allResourcesIdle();
         } finally {
@@ -18,13 +18,17 @@ package androidx.test.espresso.base;
 
 import static androidx.test.espresso.matcher.RootMatchers.isDialog;
 import static androidx.test.internal.util.Checks.checkState;
+import static kotlin.collections.CollectionsKt.emptyList;
 import static kotlin.collections.CollectionsKt.mutableListOf;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.Build;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import androidx.test.espresso.EspressoException;
 import androidx.test.espresso.NoActivityResumedException;
 import androidx.test.espresso.NoMatchingRootException;
@@ -33,6 +37,7 @@ import androidx.test.espresso.UiController;
 import androidx.test.espresso.internal.inject.TargetContext;
 import androidx.test.internal.platform.os.ControlledLooper;
 import androidx.test.internal.util.LogUtil;
+import androidx.test.runner.lifecycle.ActivityLifecycleCallback;
 import androidx.test.runner.lifecycle.ActivityLifecycleMonitor;
 import androidx.test.runner.lifecycle.Stage;
 import java.util.Collection;
@@ -50,6 +55,11 @@ import org.hamcrest.Matcher;
  * Provides the root View of the top-most Window, with which the user can interact. View is
  * guaranteed to be in a stable state - i.e. not pending any updates from the application.
  *
+ * <p>While waiting for an activity to resume or for a root to show up and become ready, the picker
+ * is woken up by activity lifecycle changes and by the layout and window focus changes of the
+ * roots it has seen, so it returns as soon as a suitable root is available. The backoff schedules
+ * only bound how long it sleeps when nothing happens.
+ *
  * <p>This provider can only be accessed from the main thread.
  */
 @RootViewPickerScope
@@ -108,7 +118,8 @@ public final class RootViewPicker implements Provider<View> {
         return pickedRoot;
       } else {
         controlledLooper.simulateWindowFocus(pickedRoot.getDecorView());
-        uiController.loopMainThreadForAtLeast(rootReadyBackoff.getNextBackoffInMillis());
+        waitForRootChange(
+            rootReadyBackoff.getNextBackoffInMillis(), CollectionsKt.listOf(pickedRoot));
       }
     }
 
@@ -133,11 +144,11 @@ public final class RootViewPicker implements Provider<View> {
           return rootResults.getPickedRoot();
         case NO_ROOTS_PRESENT:
           // no active roots yet, but should appear soon.
-          uiController.loopMainThreadForAtLeast(noActiveRootsBackoff.getNextBackoffInMillis());
+          waitForRootChange(noActiveRootsBackoff.getNextBackoffInMillis(), rootResults.allRoots);
           break;
         case NO_ROOTS_PICKED:
           // a root which satisfies the matcher should show up eventually.
-          uiController.loopMainThreadForAtLeast(noMatchingRootBackoff.getNextBackoffInMillis());
+          waitForRootChange(noMatchingRootBackoff.getNextBackoffInMillis(), rootResults.allRoots);
           break;
       }
       rootResults = rootResultFetcher.fetch();
@@ -168,8 +179,13 @@ public final class RootViewPicker implements Provider<View> {
           // wait for Activities to be scheduled by the platform before assuming there are none
           // and failing the test.
           Log.w(TAG, "No activities found - waiting: " + waitTime + "ms for one to appear.");
-          uiController.loopMainThreadForAtLeast(waitTime);
-          activities = getAllActiveActivities();
+          long waitUntil = SystemClock.uptimeMillis() + waitTime;
+          long remainingMs = waitTime;
+          while (activities.isEmpty() && remainingMs > 0) {
+            waitForRootChange(remainingMs, emptyList());
+            activities = getAllActiveActivities();
+            remainingMs = waitUntil - SystemClock.uptimeMillis();
+          }
           if (!activities.isEmpty()) {
             // found at least one activity in the pipeline
             break;
@@ -186,10 +202,15 @@ public final class RootViewPicker implements Provider<View> {
       for (long waitTime : RESUMED_WAIT_TIMES) {
         Log.w(
             TAG, "No activity currently resumed - waiting: " + waitTime + "ms for one to appear.");
-        uiController.loopMainThreadForAtLeast(waitTime);
-        resumedActivities = activityLifecycleMonitor.getActivitiesInStage(Stage.RESUMED);
-        if (!resumedActivities.isEmpty()) {
-          return; // one of the pending activities has resumed
+        long waitUntil = SystemClock.uptimeMillis() + waitTime;
+        for (long remainingMs = waitTime;
+            remainingMs > 0;
+            remainingMs = waitUntil - SystemClock.uptimeMillis()) {
+          waitForRootChange(remainingMs, emptyList());
+          resumedActivities = activityLifecycleMonitor.getActivitiesInStage(Stage.RESUMED);
+          if (!resumedActivities.isEmpty()) {
+            return; // one of the pending activities has resumed
+          }
         }
       }
       throw new NoActivityResumedException(
@@ -203,6 +224,30 @@ public final class RootViewPicker implements Provider<View> {
         currentActivity, uiController, appContext);
   }
 
+  /**
+   * Loops the main thread for up to {@code millis}, returning early as soon as an activity changes
+   * lifecycle stage or one of the given roots is laid out or gains or loses window focus.
+   */
+  private void waitForRootChange(long millis, List<Root> roots) {
+    if (!(uiController instanceof UiControllerImpl)) {
+      // Only Espresso's own controller can end a delay early.
+      uiController.loopMainThreadForAtLeast(millis);
+      return;
+    }
+    UiControllerImpl controller = (UiControllerImpl) uiController;
+    RootChangeListener listener = new RootChangeListener(controller);
+    activityLifecycleMonitor.addLifecycleCallback(listener);
+    for (Root root : roots) {
+      listener.observe(root.getDecorView());
+    }
+    try {
+      controller.loopMainThreadForAtLeast(millis);
+    } finally {
+      activityLifecycleMonitor.removeLifecycleCallback(listener);
+      listener.release();
+    }
+  }
+
   /** Returns the list of all non-destroyed activities. */
   private List<Activity> getAllActiveActivities() {
     List<Activity> activities = mutableListOf();
@@ -391,6 +436,57 @@ public final class RootViewPicker implements Provider<View> {
     }
   }
 
+  /** Ends the ongoing delay of a {@link UiControllerImpl} whenever a root may have changed. */
+  private static final class RootChangeListener
+      implements ActivityLifecycleCallback,
+          ViewTreeObserver.OnGlobalLayoutListener,
+          ViewTreeObserver.OnWindowFocusChangeListener {
+    private final UiControllerImpl uiController;
+    private final List<ViewTreeObserver> observers = mutableListOf();
+
+    RootChangeListener(UiControllerImpl uiController) {
+      this.uiController = uiController;
+    }
+
+    void observe(View decorView) {
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+        // Window focus listeners are not available, rely on the backoff alone.
+        return;
+      }
+      ViewTreeObserver observer = decorView.getViewTreeObserver();
+      if (observer.isAlive()) {
+        observer.addOnGlobalLayoutListener(this);
+        observer.addOnWindowFocusChangeListener(this);
+        observers.add(observer);
+      }
+    }
+
+    void release() {
+      for (ViewTreeObserver observer : observers) {
+        if (observer.isAlive()) {
+          observer.removeOnGlobalLayoutListener(this);
+          observer.removeOnWindowFocusChangeListener(this);
+        }
+      }
+      observers.clear();
+    }
+
+    @Override
+    public void onActivityLifecycleChanged(Activity activity, Stage stage) {
+      uiController.endDelayEarly();
+    }
+
+    @Override
+    public void onGlobalLayout() {
+      uiController.endDelayEarly();
+    }
+
+    @Override
+    public void onWindowFocusChanged(boolean hasFocus) {
+      uiController.endDelayEarly();
+    }
+  }
+
   private static final class RootViewWithoutFocusException extends RuntimeException
       implements EspressoException {
 
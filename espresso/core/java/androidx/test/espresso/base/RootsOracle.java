@@ -28,9 +28,11 @@ import androidx.test.espresso.Root;
 import androidx.test.platform.view.inspector.WindowInspectorCompat;
 import androidx.test.platform.view.inspector.WindowInspectorCompat.ViewRetrievalException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 /**
  * Provides access to all root views in an application.
@@ -39,14 +41,25 @@ import javax.inject.Inject;
  * as indicated by getWindow().getDecorView(). However in the case of popup windows, menus, and
  * dialogs the actual view hierarchy we should be operating on is in another root.
  *
+ * <p>The roots listed by the previous call are kept and handed out again for as long as the same
+ * window views with the same layout params are attached, so an unchanged screen yields the same
+ * list of {@link Root} instances across interactions.
+ *
  * <p>Obviously, you need to be on the main thread to use this.
  */
+@Singleton
 final class RootsOracle implements ActiveRootLister {
 
   private static final String TAG = RootsOracle.class.getSimpleName();
 
   private final Looper mainLooper;
 
+  // The window views seen by the previous call in window order, along with their layout params and
+  // the roots built for them in reverse order. Only accessed on the main thread.
+  private List<View> lastViews = emptyList();
+  private List<LayoutParams> lastParams = emptyList();
+  private List<Root> lastRoots = emptyList();
+
   @Inject
   RootsOracle(Looper mainLooper) {
     this.mainLooper = mainLooper;
@@ -56,27 +69,59 @@ final class RootsOracle implements ActiveRootLister {
   public List<Root> listActiveRoots() {
     checkState(mainLooper.equals(Looper.myLooper()), "must be called on main thread.");
 
+    List<View> views;
     try {
-      List<Root> roots = new ArrayList<>();
-      // return roots in reverse order, to match legacy behavior that assumes
-      // window ordering by position
-      for (View view : reverse(WindowInspectorCompat.getGlobalWindowViews())) {
-        roots.add(
-            new Root.Builder()
-                .withDecorView(view)
-                .withWindowLayoutParams((LayoutParams) view.getLayoutParams())
-                .build());
-      }
-      // return an immutable list
-      return toList(roots);
+      views = WindowInspectorCompat.getGlobalWindowViews();
     } catch (ViewRetrievalException e) {
       Log.w(TAG, "Failed to retrieve root views", e);
       return emptyList();
     }
+    List<LayoutParams> params = new ArrayList<>(views.size());
+    for (View view : views) {
+      params.add((LayoutParams) view.getLayoutParams());
+    }
+    if (!isSameIdentities(views, lastViews) || !isSameIdentities(params, lastParams)) {
+      lastRoots = buildRoots(views, params);
+      lastViews = views;
+      lastParams = params;
+    }
+    return lastRoots;
   }
 
-  private List<View> reverse(List<View> globalWindowViews) {
-    Collections.reverse(globalWindowViews);
-    return globalWindowViews;
+  /**
+   * Returns an immutable list of roots for the given window views, reusing the roots of the
+   * previous call whose view and layout params are unchanged.
+   */
+  private List<Root> buildRoots(List<View> views, List<LayoutParams> params) {
+    Map<View, Root> previousRoots = new IdentityHashMap<>();
+    for (Root root : lastRoots) {
+      previousRoots.put(root.getDecorView(), root);
+    }
+    List<Root> roots = new ArrayList<>(views.size());
+    // return roots in reverse order, to match legacy behavior that assumes
+    // window ordering by position
+    for (int i = views.size() - 1; i >= 0; i--) {
+      View view = views.get(i);
+      Root root = previousRoots.get(view);
+      if (root == null || root.getWindowLayoutParams2() != params.get(i)) {
+        root =
+            new Root.Builder().withDecorView(view).withWindowLayoutParams(params.get(i)).build();
+      }
+      roots.add(root);
+    }
+    // return an immutable list
+    return toList(roots);
+  }
+
+  private static boolean isSameIdentities(List<?> current, List<?> previous) {
+    if (current.size() != previous.size()) {
+      return false;
+    }
+    for (int i = 0; i < current.size(); i++) {
+      if (current.get(i) != previous.get(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 }
@@ -30,6 +30,7 @@ import android.os.Looper;
 import android.os.Message;
 import android.os.SystemClock;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
@@ -41,9 +42,10 @@ import androidx.test.espresso.UiController;
 import androidx.test.espresso.base.IdlingResourceRegistry.IdleNotificationCallback;
 import androidx.test.espresso.util.StringJoinerKt;
 import androidx.test.espresso.util.concurrent.ThreadFactoryBuilder;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
 import java.util.EnumSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.Callable;
@@ -154,10 +156,18 @@ final class UiControllerImpl
 
   // only updated on main thread.
   private MainThreadInterrogation interrogation;
+  private final MainQueueIdleHandler mainQueueIdle = new MainQueueIdleHandler();
   private int generation = 0;
+  // When each condition of the current generation was signaled, only tracked while profiling.
+  private final long[] signalTimesMs = new long[IdleCondition.values().length];
+  // The signal of the ongoing loopMainThreadForAtLeast delay, if any.
+  private SignalingTask<Void> pendingDelay;
   private IdleNotifier<Runnable> asyncIdle;
   private IdleNotifier<Runnable> compatIdle;
   private Provider<IdleNotifier<IdleNotificationCallback>> dynamicIdleProvider;
+  // Key events typing a single character, only used on main thread.
+  private final SparseArray<KeyEvent[]> keyEventsByChar = new SparseArray<>();
+  private KeyCharacterMap keyCharacterMap;
 
   @VisibleForTesting
   @Inject
@@ -185,18 +195,25 @@ final class UiControllerImpl
     checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
     loopMainThreadUntilIdle();
 
+    return injectKeyEvents(
+        new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            return eventInjector.injectKeyEvent(event);
+          }
+        });
+  }
+
+  /**
+   * Runs {@code injection} on the key event executor and loops the main thread until it completed.
+   *
+   * @return the result of {@code injection}
+   */
+  private boolean injectKeyEvents(Callable<Boolean> injection) throws InjectEventSecurityException {
     FutureTask<Boolean> injectTask =
-        new SignalingTask<Boolean>(
-            new Callable<Boolean>() {
-              @Override
-              public Boolean call() throws Exception {
-                return eventInjector.injectKeyEvent(event);
-              }
-            },
-            IdleCondition.KEY_INJECT_HAS_COMPLETED,
-            generation);
+        new SignalingTask<Boolean>(injection, IdleCondition.KEY_INJECT_HAS_COMPLETED, generation);
 
-    // Inject the key event.
+    // Inject the key events.
     @SuppressWarnings("unused") // go/futurereturn-lsc
     Future<?> possiblyIgnoredError = keyEventExecutor.submit(injectTask);
 
@@ -257,32 +274,16 @@ final class UiControllerImpl
   public boolean injectMotionEventSequence(final Iterable<MotionEvent> events)
       throws InjectEventSecurityException {
     checkNotNull(events);
-    checkState(events.iterator().hasNext(), "Expecting non-empty events to inject");
     checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
-    final Iterator<MotionEvent> mei = events.iterator();
-    final long downTime = CollectionsKt.first(events).getEventTime();
-    final long shift = SystemClock.uptimeMillis() - downTime;
+    final MotionEvent[] eventArray = CollectionsKt.toList(events).toArray(new MotionEvent[0]);
+    checkState(eventArray.length > 0, "Expecting non-empty events to inject");
+    final long shift = SystemClock.uptimeMillis() - eventArray[0].getEventTime();
     FutureTask<Boolean> injectTask =
         new SignalingTask<>(
             new Callable<Boolean>() {
               @Override
               public Boolean call() throws Exception {
-                boolean success = true;
-                while (mei.hasNext()) {
-                  MotionEvent me = mei.next();
-                  long desiredTime = me.getEventTime() + shift;
-                  long timeUntilDesired = desiredTime - SystemClock.uptimeMillis();
-                  if (timeUntilDesired > 10) {
-                    // This must NOT run in main thread, so it's fine to sleep
-                    SystemClock.sleep(timeUntilDesired);
-                  }
-                  if (mei.hasNext()) {
-                    success &= eventInjector.injectMotionEventAsync(me);
-                  } else {
-                    success &= eventInjector.injectMotionEvent(me);
-                  }
-                }
-                return success;
+                return eventInjector.injectMotionEventSequence(eventArray, shift);
               }
             },
             IdleCondition.MOTION_INJECTION_HAS_COMPLETED,
@@ -374,6 +375,79 @@ final class UiControllerImpl
     return eventInjected;
   }
 
+  @Override
+  public boolean injectStringInBulk(String str) throws InjectEventSecurityException {
+    checkNotNull(str);
+    checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
+
+    // No-op if string is empty.
+    if (str.isEmpty()) {
+      Log.w(TAG, "Supplied string is empty resulting in no-op (nothing is typed).");
+      return true;
+    }
+
+    final KeyEvent[] events = getKeyEvents(str);
+    Log.d(TAG, String.format(Locale.ROOT, "Injecting string in bulk: \"%s\"", str));
+    loopMainThreadUntilIdle();
+
+    return injectKeyEvents(
+        new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws Exception {
+            for (KeyEvent event : events) {
+              boolean eventInjected = false;
+              for (int attempts = 0; !eventInjected && attempts < 4; attempts++) {
+                // Cached events carry stale time stamps, see injectString.
+                eventInjected =
+                    eventInjector.injectKeyEvent(
+                        KeyEvent.changeTimeRepeat(event, SystemClock.uptimeMillis(), 0));
+              }
+              if (!eventInjected) {
+                Log.e(
+                    TAG,
+                    String.format(
+                        Locale.ROOT,
+                        "Failed to inject event for character (%c) with key code (%s)",
+                        event.getUnicodeChar(),
+                        event.getKeyCode()));
+                return false;
+              }
+            }
+            return true;
+          }
+        });
+  }
+
+  /**
+   * Returns the key events typing {@code str}, built from the events of each of its characters.
+   * The events of a character are looked up in the {@link KeyCharacterMap} once and then cached.
+   */
+  private KeyEvent[] getKeyEvents(String str) {
+    List<KeyEvent> events = mutableListOf();
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      KeyEvent[] charEvents = keyEventsByChar.get(c);
+      if (charEvents == null) {
+        if (keyCharacterMap == null) {
+          keyCharacterMap = getKeyCharacterMap();
+        }
+        charEvents = keyCharacterMap.getEvents(new char[] {c});
+        if (charEvents == null) {
+          throw new RuntimeException(
+              String.format(
+                  Locale.ROOT,
+                  "Failed to get key events for string %s (i.e. current IME does not understand how"
+                      + " to translate the string into key events). As a workaround, you can use"
+                      + " replaceText action to set the text directly in the EditText field.",
+                  str));
+        }
+        keyEventsByChar.put(c, charEvents);
+      }
+      Collections.addAll(events, charEvents);
+    }
+    return events.toArray(new KeyEvent[0]);
+  }
+
   @SuppressLint("InlinedApi")
   @VisibleForTesting
   @SuppressWarnings("deprecation")
@@ -395,26 +469,43 @@ final class UiControllerImpl
     return idlingResourceRegistry;
   }
 
+  /**
+   * Loops the main thread until the async task pools, the dynamic idling resources and the main
+   * message queue are all idle.
+   *
+   * <p>Busy sources report their transition to idle by posting a signal to the controller handler,
+   * so the main thread blocks in {@link android.os.MessageQueue#next()} between signals instead of
+   * polling. Each lap checks every source exactly once, and when nothing is busy and no message is
+   * due the method returns without interrogating the main thread at all, which is the common case
+   * between two interactions.
+   */
   @Override
   public void loopMainThreadUntilIdle() {
     checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
     IdleNotifier<IdleNotificationCallback> dynamicIdle = dynamicIdleProvider.get();
-    do {
+    boolean asyncTasksIdle = asyncIdle.isIdleNow();
+    boolean compatTasksIdle = compatIdle.isIdleNow();
+    boolean dynamicTasksIdle = dynamicIdle.isIdleNow();
+    IdleWaits idleWaits = null;
+    while (!asyncTasksIdle || !compatTasksIdle || !dynamicTasksIdle || !isMainQueueIdleNow()) {
+      if (idleWaits == null && IdleWaitProfile.isEnabled()) {
+        idleWaits = new IdleWaits();
+      }
       EnumSet<IdleCondition> condChecks = EnumSet.noneOf(IdleCondition.class);
-      if (!asyncIdle.isIdleNow()) {
+      if (!asyncTasksIdle) {
         asyncIdle.registerNotificationCallback(
             new SignalingTask<Void>(NO_OP, IdleCondition.ASYNC_TASKS_HAVE_IDLED, generation));
 
         condChecks.add(IdleCondition.ASYNC_TASKS_HAVE_IDLED);
       }
 
-      if (!compatIdle.isIdleNow()) {
+      if (!compatTasksIdle) {
         compatIdle.registerNotificationCallback(
             new SignalingTask<Void>(NO_OP, IdleCondition.COMPAT_TASKS_HAVE_IDLED, generation));
         condChecks.add(IdleCondition.COMPAT_TASKS_HAVE_IDLED);
       }
 
-      if (!dynamicIdle.isIdleNow()) {
+      if (!dynamicTasksIdle) {
         final IdlingPolicy warning = IdlingPolicies.getDynamicIdlingResourceWarningPolicy();
         final IdlingPolicy error = IdlingPolicies.getDynamicIdlingResourceErrorPolicy();
         final SignalingTask<Void> idleSignal =
@@ -440,6 +531,11 @@ final class UiControllerImpl
         condChecks.add(IdleCondition.DYNAMIC_TASKS_HAVE_IDLED);
       }
 
+      long lapStartMs = 0;
+      if (idleWaits != null) {
+        Arrays.fill(signalTimesMs, -1);
+        lapStartMs = SystemClock.uptimeMillis();
+      }
       try {
         dynamicIdle = loopUntil(condChecks, dynamicIdle);
       } finally {
@@ -447,7 +543,28 @@ final class UiControllerImpl
         compatIdle.cancelCallback();
         dynamicIdle.cancelCallback();
       }
-    } while (!asyncIdle.isIdleNow() || !compatIdle.isIdleNow() || !dynamicIdle.isIdleNow());
+      if (idleWaits != null) {
+        idleWaits.addLap(condChecks, signalTimesMs, lapStartMs, SystemClock.uptimeMillis());
+      }
+      asyncTasksIdle = asyncIdle.isIdleNow();
+      compatTasksIdle = compatIdle.isIdleNow();
+      dynamicTasksIdle = dynamicIdle.isIdleNow();
+    }
+    if (idleWaits != null) {
+      idleWaits.record();
+    }
+  }
+
+  /**
+   * Returns true if the main message queue holds neither a sync barrier nor a message due soon, in
+   * which case interrogating the main thread would return straight away.
+   */
+  private boolean isMainQueueIdleNow() {
+    if (interrogation != null) {
+      // Let the interrogator report the recursion.
+      return false;
+    }
+    return Interrogator.peekAtQueueState(Looper.myQueue(), mainQueueIdle);
   }
 
   @Override
@@ -456,20 +573,43 @@ final class UiControllerImpl
     checkState(!IdleCondition.DELAY_HAS_PAST.isSignaled(conditionSet), "recursion detected!");
     checkArgument(millisDelay > 0);
 
+    pendingDelay = new SignalingTask<>(NO_OP, IdleCondition.DELAY_HAS_PAST, generation);
     controllerHandler.postAtTime(
-        new SignalingTask<>(NO_OP, IdleCondition.DELAY_HAS_PAST, generation),
-        generation,
-        SystemClock.uptimeMillis() + millisDelay);
-    loopUntil(IdleCondition.DELAY_HAS_PAST, dynamicIdleProvider.get());
+        pendingDelay, generation, SystemClock.uptimeMillis() + millisDelay);
+    try {
+      loopUntil(IdleCondition.DELAY_HAS_PAST, dynamicIdleProvider.get());
+    } finally {
+      pendingDelay = null;
+    }
     loopMainThreadUntilIdle();
   }
 
+  /**
+   * Ends the delay of an ongoing {@link #loopMainThreadForAtLeast(long)} call straight away, as if
+   * it had elapsed. The main thread is still looped until idle afterwards. Has no effect if the
+   * main thread is not looping for a delay.
+   *
+   * <p>Must be called on the main thread, typically from a callback dispatched while looping.
+   */
+  void endDelayEarly() {
+    checkState(Looper.myLooper() == mainLooper, "Expecting to be on main thread!");
+    if (pendingDelay != null && !IdleCondition.DELAY_HAS_PAST.isSignaled(conditionSet)) {
+      controllerHandler.removeCallbacks(pendingDelay);
+      pendingDelay = null;
+      controllerHandler.sendMessage(
+          IdleCondition.DELAY_HAS_PAST.createSignal(controllerHandler, generation));
+    }
+  }
+
   @Override
   public boolean handleMessage(Message msg) {
     if (!IdleCondition.handleMessage(msg, conditionSet, generation)) {
       Log.i(TAG, "Unknown message type: " + msg);
       return false;
     } else {
+      if (msg.arg1 == generation && IdleWaitProfile.isEnabled()) {
+        signalTimesMs[msg.what] = SystemClock.uptimeMillis();
+      }
       return true;
     }
   }
@@ -720,6 +860,80 @@ final class UiControllerImpl
     }
   }
 
+  /**
+   * Accumulates how long a single {@link #loopMainThreadUntilIdle()} call waited on each idle
+   * condition, and on the main looper once every condition had been signaled.
+   */
+  private static final class IdleWaits {
+    private final long[] waitsMs = new long[IdleCondition.values().length];
+    private final EnumSet<IdleCondition> waitedOn = EnumSet.noneOf(IdleCondition.class);
+    private long mainLooperWaitMs;
+
+    void addLap(
+        EnumSet<IdleCondition> conditions, long[] signalTimesMs, long lapStartMs, long lapEndMs) {
+      long lastSignalMs = lapStartMs;
+      for (IdleCondition condition : conditions) {
+        long signalMs = signalTimesMs[condition.ordinal()];
+        if (signalMs < 0) {
+          // Never signaled, the lap timed out waiting on this condition.
+          signalMs = lapEndMs;
+        }
+        waitsMs[condition.ordinal()] += signalMs - lapStartMs;
+        waitedOn.add(condition);
+        lastSignalMs = Math.max(lastSignalMs, signalMs);
+      }
+      mainLooperWaitMs += lapEndMs - lastSignalMs;
+    }
+
+    void record() {
+      record(IdleCondition.ASYNC_TASKS_HAVE_IDLED, IdleWaitProfile.ASYNC_TASKS);
+      record(IdleCondition.COMPAT_TASKS_HAVE_IDLED, IdleWaitProfile.COMPAT_TASKS);
+      record(IdleCondition.DYNAMIC_TASKS_HAVE_IDLED, IdleWaitProfile.IDLING_RESOURCES);
+      IdleWaitProfile.record(IdleWaitProfile.MAIN_LOOPER, mainLooperWaitMs);
+    }
+
+    private void record(IdleCondition condition, String source) {
+      if (waitedOn.contains(condition)) {
+        IdleWaitProfile.record(source, waitsMs[condition.ordinal()]);
+      }
+    }
+  }
+
+  /** Peeks at the main message queue once, using the same lookahead as an interrogation. */
+  private static final class MainQueueIdleHandler
+      implements Interrogator.QueueInterrogationHandler<Boolean> {
+    private boolean idle;
+
+    @Override
+    public boolean queueEmpty() {
+      idle = true;
+      return false;
+    }
+
+    @Override
+    public boolean taskDueSoon() {
+      idle = false;
+      return false;
+    }
+
+    @Override
+    public boolean taskDueLong() {
+      idle = true;
+      return false;
+    }
+
+    @Override
+    public boolean barrierUp() {
+      idle = false;
+      return false;
+    }
+
+    @Override
+    public Boolean get() {
+      return idle;
+    }
+  }
+
   /**
    * Encapsulates posting a signal message to update the conditions set after a task has executed.
    */
@@ -19,16 +19,21 @@ package androidx.test.espresso.base;
 import static androidx.test.espresso.util.TreeIterables.breadthFirstViewTraversal;
 import static androidx.test.internal.util.Checks.checkMainThread;
 import static androidx.test.internal.util.Checks.checkNotNull;
+import static kotlin.collections.CollectionsKt.mutableListOf;
 
 import android.view.View;
 import android.widget.AdapterView;
+import androidx.annotation.Nullable;
 import androidx.test.espresso.AmbiguousViewMatcherException;
 import androidx.test.espresso.NoMatchingViewException;
 import androidx.test.espresso.ViewFinder;
 import androidx.test.espresso.matcher.ViewMatchers;
 import androidx.test.espresso.util.IterablesKt;
-import androidx.test.espresso.util.Iterators;
 import androidx.test.espresso.util.StringJoinerKt;
+import androidx.test.espresso.util.TracingUtil;
+import androidx.test.espresso.util.ViewTreeCursor;
+import androidx.test.platform.tracing.Tracer.Span;
+import androidx.test.platform.tracing.Tracing;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -36,18 +41,31 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import org.hamcrest.Matcher;
 
-/** Implementation of {@link ViewFinder}. */
-// TODO: in the future we may want to collect stats here about the size of the view
-// hierarchy, average matcher execution time, warn when matchers take too long to execute, etc.
+/**
+ * Implementation of {@link ViewFinder}.
+ *
+ * <p>While tracing is enabled, each lookup is wrapped in a tracing span, with a child span
+ * reporting how many views were visited and how many times the matcher was evaluated, to help
+ * tracking down expensive matchers.
+ */
 public final class ViewFinderImpl implements ViewFinder {
 
   private final Matcher<View> viewMatcher;
   private final Provider<View> rootViewProvider;
+  private final Tracing tracer;
+
+  private int viewsVisited;
+  private int matcherEvaluations;
 
   @Inject
-  ViewFinderImpl(Matcher<View> viewMatcher, Provider<View> rootViewProvider) {
+  ViewFinderImpl(Matcher<View> viewMatcher, Provider<View> rootViewProvider, Tracing tracer) {
     this.viewMatcher = viewMatcher;
     this.rootViewProvider = rootViewProvider;
+    this.tracer = tracer;
+  }
+
+  ViewFinderImpl(Matcher<View> viewMatcher, Provider<View> rootViewProvider) {
+    this(viewMatcher, rootViewProvider, Tracing.getInstance());
   }
 
   @Override
@@ -55,24 +73,43 @@ public final class ViewFinderImpl implements ViewFinder {
     checkMainThread();
     checkNotNull(viewMatcher);
 
-    View root = rootViewProvider.get();
-    Iterator<View> matchedViewIterator =
-        IterablesKt.filter(breadthFirstViewTraversal(root), viewMatcher).iterator();
-    View matchedView = null;
+    viewsVisited = 0;
+    matcherEvaluations = 0;
+    if (!tracer.isTracingEnabled()) {
+      // Span names describe the matcher, which is too costly to do on every lookup.
+      return findView(rootViewProvider.get());
+    }
+    String spanName = TracingUtil.getSpanName("Espresso", "getView", viewMatcher);
+    try (Span span = tracer.beginSpan(spanName)) {
+      try {
+        return findView(rootViewProvider.get());
+      } finally {
+        String statsSpanName =
+            TracingUtil.getSpanName(
+                "Espresso",
+                "getView.stats",
+                "visited " + viewsVisited,
+                "evaluated " + matcherEvaluations);
+        try (Span ignored = span.beginChildSpan(statsSpanName)) {
+          // Only the name carries information.
+        }
+      }
+    }
+  }
 
-    while (matchedViewIterator.hasNext()) {
-      if (matchedView != null) {
-        // Ambiguous!
-        throw new AmbiguousViewMatcherException.Builder()
-            .withViewMatcher(viewMatcher)
-            .withRootView(root)
-            .withView1(matchedView)
-            .withView2(matchedViewIterator.next())
-            .withOtherAmbiguousViews(Iterators.toArray(matchedViewIterator, View.class))
-            .build();
-      } else {
-        matchedView = matchedViewIterator.next();
+  private View findView(View root) {
+    List<View> indexedCandidates = ViewIndex.findCandidates(root, viewMatcher);
+    View matchedView;
+    if (indexedCandidates == null) {
+      ViewTreeCursor cursor = ViewTreeCursor.obtainBreadthFirst(root);
+      try {
+        matchedView = findInViews(root, cursor::next);
+      } finally {
+        cursor.recycle();
       }
+    } else {
+      Iterator<View> candidates = indexedCandidates.iterator();
+      matchedView = findInViews(root, () -> candidates.hasNext() ? candidates.next() : null);
     }
     if (null == matchedView) {
       List<View> adapterViews =
@@ -103,4 +140,55 @@ public final class ViewFinderImpl implements ViewFinder {
       return matchedView;
     }
   }
+
+  /** A source of views to match, returning null once exhausted. */
+  private interface ViewSource {
+    @Nullable
+    View next();
+  }
+
+  /**
+   * Returns the only view of {@code views} matching, or null if none does.
+   *
+   * @throws AmbiguousViewMatcherException if several views match
+   */
+  @Nullable
+  private View findInViews(View root, ViewSource views) {
+    View matchedView = null;
+    for (View view = views.next(); view != null; view = views.next()) {
+      viewsVisited++;
+      if (!matches(view)) {
+        continue;
+      }
+      if (matchedView != null) {
+        // Ambiguous! The other matches are collected now, while still on the main thread.
+        List<View> otherAmbiguousViews = mutableListOf();
+        for (View other = views.next(); other != null; other = views.next()) {
+          viewsVisited++;
+          if (matches(other)) {
+            otherAmbiguousViews.add(other);
+          }
+        }
+        throw ambiguousViewMatcherException(root, matchedView, view, otherAmbiguousViews);
+      }
+      matchedView = view;
+    }
+    return matchedView;
+  }
+
+  private boolean matches(View view) {
+    matcherEvaluations++;
+    return viewMatcher.matches(view);
+  }
+
+  private AmbiguousViewMatcherException ambiguousViewMatcherException(
+      View root, View view1, View view2, List<View> otherAmbiguousViews) {
+    return new AmbiguousViewMatcherException.Builder()
+        .withViewMatcher(viewMatcher)
+        .withRootView(root)
+        .withView1(view1)
+        .withView2(view2)
+        .withOtherAmbiguousViews(otherAmbiguousViews.toArray(new View[0]))
+        .build();
+  }
 }
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.internal.util.Checks.checkMainThread;
+import static kotlin.collections.CollectionsKt.emptyList;
+import static kotlin.collections.CollectionsKt.mutableListOf;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.test.espresso.matcher.ViewMatcherIndexKeys;
+import androidx.test.espresso.util.ViewTreeCursor;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.hamcrest.Matcher;
+
+/**
+ * An opt-in, per root index of a view hierarchy which lets {@link ViewFinderImpl} resolve {@code
+ * withId(int)} and {@code isAssignableFrom(Class)} matchers by lookup instead of by walking the
+ * whole hierarchy.
+ *
+ * <p>An index is built lazily on the first lookup against a root and is reused until the root's
+ * {@link ViewTreeObserver} reports a layout or draw pass, so consecutive interactions against an
+ * unchanged screen share a single traversal. Only roots attached to a window are indexed.
+ *
+ * <p>Changes which neither trigger a layout nor a draw (e.g. calling {@link View#setId(int)}
+ * outside of a layout pass) are not observed, which is why indexing is disabled by default.
+ *
+ * <p>All methods must be called on the main thread.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+public final class ViewIndex {
+
+  private static volatile boolean enabled = false;
+
+  private static final Map<View, RootIndex> indices = new HashMap<>();
+
+  private ViewIndex() {}
+
+  /** Enables or disables indexing. Disabling drops every index built so far. */
+  public static void setEnabled(boolean enabled) {
+    ViewIndex.enabled = enabled;
+    if (!enabled) {
+      // Indices hold on to views and listeners registered on the main thread, release them there.
+      if (Looper.myLooper() == Looper.getMainLooper()) {
+        releaseAll();
+      } else {
+        new Handler(Looper.getMainLooper()).post(ViewIndex::releaseAll);
+      }
+    }
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the views under {@code root} which may match {@code viewMatcher}, in breadth first
+   * order, or {@code null} if the matcher cannot be resolved through an index and the hierarchy has
+   * to be traversed instead.
+   *
+   * <p>Every returned view still needs to be checked against the matcher.
+   */
+  @Nullable
+  static List<View> findCandidates(View root, Matcher<View> viewMatcher) {
+    if (!enabled) {
+      return null;
+    }
+    int id = ViewMatcherIndexKeys.getExactId(viewMatcher);
+    Class<?> assignableClass =
+        id == View.NO_ID ? ViewMatcherIndexKeys.getAssignableClass(viewMatcher) : null;
+    if (id == View.NO_ID && assignableClass == null) {
+      return null;
+    }
+    RootIndex index = getIndex(root);
+    if (index == null) {
+      return null;
+    }
+    return id != View.NO_ID ? index.withId(id) : index.assignableFrom(assignableClass);
+  }
+
+  private static void releaseAll() {
+    for (RootIndex index : indices.values()) {
+      index.unregister();
+    }
+    indices.clear();
+  }
+
+  @Nullable
+  private static RootIndex getIndex(View root) {
+    checkMainThread();
+    if (root.getWindowToken() == null) {
+      // Detached hierarchies never get layout or draw passes, so an index could never be
+      // invalidated.
+      return null;
+    }
+    RootIndex index = indices.get(root);
+    if (index != null && !index.isObserving()) {
+      index.release();
+      index = null;
+    }
+    if (index == null) {
+      index = new RootIndex(root);
+      indices.put(root, index);
+    }
+    index.ensureBuilt();
+    return index;
+  }
+
+  /** The index of a single root, invalidated whenever the root is laid out or drawn. */
+  private static final class RootIndex
+      implements ViewTreeObserver.OnGlobalLayoutListener,
+          ViewTreeObserver.OnDrawListener,
+          View.OnAttachStateChangeListener {
+    private final View root;
+    private final ViewTreeObserver observer;
+
+    private boolean valid;
+    private final List<View> views = mutableListOf();
+    private final SparseArray<List<View>> viewsById = new SparseArray<>();
+    private final Map<Class<?>, List<View>> viewsByAssignableClass = new HashMap<>();
+
+    RootIndex(View root) {
+      this.root = root;
+      this.observer = root.getViewTreeObserver();
+      observer.addOnGlobalLayoutListener(this);
+      observer.addOnDrawListener(this);
+      root.addOnAttachStateChangeListener(this);
+    }
+
+    boolean isObserving() {
+      return observer.isAlive() && observer == root.getViewTreeObserver();
+    }
+
+    void ensureBuilt() {
+      if (valid) {
+        return;
+      }
+      ViewTreeCursor cursor = ViewTreeCursor.obtainBreadthFirst(root);
+      try {
+        for (View view = cursor.next(); view != null; view = cursor.next()) {
+          views.add(view);
+          int id = view.getId();
+          if (id != View.NO_ID) {
+            List<View> sameId = viewsById.get(id);
+            if (sameId == null) {
+              sameId = mutableListOf();
+              viewsById.put(id, sameId);
+            }
+            sameId.add(view);
+          }
+        }
+      } finally {
+        cursor.recycle();
+      }
+      valid = true;
+    }
+
+    List<View> withId(int id) {
+      List<View> sameId = viewsById.get(id);
+      return sameId == null ? emptyList() : stillAttached(sameId);
+    }
+
+    List<View> assignableFrom(Class<?> clazz) {
+      List<View> assignable = viewsByAssignableClass.get(clazz);
+      if (assignable == null) {
+        assignable = mutableListOf();
+        for (View view : views) {
+          if (clazz.isAssignableFrom(view.getClass())) {
+            assignable.add(view);
+          }
+        }
+        viewsByAssignableClass.put(clazz, assignable);
+      }
+      return stillAttached(assignable);
+    }
+
+    /** Guards against views removed from the hierarchy without a layout pass having happened. */
+    private List<View> stillAttached(List<View> candidates) {
+      for (int i = 0; i < candidates.size(); i++) {
+        if (!isDescendant(candidates.get(i))) {
+          List<View> attached = mutableListOf();
+          for (View candidate : candidates) {
+            if (isDescendant(candidate)) {
+              attached.add(candidate);
+            }
+          }
+          return attached;
+        }
+      }
+      return candidates;
+    }
+
+    private boolean isDescendant(View view) {
+      if (view == root) {
+        return true;
+      }
+      ViewParent parent = view.getParent();
+      while (parent != null) {
+        if (parent == root) {
+          return true;
+        }
+        parent = parent.getParent();
+      }
+      return false;
+    }
+
+    private void invalidate() {
+      if (valid) {
+        valid = false;
+        views.clear();
+        viewsById.clear();
+        viewsByAssignableClass.clear();
+      }
+    }
+
+    void unregister() {
+      invalidate();
+      if (observer.isAlive()) {
+        observer.removeOnGlobalLayoutListener(this);
+        observer.removeOnDrawListener(this);
+      }
+      root.removeOnAttachStateChangeListener(this);
+    }
+
+    void release() {
+      unregister();
+      indices.remove(root);
+    }
+
+    @Override
+    public void onGlobalLayout() {
+      invalidate();
+    }
+
+    @Override
+    public void onDraw() {
+      invalidate();
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {}
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+      release();
+    }
+  }
+}
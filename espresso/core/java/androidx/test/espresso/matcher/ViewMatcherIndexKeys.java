@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.matcher;
+
+import android.view.View;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import androidx.test.espresso.matcher.ViewMatchers.IsAssignableFromMatcher;
+import androidx.test.espresso.matcher.ViewMatchers.WithIdMatcher;
+import org.hamcrest.Matcher;
+
+/**
+ * Exposes the keys which allow a {@link ViewMatchers} matcher to be resolved by an index lookup
+ * instead of by testing every view of a hierarchy.
+ *
+ * <p>A key only narrows down the candidates: views found through it must still be checked against
+ * the matcher itself.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY)
+public final class ViewMatcherIndexKeys {
+
+  private ViewMatcherIndexKeys() {}
+
+  /**
+   * Returns the id every view matched by {@code matcher} has, or {@link View#NO_ID} if the matcher
+   * was not created by {@link ViewMatchers#withId(int)}.
+   */
+  public static int getExactId(Matcher<?> matcher) {
+    if (matcher instanceof WithIdMatcher) {
+      return ((WithIdMatcher) matcher).exactId;
+    }
+    return View.NO_ID;
+  }
+
+  /**
+   * Returns the class every view matched by {@code matcher} is assignable to, or {@code null} if
+   * the matcher was not created by {@link ViewMatchers#isAssignableFrom(Class)}.
+   */
+  @Nullable
+  public static Class<?> getAssignableClass(Matcher<?> matcher) {
+    if (matcher instanceof IsAssignableFromMatcher) {
+      return ((IsAssignableFromMatcher) matcher).clazz;
+    }
+    return null;
+  }
+}
@@ -246,7 +246,7 @@ public final class ViewMatchers {
    * @param id the resource id.
    */
   public static Matcher<View> withId(final int id) {
-    return withId(is(id));
+    return new WithIdMatcher(is(id), id);
   }
 
   /**
@@ -702,11 +702,19 @@ public final class ViewMatchers {
     @RemoteMsgField(order = 0)
     Matcher<Integer> viewIdMatcher;
 
+    // The exact id this matcher was created for, or View.NO_ID if it wraps an arbitrary matcher.
+    final int exactId;
+
     private Resources resources;
 
     @RemoteMsgConstructor
     private WithIdMatcher(Matcher<Integer> integerMatcher) {
+      this(integerMatcher, View.NO_ID);
+    }
+
+    private WithIdMatcher(Matcher<Integer> integerMatcher, int exactId) {
       this.viewIdMatcher = integerMatcher;
+      this.exactId = exactId;
     }
 
     @SuppressWarnings("JdkObsolete") // java.util.regex.Matcher requires the use of StringBuffer
@@ -875,7 +883,7 @@ public final class ViewMatchers {
 
   static final class IsAssignableFromMatcher extends TypeSafeDiagnosingMatcher<View> {
     @RemoteMsgField(order = 0)
-    private final Class<?> clazz;
+    final Class<?> clazz;
 
     @RemoteMsgConstructor
     private IsAssignableFromMatcher(@NonNull Class<?> clazz) {
@@ -20,17 +20,14 @@ import static androidx.test.internal.util.Checks.checkNotNull;
 import static kotlin.collections.CollectionsKt.mutableListOf;
 
 import android.view.View;
-import android.view.ViewGroup;
 import androidx.annotation.VisibleForTesting;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import kotlin.collections.AbstractIterator;
-import kotlin.collections.CollectionsKt;
 
 /**
  * Utility methods for iterating over tree structured items.
@@ -43,7 +40,6 @@ import kotlin.collections.CollectionsKt;
  * <p>Only public methods of this utility class are considered public API of the test framework.
  */
 public final class TreeIterables {
-  private static final TreeViewer<View> VIEW_TREE_VIEWER = new ViewTreeViewer();
 
   private TreeIterables() {}
 
@@ -57,12 +53,17 @@ public final class TreeIterables {
    *     distance of a given node from the root.
    */
   public static Iterable<ViewAndDistance> depthFirstViewTraversalWithDistance(View root) {
-    final DistanceRecordingTreeViewer<View> distanceRecorder =
-        new DistanceRecordingTreeViewer<View>(root, VIEW_TREE_VIEWER);
-
-    return CollectionsKt.map(
-        depthFirstTraversal(root, distanceRecorder),
-        view -> new ViewAndDistance(view, distanceRecorder.getDistance(view)));
+    checkNotNull(root);
+    List<ViewAndDistance> viewsAndDistances = mutableListOf();
+    ViewTreeCursor cursor = ViewTreeCursor.obtainDepthFirst(root);
+    try {
+      for (View view = cursor.next(); view != null; view = cursor.next()) {
+        viewsAndDistances.add(new ViewAndDistance(view, cursor.getDepth()));
+      }
+    } finally {
+      cursor.recycle();
+    }
+    return viewsAndDistances;
   }
 
   /**
@@ -73,7 +74,8 @@ public final class TreeIterables {
    * @param root the non-null, root view.
    */
   public static Iterable<View> depthFirstViewTraversal(View root) {
-    return depthFirstTraversal(root, VIEW_TREE_VIEWER);
+    checkNotNull(root);
+    return new ViewTraversalIterable(root, true);
   }
 
   /**
@@ -84,7 +86,8 @@ public final class TreeIterables {
    * @param root the non-null, root view.
    */
   public static Iterable<View> breadthFirstViewTraversal(View root) {
-    return breadthFirstTraversal(root, VIEW_TREE_VIEWER);
+    checkNotNull(root);
+    return new ViewTraversalIterable(root, false);
   }
 
   /**
@@ -147,6 +150,38 @@ public final class TreeIterables {
     }
   }
 
+  /**
+   * Presents a view hierarchy as an Iterable backed by a {@link ViewTreeCursor}, so iterating does
+   * not allocate per visited node.
+   */
+  private static class ViewTraversalIterable implements Iterable<View> {
+    private final View root;
+    private final boolean depthFirst;
+
+    private ViewTraversalIterable(View root, boolean depthFirst) {
+      this.root = root;
+      this.depthFirst = depthFirst;
+    }
+
+    @Override
+    public Iterator<View> iterator() {
+      final ViewTreeCursor cursor =
+          depthFirst ? ViewTreeCursor.newDepthFirst() : ViewTreeCursor.newBreadthFirst();
+      cursor.reset(root);
+      return new AbstractIterator<View>() {
+        @Override
+        protected void computeNext() {
+          View next = cursor.next();
+          if (next == null) {
+            done();
+          } else {
+            setNext(next);
+          }
+        }
+      };
+    }
+  }
+
   private enum TraversalStrategy {
     BREADTH_FIRST() {
       @Override
@@ -168,30 +203,6 @@ public final class TreeIterables {
     }
   }
 
-  /**
-   * A TreeView providing access to the children of a given View.
-   *
-   * <p>The only way views can have children is if they are a subclass of ViewGroup.
-   */
-  @VisibleForTesting
-  static class ViewTreeViewer implements TreeViewer<View> {
-    @Override
-    public Collection<View> children(View view) {
-      checkNotNull(view);
-      if (view instanceof ViewGroup) {
-        ViewGroup group = (ViewGroup) view;
-        int childCount = group.getChildCount();
-        List<View> children = mutableListOf();
-        for (int i = 0; i < childCount; i++) {
-          children.add(group.getChildAt(i));
-        }
-        return children;
-      } else {
-        return Collections.<View>emptyList();
-      }
-    }
-  }
-
   /**
    * Provides a tree view of items of instance T and records their distance from a well known root.
    *
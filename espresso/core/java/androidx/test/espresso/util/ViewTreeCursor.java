@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.util;
+
+import static androidx.test.internal.util.Checks.checkNotNull;
+
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.RestrictTo.Scope;
+import java.util.Arrays;
+
+/**
+ * A reusable cursor over a view hierarchy which walks {@link ViewGroup#getChildAt(int)} directly.
+ *
+ * <p>A cursor never copies the children of a visited {@link ViewGroup} into a collection. Depth
+ * first traversal keeps a primitive stack of child indices, breadth first traversal keeps an array
+ * backed queue, and both grow only when a hierarchy deeper (or wider) than any previously seen one
+ * is traversed. Once warmed up, a cursor visits a hierarchy without allocating.
+ *
+ * <p>Both traversals skip null children, which a {@link ViewGroup} may report while it is being
+ * modified.
+ *
+ * <p>Usage:
+ *
+ * <pre>
+ *   ViewTreeCursor cursor = ViewTreeCursor.obtainBreadthFirst(root);
+ *   try {
+ *     for (View view = cursor.next(); view != null; view = cursor.next()) {
+ *       ...
+ *     }
+ *   } finally {
+ *     cursor.recycle();
+ *   }
+ * </pre>
+ *
+ * <p>A cursor is not thread safe and should be used on the thread owning the hierarchy.
+ *
+ * @hide
+ */
+@RestrictTo(Scope.LIBRARY_GROUP)
+public final class ViewTreeCursor {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final Object poolLock = new Object();
+  private static ViewTreeCursor depthFirstPool;
+  private static ViewTreeCursor breadthFirstPool;
+
+  private final boolean depthFirst;
+
+  // Depth first state: the chain of groups from the root to the current node, and for each of
+  // them the index of the next child to visit.
+  private ViewGroup[] groups;
+  private int[] childIndices;
+  private int stackSize;
+
+  // Breadth first state: a queue of pending views along with their distance from the root.
+  private View[] queue;
+  private int[] queueDepths;
+  private int queueHead;
+  private int queueTail;
+
+  @Nullable private View pendingRoot;
+  private int depth = -1;
+
+  private ViewTreeCursor(boolean depthFirst) {
+    this.depthFirst = depthFirst;
+    if (depthFirst) {
+      groups = new ViewGroup[INITIAL_CAPACITY];
+      childIndices = new int[INITIAL_CAPACITY];
+    } else {
+      queue = new View[INITIAL_CAPACITY];
+      queueDepths = new int[INITIAL_CAPACITY];
+    }
+  }
+
+  /**
+   * Returns a cursor which walks the tree rooted at {@code root} in a depth-first, pre-order
+   * traversal - the same order as {@link TreeIterables#depthFirstViewTraversal(View)}.
+   *
+   * <p>The returned cursor should be handed back with {@link #recycle()} once it is no longer used.
+   */
+  public static ViewTreeCursor obtainDepthFirst(View root) {
+    ViewTreeCursor cursor;
+    synchronized (poolLock) {
+      cursor = depthFirstPool;
+      depthFirstPool = null;
+    }
+    if (cursor == null) {
+      cursor = new ViewTreeCursor(true);
+    }
+    cursor.reset(root);
+    return cursor;
+  }
+
+  /**
+   * Returns a cursor which walks the tree rooted at {@code root} in a breadth-first, row-level
+   * traversal - the same order as {@link TreeIterables#breadthFirstViewTraversal(View)}.
+   *
+   * <p>The returned cursor should be handed back with {@link #recycle()} once it is no longer used.
+   */
+  public static ViewTreeCursor obtainBreadthFirst(View root) {
+    ViewTreeCursor cursor;
+    synchronized (poolLock) {
+      cursor = breadthFirstPool;
+      breadthFirstPool = null;
+    }
+    if (cursor == null) {
+      cursor = new ViewTreeCursor(false);
+    }
+    cursor.reset(root);
+    return cursor;
+  }
+
+  /** Creates a new, unpooled depth first cursor. */
+  static ViewTreeCursor newDepthFirst() {
+    return new ViewTreeCursor(true);
+  }
+
+  /** Creates a new, unpooled breadth first cursor. */
+  static ViewTreeCursor newBreadthFirst() {
+    return new ViewTreeCursor(false);
+  }
+
+  /**
+   * Restarts this cursor at the given root, discarding any state of a previous traversal.
+   *
+   * @param root the non-null, root view.
+   */
+  public void reset(View root) {
+    clear();
+    pendingRoot = checkNotNull(root);
+  }
+
+  /**
+   * Advances the cursor.
+   *
+   * @return the next view of the traversal, or {@code null} once the whole tree has been visited.
+   */
+  @Nullable
+  public View next() {
+    return depthFirst ? nextDepthFirst() : nextBreadthFirst();
+  }
+
+  /**
+   * Returns the distance from the root of the view last returned by {@link #next()}, or -1 if the
+   * traversal has not been started.
+   */
+  public int getDepth() {
+    return depth;
+  }
+
+  /**
+   * Releases any views still referenced by this cursor and hands it back to the pool, where it may
+   * be returned by a later call to {@code obtain}. The cursor must not be used after this call.
+   */
+  public void recycle() {
+    clear();
+    synchronized (poolLock) {
+      if (depthFirst) {
+        depthFirstPool = this;
+      } else {
+        breadthFirstPool = this;
+      }
+    }
+  }
+
+  private View nextDepthFirst() {
+    View next;
+    int nextDepth;
+    if (pendingRoot != null) {
+      next = pendingRoot;
+      pendingRoot = null;
+      nextDepth = 0;
+    } else {
+      next = null;
+      nextDepth = stackSize;
+      while (next == null && stackSize > 0) {
+        int top = stackSize - 1;
+        ViewGroup group = groups[top];
+        int index = childIndices[top];
+        if (index < group.getChildCount()) {
+          childIndices[top] = index + 1;
+          View child = group.getChildAt(index);
+          if (child != null) {
+            next = child;
+            nextDepth = stackSize;
+          }
+        } else {
+          groups[top] = null;
+          stackSize = top;
+        }
+      }
+      if (next == null) {
+        return null;
+      }
+    }
+    if (next instanceof ViewGroup) {
+      push((ViewGroup) next);
+    }
+    depth = nextDepth;
+    return next;
+  }
+
+  private View nextBreadthFirst() {
+    if (pendingRoot != null) {
+      enqueue(pendingRoot, 0);
+      pendingRoot = null;
+    }
+    if (queueHead == queueTail) {
+      return null;
+    }
+    View next = queue[queueHead];
+    int nextDepth = queueDepths[queueHead];
+    queue[queueHead] = null;
+    queueHead++;
+    if (queueHead == queueTail) {
+      queueHead = 0;
+      queueTail = 0;
+    }
+    if (next instanceof ViewGroup) {
+      ViewGroup group = (ViewGroup) next;
+      int childCount = group.getChildCount();
+      for (int i = 0; i < childCount; i++) {
+        View child = group.getChildAt(i);
+        if (child != null) {
+          enqueue(child, nextDepth + 1);
+        }
+      }
+    }
+    depth = nextDepth;
+    return next;
+  }
+
+  private void push(ViewGroup group) {
+    if (stackSize == groups.length) {
+      int newCapacity = groups.length * 2;
+      ViewGroup[] newGroups = new ViewGroup[newCapacity];
+      int[] newIndices = new int[newCapacity];
+      System.arraycopy(groups, 0, newGroups, 0, stackSize);
+      System.arraycopy(childIndices, 0, newIndices, 0, stackSize);
+      groups = newGroups;
+      childIndices = newIndices;
+    }
+    groups[stackSize] = group;
+    childIndices[stackSize] = 0;
+    stackSize++;
+  }
+
+  private void enqueue(View view, int viewDepth) {
+    if (queueTail == queue.length) {
+      int pending = queueTail - queueHead;
+      if (queueHead > 0 && pending < queue.length / 2) {
+        // Plenty of room at the front, slide the pending views down instead of growing.
+        System.arraycopy(queue, queueHead, queue, 0, pending);
+        System.arraycopy(queueDepths, queueHead, queueDepths, 0, pending);
+        Arrays.fill(queue, pending, queueTail, null);
+      } else {
+        int newCapacity = queue.length * 2;
+        View[] newQueue = new View[newCapacity];
+        int[] newDepths = new int[newCapacity];
+        System.arraycopy(queue, queueHead, newQueue, 0, pending);
+        System.arraycopy(queueDepths, queueHead, newDepths, 0, pending);
+        queue = newQueue;
+        queueDepths = newDepths;
+      }
+      queueHead = 0;
+      queueTail = pending;
+    }
+    queue[queueTail] = view;
+    queueDepths[queueTail] = viewDepth;
+    queueTail++;
+  }
+
+  private void clear() {
+    pendingRoot = null;
+    depth = -1;
+    if (depthFirst) {
+      for (int i = 0; i < stackSize; i++) {
+        groups[i] = null;
+      }
+      stackSize = 0;
+    } else {
+      for (int i = queueHead; i < queueTail; i++) {
+        queue[i] = null;
+      }
+      queueHead = 0;
+      queueTail = 0;
+    }
+  }
+}
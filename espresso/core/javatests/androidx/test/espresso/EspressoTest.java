@@ -92,6 +92,12 @@ public class EspressoTest {
             // The string may be cut off by sanitization of length.
             return spanName.replaceAll("[0-9]+", "<ID>");
           }
+
+          @Override
+          public boolean isIgnored(@NonNull String spanName) {
+            // View lookups are traced separately and would only clutter the interaction spans.
+            return spanName.startsWith("Espresso.getView");
+          }
         };
     Tracing.getInstance().registerTracer(tracer);
   }
@@ -51,14 +51,36 @@ public class TestTracer implements Tracer {
     return spanName;
   }
 
+  /**
+   * Test implementation can override this method to leave out spans (and their child spans) which
+   * are not relevant to the test. See example of usage in EspressoTest.
+   */
+  public boolean isIgnored(@NonNull String spanName) {
+    return false;
+  }
+
   @NonNull
   @Override
   public Span beginSpan(@NonNull String name) {
     name = rewriteSpanName(name);
+    if (isIgnored(name)) {
+      return new IgnoredSpan();
+    }
     spans.add("beginSpan: " + name);
     return new TestUtilTracerSpan(name, 0);
   }
 
+  static class IgnoredSpan implements Span {
+    @NonNull
+    @Override
+    public Span beginChildSpan(@NonNull String name) {
+      return new IgnoredSpan();
+    }
+
+    @Override
+    public void close() {}
+  }
+
   class TestUtilTracerSpan implements Span {
     private final String spanName;
     private final int level;
@@ -33,6 +33,8 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.LargeTest;
 import androidx.test.ui.app.R;
 import androidx.test.ui.app.SendActivity;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -133,4 +135,41 @@ public class EventInjectorTest {
               });
     }
   }
+
+  @Test
+  public void injectMotionEventSequence_synchronizesOnLastEventOnly() throws Exception {
+    final List<Boolean> syncModes = new ArrayList<>();
+    EventInjector recordingInjector =
+        new EventInjector(
+            new EventInjectionStrategy() {
+              @Override
+              public boolean injectKeyEvent(KeyEvent keyEvent) {
+                return true;
+              }
+
+              @Override
+              public boolean injectMotionEvent(MotionEvent me, boolean sync) {
+                syncModes.add(sync);
+                return true;
+              }
+            });
+    long downTime = SystemClock.uptimeMillis();
+    MotionEvent[] events = new MotionEvent[10];
+    events[0] = MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, 0, 0, 0);
+    for (int i = 1; i < events.length - 1; i++) {
+      events[i] = MotionEvent.obtain(downTime, downTime + i, MotionEvent.ACTION_MOVE, i, i, 0);
+    }
+    events[events.length - 1] =
+        MotionEvent.obtain(downTime, downTime + events.length, MotionEvent.ACTION_UP, 10, 10, 0);
+    try {
+      assertThat(recordingInjector.injectMotionEventSequence(events, 0)).isTrue();
+    } finally {
+      for (MotionEvent event : events) {
+        event.recycle();
+      }
+    }
+    assertThat(syncModes)
+        .containsExactly(false, false, false, false, false, false, false, false, false, true)
+        .inOrder();
+  }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.services.storage.TestStorage;
+import androidx.test.services.storage.internal.TestStorageUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import kotlin.collections.CollectionsKt;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link IdleWaitProfileListener} and {@link IdleWaitProfile}. */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class IdleWaitProfileListenerTest {
+
+  @After
+  public void tearDown() {
+    IdleWaitProfile.setEnabled(false);
+    IdleWaitProfile.drain();
+  }
+
+  @Test
+  public void histogram_bucketsByPowersOfFour() {
+    IdleWaitProfile.Histogram histogram = new IdleWaitProfile.Histogram();
+    histogram.add(0);
+    histogram.add(3);
+    histogram.add(20);
+    histogram.add(5000);
+
+    assertThat(histogram.getCount()).isEqualTo(4);
+    assertThat(histogram.getTotalMs()).isEqualTo(5023);
+    assertThat(histogram.getMaxMs()).isEqualTo(5000);
+    assertThat(histogram.toString()).isEqualTo("4\t5023\t5000\t1\t1\t0\t1\t0\t0\t1");
+  }
+
+  @Test
+  public void record_ignoredWhenDisabled() {
+    IdleWaitProfile.record(IdleWaitProfile.MAIN_LOOPER, 10);
+
+    assertThat(IdleWaitProfile.drain()).isEmpty();
+  }
+
+  @Test
+  public void registry_recordsBusyResources() throws Exception {
+    IdleWaitProfile.setEnabled(true);
+    IdlingResourceRegistry registry = new IdlingResourceRegistry(Looper.getMainLooper());
+    OnDemandIdlingResource resource = new OnDemandIdlingResource("slow");
+    registry.registerResources(CollectionsKt.listOf(resource));
+    resource.forceIdleNow();
+    InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    registry.unregisterResources(CollectionsKt.listOf(resource));
+
+    Map<String, IdleWaitProfile.Histogram> profile = IdleWaitProfile.drain();
+    assertThat(profile).containsKey(IdleWaitProfile.IDLING_RESOURCE_PREFIX + "slow");
+    assertThat(profile.get(IdleWaitProfile.IDLING_RESOURCE_PREFIX + "slow").getCount())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void listener_writesProfilePerTest() throws Exception {
+    IdleWaitProfileListener listener = new IdleWaitProfileListener(new TestStorage());
+    Description test = Description.createTestDescription("com.example.SlowTest", "scroll");
+
+    listener.testRunStarted(Description.EMPTY);
+    listener.testStarted(test);
+    IdleWaitProfile.record(IdleWaitProfile.MAIN_LOOPER, 2);
+    IdleWaitProfile.record(IdleWaitProfile.ASYNC_TASKS, 300);
+    listener.testFinished(test);
+    listener.testRunFinished(new Result());
+
+    String output = readOutputFile(IdleWaitProfileListener.OUTPUT_FILE);
+    assertThat(output).contains("test\tsource\t" + IdleWaitProfile.header());
+    assertThat(output).contains("com.example.SlowTest#scroll\tMainLooper\t1\t2\t2\t0\t1\t0");
+    assertThat(output).contains("com.example.SlowTest#scroll\tAsyncTasks\t1\t300\t300\t0");
+    assertThat(IdleWaitProfile.isEnabled()).isFalse();
+  }
+
+  private static String readOutputFile(String pathName) throws IOException {
+    try (InputStream input =
+        TestStorageUtil.getInputStream(
+            TestStorage.getOutputFileUri(pathName), getApplicationContext().getContentResolver())) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+        bytes.write(buffer, 0, read);
+      }
+      return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+}
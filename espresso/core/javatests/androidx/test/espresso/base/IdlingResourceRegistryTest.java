@@ -39,6 +39,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import kotlin.collections.SetsKt;
 import org.junit.After;
@@ -610,6 +611,42 @@ public class IdlingResourceRegistryTest {
     assertTrue(registry.getResources().contains(newReg));
   }
 
+  @Test
+  public void testSync_unchangedResourcesAreNotReRegistered() {
+    final AtomicInteger callbackRegistrations = new AtomicInteger();
+    IdlingResource r1 =
+        new OnDemandIdlingResource("r1") {
+          @Override
+          public void registerIdleTransitionCallback(ResourceCallback callback) {
+            callbackRegistrations.incrementAndGet();
+            super.registerIdleTransitionCallback(callback);
+          }
+        };
+
+    registry.sync(SetsKt.setOf(r1), SetsKt.setOf(Looper.getMainLooper()));
+    registry.sync(SetsKt.setOf(r1), SetsKt.setOf(Looper.getMainLooper()));
+
+    assertEquals(2, registry.getResources().size());
+    assertEquals(1, callbackRegistrations.get());
+  }
+
+  @Test
+  public void getBusyResources_tracksTransitionsToIdle() throws Exception {
+    OnDemandIdlingResource busy = new OnDemandIdlingResource("busy");
+    OnDemandIdlingResource idle = new OnDemandIdlingResource("idle");
+    idle.forceIdleNow();
+    registry.sync(SetsKt.setOf(busy, idle), SetsKt.setOf());
+
+    FutureTask<List<String>> busyResources = new FutureTask<>(registry::getBusyResources);
+    handler.post(busyResources);
+    assertThat(busyResources.get()).containsExactly("busy");
+
+    busy.forceIdleNow();
+    FutureTask<Boolean> resourcesIdle = createIdleCheckTask(registry);
+    handler.post(resourcesIdle);
+    assertTrue(resourcesIdle.get());
+  }
+
   private FutureTask<Boolean> createIdleCheckTask(final IdlingResourceRegistry registry) {
     return new FutureTask<>(registry::allResourcesAreIdle);
   }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.app.AlertDialog;
+import android.os.Looper;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.espresso.Root;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.ui.app.SendActivity;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link RootsOracle}. */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class RootsOracleTest {
+
+  private final RootsOracle rootsOracle = new RootsOracle(Looper.getMainLooper());
+
+  @Test
+  public void listActiveRoots_reusedWhileWindowsAreUnchanged() {
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      scenario.onActivity(
+          activity -> {
+            List<Root> roots = rootsOracle.listActiveRoots();
+            assertThat(roots).isNotEmpty();
+            assertThat(rootsOracle.listActiveRoots()).isSameInstanceAs(roots);
+          });
+    }
+  }
+
+  @Test
+  public void listActiveRoots_updatedWhenWindowIsAdded() {
+    AtomicReference<List<Root>> before = new AtomicReference<>();
+    AtomicReference<AlertDialog> dialog = new AtomicReference<>();
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      scenario.onActivity(
+          activity -> {
+            before.set(rootsOracle.listActiveRoots());
+            dialog.set(new AlertDialog.Builder(activity).setMessage("dialog").show());
+          });
+      getInstrumentation().waitForIdleSync();
+
+      scenario.onActivity(
+          activity -> {
+            List<Root> after = rootsOracle.listActiveRoots();
+            assertThat(after).hasSize(before.get().size() + 1);
+            // The dialog is the newest window, listed first.
+            assertThat(after.get(0).getDecorView())
+                .isSameInstanceAs(dialog.get().getWindow().getDecorView());
+            // Roots of the windows which were already shown are reused.
+            assertThat(after.subList(1, after.size())).containsExactlyElementsIn(before.get());
+            dialog.get().dismiss();
+          });
+      getInstrumentation().waitForIdleSync();
+
+      scenario.onActivity(
+          activity -> {
+            assertThat(rootsOracle.listActiveRoots()).containsExactlyElementsIn(before.get());
+          });
+    }
+  }
+}
@@ -17,14 +17,19 @@
 package androidx.test.espresso.base;
 
 import static androidx.test.espresso.Espresso.onView;
+import static androidx.test.espresso.action.ViewActions.clearText;
 import static androidx.test.espresso.action.ViewActions.typeText;
+import static androidx.test.espresso.action.ViewActions.typeTextInBulk;
 import static androidx.test.espresso.matcher.ViewMatchers.withId;
 import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
 import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
 
 import android.os.Build;
+import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
@@ -43,6 +48,8 @@ import androidx.test.ui.app.SendActivity;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Provider;
 import org.junit.Before;
 import org.junit.Test;
@@ -52,6 +59,7 @@ import org.junit.runner.RunWith;
 @LargeTest
 @RunWith(AndroidJUnit4.class)
 public class UiControllerImplIntegrationTest {
+  private static final String TAG = "UiControllerImplIntegrationTest";
 
   private UiController uiController;
 
@@ -222,4 +230,99 @@ public class UiControllerImplIntegrationTest {
               });
     }
   }
+
+  @Test
+  public void loopMainThreadUntilIdle_alreadyIdleLatency() {
+    final int rounds = 1000;
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      getInstrumentation().waitForIdleSync();
+      getInstrumentation()
+          .runOnMainSync(
+              () -> {
+                // Warm up: settles any frame still pending after launch.
+                uiController.loopMainThreadUntilIdle();
+
+                // A message due long after the calls must neither block nor be run by them.
+                boolean[] delayedRan = new boolean[1];
+                Handler handler = new Handler(Looper.getMainLooper());
+                Runnable delayed = () -> delayedRan[0] = true;
+                handler.postDelayed(delayed, TimeUnit.MINUTES.toMillis(1));
+
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (int i = 0; i < rounds; i++) {
+                  uiController.loopMainThreadUntilIdle();
+                }
+                long elapsedNanos = SystemClock.elapsedRealtimeNanos() - start;
+                handler.removeCallbacks(delayed);
+
+                Log.i(
+                    TAG,
+                    String.format(
+                        Locale.ROOT,
+                        "loopMainThreadUntilIdle on an idle app: %d ns/call over %d calls",
+                        elapsedNanos / rounds,
+                        rounds));
+                assertThat(delayedRan[0]).isFalse();
+              });
+    }
+  }
+
+  @Test
+  public void loopMainThreadForAtLeast_endDelayEarly() {
+    UiControllerImpl controller = (UiControllerImpl) uiController;
+    getInstrumentation()
+        .runOnMainSync(
+            () -> {
+              new Handler(Looper.getMainLooper()).postDelayed(controller::endDelayEarly, 50);
+              long start = SystemClock.uptimeMillis();
+              controller.loopMainThreadForAtLeast(TimeUnit.SECONDS.toMillis(10));
+              assertThat(SystemClock.uptimeMillis() - start).isLessThan(5000L);
+
+              // Without an ongoing delay there is nothing to end.
+              controller.endDelayEarly();
+              start = SystemClock.uptimeMillis();
+              controller.loopMainThreadForAtLeast(100);
+              assertThat(SystemClock.uptimeMillis() - start).isAtLeast(100L);
+            });
+  }
+
+  @Test
+  public void injectStringInBulk_charsPerSecond() {
+    StringBuilder text = new StringBuilder();
+    while (text.length() < 200) {
+      text.append("The quick brown fox jumps over the lazy dog. ");
+    }
+    String stringToBeTyped = text.substring(0, 200);
+    try (ActivityScenario<SendActivity> activityScenario =
+        ActivityScenario.launch(SendActivity.class)) {
+      long start = SystemClock.elapsedRealtime();
+      onView(withId(R.id.send_data_to_call_edit_text)).perform(typeText(stringToBeTyped));
+      long perEventMillis = SystemClock.elapsedRealtime() - start;
+      assertTypedText(activityScenario, stringToBeTyped);
+
+      onView(withId(R.id.send_data_to_call_edit_text)).perform(clearText());
+      start = SystemClock.elapsedRealtime();
+      onView(withId(R.id.send_data_to_call_edit_text)).perform(typeTextInBulk(stringToBeTyped));
+      long bulkMillis = SystemClock.elapsedRealtime() - start;
+      assertTypedText(activityScenario, stringToBeTyped);
+
+      Log.i(
+          TAG,
+          String.format(
+              Locale.ROOT,
+              "Typing %d chars: %.1f chars/s per event, %.1f chars/s in bulk",
+              stringToBeTyped.length(),
+              stringToBeTyped.length() * 1000f / Math.max(1, perEventMillis),
+              stringToBeTyped.length() * 1000f / Math.max(1, bulkMillis)));
+    }
+  }
+
+  private static void assertTypedText(
+      ActivityScenario<SendActivity> activityScenario, String expected) {
+    activityScenario.onActivity(
+        activity -> {
+          EditText editText = activity.findViewById(R.id.send_data_to_call_edit_text);
+          assertThat(editText.getText().toString()).isEqualTo(expected);
+        });
+  }
 }
@@ -18,21 +18,27 @@ package androidx.test.espresso.base;
 
 import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
 import static org.junit.rules.ExpectedException.none;
 
 import android.content.Context;
 import android.view.View;
+import android.widget.ListView;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 import androidx.test.annotation.UiThreadTest;
 import androidx.test.espresso.AmbiguousViewMatcherException;
 import androidx.test.espresso.NoMatchingViewException;
+import androidx.test.espresso.TestTracer;
 import androidx.test.espresso.ViewFinder;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.MediumTest;
+import androidx.test.platform.tracing.Tracing;
 import javax.inject.Provider;
 import org.junit.Before;
 import org.junit.Rule;
@@ -120,4 +126,47 @@ public class ViewFinderImplTest {
     expectedException.expect(IllegalStateException.class);
     finder.getView();
   }
+
+  @Test
+  @UiThreadTest
+  public void getView_multiple_reportsAllAmbiguousViews() {
+    ViewFinder finder = new ViewFinderImpl(notNullValue(View.class), testViewProvider);
+    try {
+      finder.getView();
+      fail("Expected AmbiguousViewMatcherException");
+    } catch (AmbiguousViewMatcherException expected) {
+      // root, 4 children, the nesting layout and its child.
+      assertThat(expected.getMessage(), containsString("matches 7 views in the hierarchy"));
+    }
+  }
+
+  @Test
+  @UiThreadTest
+  public void getView_missing_suggestsAdapterViews() {
+    testView.addView(new ListView(mTargetContext));
+    ViewFinder finder = new ViewFinderImpl(nullValue(View.class), testViewProvider);
+    try {
+      finder.getView();
+      fail("Expected NoMatchingViewException");
+    } catch (NoMatchingViewException expected) {
+      assertThat(expected.getMessage(), containsString("Espresso.onData"));
+    }
+  }
+
+  @Test
+  @UiThreadTest
+  public void getView_tracesLookupStats() {
+    TestTracer tracer = new TestTracer();
+    Tracing.getInstance().registerTracer(tracer);
+    try {
+      ViewFinder finder = new ViewFinderImpl(sameInstance(child1), testViewProvider);
+      assertThat(finder.getView(), sameInstance(child1));
+    } finally {
+      Tracing.getInstance().unregisterTracer(tracer);
+    }
+    // Every view has to be visited to rule out a second match.
+    assertThat(
+        tracer.getSpans(),
+        hasItem("+ childSpan: Espresso.getView.stats(visited 7, evaluated 7)"));
+  }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.base;
+
+import static androidx.test.espresso.matcher.ViewMatchers.isAssignableFrom;
+import static androidx.test.espresso.matcher.ViewMatchers.withId;
+import static androidx.test.espresso.matcher.ViewMatchers.withText;
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.espresso.AmbiguousViewMatcherException;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.ui.app.R;
+import androidx.test.ui.app.SendActivity;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests for {@link ViewIndex}. */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class ViewIndexTest {
+
+  @Before
+  public void setUp() {
+    ViewIndex.setEnabled(true);
+  }
+
+  @After
+  public void tearDown() {
+    ViewIndex.setEnabled(false);
+  }
+
+  @Test
+  public void findCandidates_byId() {
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      scenario.onActivity(
+          activity -> {
+            View root = activity.getWindow().getDecorView();
+            List<View> candidates = ViewIndex.findCandidates(root, withId(R.id.send_button));
+            assertThat(candidates).containsExactly(activity.findViewById(R.id.send_button));
+          });
+    }
+  }
+
+  @Test
+  public void findCandidates_byAssignableClass() {
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      scenario.onActivity(
+          activity -> {
+            View root = activity.getWindow().getDecorView();
+            List<View> candidates = ViewIndex.findCandidates(root, isAssignableFrom(Button.class));
+            assertThat(candidates).contains(activity.findViewById(R.id.send_button));
+            for (View candidate : candidates) {
+              assertThat(candidate).isInstanceOf(Button.class);
+            }
+          });
+    }
+  }
+
+  @Test
+  public void findCandidates_reusedUntilNextLayout() {
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      scenario.onActivity(
+          activity -> {
+            View root = activity.getWindow().getDecorView();
+            assertThat(ViewIndex.findCandidates(root, withId(R.id.send_button)))
+                .isSameInstanceAs(ViewIndex.findCandidates(root, withId(R.id.send_button)));
+
+            TextView duplicate = new TextView(activity);
+            duplicate.setId(R.id.send_button);
+            ((ViewGroup) activity.findViewById(android.R.id.content)).addView(duplicate);
+          });
+      getInstrumentation().waitForIdleSync();
+
+      scenario.onActivity(
+          activity -> {
+            View root = activity.getWindow().getDecorView();
+            assertThat(ViewIndex.findCandidates(root, withId(R.id.send_button))).hasSize(2);
+            assertThrows(
+                AmbiguousViewMatcherException.class,
+                () -> new ViewFinderImpl(withId(R.id.send_button), () -> root).getView());
+          });
+    }
+  }
+
+  @Test
+  public void findCandidates_unindexableMatcher() {
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      scenario.onActivity(
+          activity -> {
+            View root = activity.getWindow().getDecorView();
+            assertThat(ViewIndex.findCandidates(root, withText("Send"))).isNull();
+          });
+    }
+  }
+
+  @Test
+  public void findCandidates_detachedRoot() {
+    getInstrumentation()
+        .runOnMainSync(
+            () -> {
+              FrameLayout root = new FrameLayout(getInstrumentation().getTargetContext());
+              View child = new View(getInstrumentation().getTargetContext());
+              child.setId(R.id.send_button);
+              root.addView(child);
+              assertThat(ViewIndex.findCandidates(root, withId(R.id.send_button))).isNull();
+            });
+  }
+
+  @Test
+  public void findCandidates_disabled() {
+    ViewIndex.setEnabled(false);
+    try (ActivityScenario<SendActivity> scenario = ActivityScenario.launch(SendActivity.class)) {
+      scenario.onActivity(
+          activity -> {
+            View root = activity.getWindow().getDecorView();
+            assertThat(ViewIndex.findCandidates(root, withId(R.id.send_button))).isNull();
+          });
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.espresso.util;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+import static kotlin.collections.CollectionsKt.listOf;
+import static kotlin.collections.CollectionsKt.mutableListOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+import java.util.List;
+import java.util.Locale;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests and allocation benchmark for {@link ViewTreeCursor}. */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class ViewTreeCursorTest {
+  private static final String TAG = "ViewTreeCursorTest";
+
+  private Context context;
+
+  // Root / | \ A R U /| |\ B D G N
+  private FrameLayout root;
+  private FrameLayout a;
+  private FrameLayout r;
+  private View u;
+  private View b;
+  private View d;
+  private View g;
+  private View n;
+
+  @Before
+  public void setUp() {
+    context = getInstrumentation().getTargetContext();
+    root = new FrameLayout(context);
+    a = new FrameLayout(context);
+    r = new FrameLayout(context);
+    u = new View(context);
+    b = new View(context);
+    d = new View(context);
+    g = new View(context);
+    n = new View(context);
+    root.addView(a);
+    root.addView(r);
+    root.addView(u);
+    a.addView(b);
+    a.addView(d);
+    r.addView(g);
+    r.addView(n);
+  }
+
+  @Test
+  public void depthFirst_order() {
+    ViewTreeCursor cursor = ViewTreeCursor.obtainDepthFirst(root);
+    try {
+      assertThat(drain(cursor), is(listOf(root, a, b, d, r, g, n, u)));
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Test
+  public void breadthFirst_order() {
+    ViewTreeCursor cursor = ViewTreeCursor.obtainBreadthFirst(root);
+    try {
+      assertThat(drain(cursor), is(listOf(root, a, r, u, b, d, g, n)));
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Test
+  public void depthFirst_depths() {
+    ViewTreeCursor cursor = ViewTreeCursor.obtainDepthFirst(root);
+    try {
+      assertThat(drainDepths(cursor), is(listOf(0, 1, 2, 2, 1, 2, 2, 1)));
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Test
+  public void breadthFirst_depths() {
+    ViewTreeCursor cursor = ViewTreeCursor.obtainBreadthFirst(root);
+    try {
+      assertThat(drainDepths(cursor), is(listOf(0, 1, 1, 1, 2, 2, 2, 2)));
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Test
+  public void leafRoot() {
+    ViewTreeCursor cursor = ViewTreeCursor.obtainDepthFirst(u);
+    try {
+      assertThat(cursor.next(), is(u));
+      assertThat(cursor.getDepth(), is(0));
+      assertThat(cursor.next(), nullValue());
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Test
+  public void reset_restartsTraversal() {
+    ViewTreeCursor cursor = ViewTreeCursor.obtainBreadthFirst(root);
+    try {
+      cursor.next();
+      cursor.next();
+      cursor.reset(a);
+      assertThat(drain(cursor), is(listOf(a, b, d)));
+    } finally {
+      cursor.recycle();
+    }
+  }
+
+  @Test
+  public void nullChildren_areSkipped() {
+    FrameLayout withNullChild =
+        new FrameLayout(context) {
+          @Override
+          public View getChildAt(int index) {
+            return index == 1 ? null : super.getChildAt(index);
+          }
+        };
+    View first = new View(context);
+    View third = new View(context);
+    withNullChild.addView(first);
+    withNullChild.addView(new View(context));
+    withNullChild.addView(third);
+
+    ViewTreeCursor depthFirst = ViewTreeCursor.obtainDepthFirst(withNullChild);
+    ViewTreeCursor breadthFirst = ViewTreeCursor.obtainBreadthFirst(withNullChild);
+    try {
+      assertThat(drain(depthFirst), is(listOf(withNullChild, first, third)));
+      assertThat(drain(breadthFirst), is(listOf(withNullChild, first, third)));
+    } finally {
+      depthFirst.recycle();
+      breadthFirst.recycle();
+    }
+  }
+
+  @Test
+  public void matchesReferenceTraversal_onLargeHierarchy() {
+    View largeRoot = buildHierarchy(2000);
+    List<View> expectedDepthFirst = mutableListOf();
+    collectDepthFirst(largeRoot, expectedDepthFirst);
+    List<View> expectedBreadthFirst = mutableListOf();
+    collectBreadthFirst(listOf(largeRoot), expectedBreadthFirst);
+
+    ViewTreeCursor depthFirst = ViewTreeCursor.obtainDepthFirst(largeRoot);
+    ViewTreeCursor breadthFirst = ViewTreeCursor.obtainBreadthFirst(largeRoot);
+    try {
+      assertThat(drain(depthFirst), is(expectedDepthFirst));
+      assertThat(drain(breadthFirst), is(expectedBreadthFirst));
+    } finally {
+      depthFirst.recycle();
+      breadthFirst.recycle();
+    }
+  }
+
+  @Test
+  public void depthFirst_doesNotAllocatePerNode() {
+    assertNoAllocations(buildHierarchy(5000), true);
+  }
+
+  @Test
+  public void breadthFirst_doesNotAllocatePerNode() {
+    assertNoAllocations(buildHierarchy(5000), false);
+  }
+
+  @SuppressWarnings("deprecation") // Debug allocation counting is still the cheapest option here.
+  private static void assertNoAllocations(View hierarchyRoot, boolean depthFirst) {
+    final int rounds = 20;
+    // Warm up: lets the pooled cursor grow its arrays to fit this hierarchy.
+    int viewCount = traverse(hierarchyRoot, depthFirst);
+
+    Debug.resetThreadAllocCount();
+    Debug.startAllocCounting();
+    long start = SystemClock.elapsedRealtimeNanos();
+    int visited = 0;
+    for (int i = 0; i < rounds; i++) {
+      visited += traverse(hierarchyRoot, depthFirst);
+    }
+    long elapsedNanos = SystemClock.elapsedRealtimeNanos() - start;
+    Debug.stopAllocCounting();
+    int allocations = Debug.getThreadAllocCount();
+
+    Log.i(
+        TAG,
+        String.format(
+            Locale.ROOT,
+            "%s traversal of %d views: %d ns/view, %d allocations over %d rounds",
+            depthFirst ? "Depth first" : "Breadth first",
+            viewCount,
+            elapsedNanos / visited,
+            allocations,
+            rounds));
+    assertThat(visited, is(viewCount * rounds));
+    assertThat(allocations, is(0));
+  }
+
+  private static int traverse(View hierarchyRoot, boolean depthFirst) {
+    ViewTreeCursor cursor =
+        depthFirst
+            ? ViewTreeCursor.obtainDepthFirst(hierarchyRoot)
+            : ViewTreeCursor.obtainBreadthFirst(hierarchyRoot);
+    int count = 0;
+    try {
+      for (View view = cursor.next(); view != null; view = cursor.next()) {
+        count++;
+      }
+    } finally {
+      cursor.recycle();
+    }
+    return count;
+  }
+
+  /**
+   * Builds a synthetic hierarchy of roughly {@code size} views made of wide rows (as in a long
+   * form) and a deep chain of nested groups (as in heavily wrapped custom components).
+   */
+  private View buildHierarchy(int size) {
+    FrameLayout hierarchyRoot = new FrameLayout(context);
+    int remaining = size - 1;
+
+    ViewGroup chainParent = hierarchyRoot;
+    for (int i = 0; i < 64 && remaining > 0; i++, remaining--) {
+      FrameLayout nested = new FrameLayout(context);
+      chainParent.addView(nested);
+      chainParent = nested;
+    }
+
+    while (remaining > 0) {
+      FrameLayout row = new FrameLayout(context);
+      hierarchyRoot.addView(row);
+      remaining--;
+      for (int i = 0; i < 20 && remaining > 0; i++, remaining--) {
+        row.addView(new View(context));
+      }
+    }
+    return hierarchyRoot;
+  }
+
+  /** A straightforward recursive pre-order traversal, used as reference for the cursor. */
+  private static void collectDepthFirst(View view, List<View> views) {
+    views.add(view);
+    if (view instanceof ViewGroup) {
+      ViewGroup group = (ViewGroup) view;
+      for (int i = 0; i < group.getChildCount(); i++) {
+        View child = group.getChildAt(i);
+        if (child != null) {
+          collectDepthFirst(child, views);
+        }
+      }
+    }
+  }
+
+  /** A recursive level by level traversal, used as reference for the cursor. */
+  private static void collectBreadthFirst(List<View> level, List<View> views) {
+    if (level.isEmpty()) {
+      return;
+    }
+    views.addAll(level);
+    List<View> nextLevel = mutableListOf();
+    for (View view : level) {
+      if (view instanceof ViewGroup) {
+        ViewGroup group = (ViewGroup) view;
+        for (int i = 0; i < group.getChildCount(); i++) {
+          View child = group.getChildAt(i);
+          if (child != null) {
+            nextLevel.add(child);
+          }
+        }
+      }
+    }
+    collectBreadthFirst(nextLevel, views);
+  }
+
+  private static List<View> drain(ViewTreeCursor cursor) {
+    List<View> views = mutableListOf();
+    for (View view = cursor.next(); view != null; view = cursor.next()) {
+      views.add(view);
+    }
+    return views;
+  }
+
+  private static List<Integer> drainDepths(ViewTreeCursor cursor) {
+    List<Integer> depths = mutableListOf();
+    for (View view = cursor.next(); view != null; view = cursor.next()) {
+      depths.add(cursor.getDepth());
+    }
+    return depths;
+  }
+}
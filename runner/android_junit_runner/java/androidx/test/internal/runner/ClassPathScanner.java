@@ -301,13 +301,35 @@ public class ClassPathScanner {
   /**
    * Retrieves set of classpath entries that match given {@link ClassNameFilter}.
    *
+   * <p>Each class path entry is scanned on its own worker when there are several of them, which is
+   * only the case for the extracted secondary dex files of legacy multidex or when paths are given
+   * explicitly. A single apk, even a multidex one, is scanned on the calling thread.
+   *
    * @throws IOException if failed to read classes from classpath
    */
-  public Set<String> getClassPathEntries(ClassNameFilter filter) throws IOException {
-    // use LinkedHashSet for predictable order
+  public Set<String> getClassPathEntries(final ClassNameFilter filter) throws IOException {
+    // Each entry is scanned into its own set, merged in class path order.
+    List<String> paths = new ArrayList<>(classPath);
+    final List<Set<String>> entryNamesPerPath = new ArrayList<>(paths.size());
+    for (int i = 0; i < paths.size(); i++) {
+      entryNamesPerPath.add(null);
+    }
+    ParallelWorkers.forEach(
+        TAG,
+        paths,
+        /* minItemsPerWorker= */ 1,
+        new ParallelWorkers.Task<String, IOException>() {
+          @Override
+          public void run(int index, String path) throws IOException {
+            // use LinkedHashSet for predictable order
+            Set<String> entryNames = new LinkedHashSet<>();
+            addEntriesFromPath(entryNames, path, filter);
+            entryNamesPerPath.set(index, entryNames);
+          }
+        });
     Set<String> entryNames = new LinkedHashSet<>();
-    for (String path : classPath) {
-      addEntriesFromPath(entryNames, path, filter);
+    for (Set<String> pathEntryNames : entryNamesPerPath) {
+      entryNames.addAll(pathEntryNames);
     }
     return entryNames;
   }
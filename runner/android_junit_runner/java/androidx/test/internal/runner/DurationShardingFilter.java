@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.runner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+/**
+ * A sharding filter balancing the expected duration of shards, based on the durations of previous
+ * runs of the tests.
+ *
+ * <p>Tests with a known duration are assigned longest first to the shard with the least expected
+ * duration so far. Tests without a known duration are assigned by hash, like the default sharding,
+ * and are expected to last the average known duration.
+ *
+ * <p>Every shard must be given the same tests and durations for shards not to overlap.
+ */
+class DurationShardingFilter extends Filter {
+
+  private final int numShards;
+  private final int shardIndex;
+  private final Set<Description> shardTests;
+  private final long[] predictedShardDurationsMs;
+
+  private DurationShardingFilter(
+      int numShards,
+      int shardIndex,
+      Set<Description> shardTests,
+      long[] predictedShardDurationsMs) {
+    this.numShards = numShards;
+    this.shardIndex = shardIndex;
+    this.shardTests = shardTests;
+    this.predictedShardDurationsMs = predictedShardDurationsMs;
+  }
+
+  /**
+   * Creates the filter for a shard.
+   *
+   * @param tests the tests to distribute, across all shards
+   * @param testDurations the duration of tests in milliseconds, keyed by {@code class#method}
+   */
+  static DurationShardingFilter create(
+      Collection<Description> tests,
+      final Map<String, Long> testDurations,
+      int numShards,
+      int shardIndex) {
+    List<Description> knownTests = new ArrayList<>();
+    List<Description> unknownTests = new ArrayList<>();
+    long totalKnownDurationMs = 0;
+    for (Description test : new LinkedHashSet<>(tests)) {
+      Long durationMs = testDurations.get(getKey(test));
+      if (durationMs != null) {
+        knownTests.add(test);
+        totalKnownDurationMs += durationMs;
+      } else {
+        unknownTests.add(test);
+      }
+    }
+    long unknownDurationMs = knownTests.isEmpty() ? 0 : totalKnownDurationMs / knownTests.size();
+
+    long[] shardDurationsMs = new long[numShards];
+    Set<Description> shardTests = new HashSet<>();
+    for (Description test : unknownTests) {
+      int shard = Math.abs(test.hashCode()) % numShards;
+      shardDurationsMs[shard] += unknownDurationMs;
+      if (shard == shardIndex) {
+        shardTests.add(test);
+      }
+    }
+
+    // Sort by name among equal durations, so that every shard computes the same assignment.
+    Collections.sort(
+        knownTests,
+        new Comparator<Description>() {
+          @Override
+          public int compare(Description a, Description b) {
+            int byDuration = testDurations.get(getKey(b)).compareTo(testDurations.get(getKey(a)));
+            return byDuration != 0 ? byDuration : a.getDisplayName().compareTo(b.getDisplayName());
+          }
+        });
+    for (Description test : knownTests) {
+      int shard = 0;
+      for (int i = 1; i < numShards; i++) {
+        if (shardDurationsMs[i] < shardDurationsMs[shard]) {
+          shard = i;
+        }
+      }
+      shardDurationsMs[shard] += testDurations.get(getKey(test));
+      if (shard == shardIndex) {
+        shardTests.add(test);
+      }
+    }
+    return new DurationShardingFilter(numShards, shardIndex, shardTests, shardDurationsMs);
+  }
+
+  private static String getKey(Description test) {
+    return test.getClassName() + "#" + test.getMethodName();
+  }
+
+  /** Returns the expected duration of every shard, in milliseconds. */
+  long[] getPredictedShardDurationsMs() {
+    return predictedShardDurationsMs.clone();
+  }
+
+  @Override
+  public boolean shouldRun(Description description) {
+    if (description.isTest()) {
+      return shardTests.contains(description);
+    }
+    // The description is a suite, see ShardingFilter.
+    return true;
+  }
+
+  @Override
+  public String describe() {
+    return String.format(
+        "Shard %s of %s shards balanced by duration, expected to last %sms",
+        shardIndex, numShards, predictedShardDurationsMs[shardIndex]);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.runner;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a task over every item of a list on a bounded number of short lived worker threads, used to
+ * speed up test discovery on devices with several cores.
+ *
+ * <p>Items are handed out one at a time, so callers needing a deterministic result should store
+ * the outcome of each item at its index rather than in completion order.
+ */
+final class ParallelWorkers {
+
+  /** The work to do for a single item. */
+  interface Task<T, E extends Exception> {
+    void run(int index, T item) throws E;
+  }
+
+  private ParallelWorkers() {}
+
+  /**
+   * Runs {@code task} for every item, using at most one worker per available processor and per
+   * {@code minItemsPerWorker} items. Runs on the calling thread if a single worker would be used.
+   *
+   * <p>Returns once every item has been processed. If a task fails, remaining items are skipped and
+   * the first failure is rethrown.
+   */
+  @SuppressWarnings("unchecked")
+  static <T, E extends Exception> void forEach(
+      String name, final List<T> items, int minItemsPerWorker, final Task<T, E> task) throws E {
+    int workerCount =
+        Math.min(Runtime.getRuntime().availableProcessors(), items.size() / minItemsPerWorker);
+    if (workerCount <= 1) {
+      for (int i = 0; i < items.size(); i++) {
+        task.run(i, items.get(i));
+      }
+      return;
+    }
+
+    final AtomicInteger nextIndex = new AtomicInteger();
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread[] workers = new Thread[workerCount];
+    for (int w = 0; w < workerCount; w++) {
+      workers[w] =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  for (int i = nextIndex.getAndIncrement();
+                      i < items.size() && failure.get() == null;
+                      i = nextIndex.getAndIncrement()) {
+                    try {
+                      task.run(i, items.get(i));
+                    } catch (Throwable t) {
+                      failure.compareAndSet(null, t);
+                    }
+                  }
+                }
+              },
+              name + "-" + w);
+      workers[w].setDaemon(true);
+      workers[w].start();
+    }
+    boolean interrupted = false;
+    for (Thread worker : workers) {
+      while (worker.isAlive()) {
+        try {
+          worker.join();
+        } catch (InterruptedException e) {
+          // Workers only run for a bounded time, finish waiting for them.
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof Error) {
+      throw (Error) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t != null) {
+      throw (E) t;
+    }
+  }
+}
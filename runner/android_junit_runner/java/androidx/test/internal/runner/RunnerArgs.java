@@ -40,8 +40,10 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.junit.runner.manipulation.Filter;
 import org.junit.runner.notification.RunListener;
@@ -61,6 +63,7 @@ public class RunnerArgs {
   static final String ARGUMENT_NOT_ANNOTATION = "notAnnotation";
   static final String ARGUMENT_NUM_SHARDS = "numShards";
   static final String ARGUMENT_SHARD_INDEX = "shardIndex";
+  static final String ARGUMENT_SHARD_DURATIONS_FILE = "shardDurationsFile";
   static final String ARGUMENT_DELAY_IN_MILLIS = "delay_msec";
   static final String ARGUMENT_COVERAGE = "coverage";
   static final String ARGUMENT_COVERAGE_PATH = "coverageFile";
@@ -96,6 +99,8 @@ public class RunnerArgs {
   static final String ARGUMENT_SHELL_EXEC_BINDER_KEY = "shellExecBinderKey";
   static final String ARGUMENT_RUN_LISTENER_NEW_ORDER = "newRunListenerMode";
   static final String ARGUMENT_TESTS_REGEX = "tests_regex";
+  static final String ARGUMENT_USE_TEST_DISCOVERY_INDEX = "useTestDiscoveryIndex";
+  static final String ARGUMENT_RESULTS_FILE = "resultsFile";
 
   // used to separate multiple fully-qualified test case class names
   private static final String CLASS_SEPARATOR = ",";
@@ -123,6 +128,7 @@ public class RunnerArgs {
   public final List<TestArg> notTests;
   public final int numShards;
   public final int shardIndex;
+  public final Map<String, Long> testDurations;
   public final boolean disableAnalytics;
   public final List<ApplicationLifecycleCallback> appListeners;
   public final ClassLoader classLoader;
@@ -139,6 +145,8 @@ public class RunnerArgs {
   public final boolean newRunListenerMode;
   public final String testsRegEx;
   public final boolean testPlatformMigration;
+  public final boolean useTestDiscoveryIndex;
+  public final String resultsFile;
 
   /** Encapsulates a test class and optional method. */
   public static class TestArg {
@@ -186,6 +194,7 @@ public class RunnerArgs {
     this.notTests = Collections.unmodifiableList(builder.notTests);
     this.numShards = builder.numShards;
     this.shardIndex = builder.shardIndex;
+    this.testDurations = Collections.unmodifiableMap(builder.testDurations);
     this.disableAnalytics = builder.disableAnalytics;
     this.appListeners = Collections.unmodifiableList(builder.appListeners);
     this.classLoader = builder.classLoader;
@@ -202,6 +211,8 @@ public class RunnerArgs {
     this.newRunListenerMode = builder.newRunListenerMode;
     this.testsRegEx = builder.testsRegEx;
     this.testPlatformMigration = builder.testPlatformMigration;
+    this.useTestDiscoveryIndex = builder.useTestDiscoveryIndex;
+    this.resultsFile = builder.resultsFile;
   }
 
   /** Builder for {@link RunnerArgs}. */
@@ -225,6 +236,7 @@ public class RunnerArgs {
     private List<TestArg> notTests = new ArrayList<>();
     private int numShards = 0;
     private int shardIndex = 0;
+    private final Map<String, Long> testDurations = new HashMap<>();
     private boolean disableAnalytics = false;
     private List<ApplicationLifecycleCallback> appListeners =
         new ArrayList<ApplicationLifecycleCallback>();
@@ -242,6 +254,8 @@ public class RunnerArgs {
     private boolean newRunListenerMode = false;
     private String testsRegEx = null;
     private boolean testPlatformMigration = false;
+    private boolean useTestDiscoveryIndex = false;
+    private String resultsFile = null;
     private final PlatformTestStorage testStorage;
 
     public Builder() {
@@ -291,6 +305,9 @@ public class RunnerArgs {
       this.testTimeout = parseUnsignedLong(bundle.getString(ARGUMENT_TIMEOUT), ARGUMENT_TIMEOUT);
       this.numShards = parseUnsignedInt(bundle.get(ARGUMENT_NUM_SHARDS), ARGUMENT_NUM_SHARDS);
       this.shardIndex = parseUnsignedInt(bundle.get(ARGUMENT_SHARD_INDEX), ARGUMENT_SHARD_INDEX);
+      this.testDurations.putAll(
+          parseTestDurations(
+              useTestStorageService, bundle.getString(ARGUMENT_SHARD_DURATIONS_FILE)));
       this.logOnly = parseBoolean(bundle.getString(ARGUMENT_LOG_ONLY));
       this.disableAnalytics = parseBoolean(bundle.getString(ARGUMENT_DISABLE_ANALYTICS));
       this.appListeners.addAll(
@@ -320,6 +337,9 @@ public class RunnerArgs {
       this.newRunListenerMode = parseBoolean(bundle.getString(ARGUMENT_RUN_LISTENER_NEW_ORDER));
       this.testsRegEx = bundle.getString(ARGUMENT_TESTS_REGEX);
       this.testPlatformMigration = parseBoolean(bundle.getString(ARGUMENT_TEST_PLATFORM_MIGRATION));
+      this.useTestDiscoveryIndex =
+          parseBoolean(bundle.getString(ARGUMENT_USE_TEST_DISCOVERY_INDEX));
+      this.resultsFile = bundle.getString(ARGUMENT_RESULTS_FILE);
       return this;
     }
 
@@ -353,6 +373,43 @@ public class RunnerArgs {
       }
     }
 
+    /**
+     * Parses a test duration history file, read from test storage. Each line holds a test, in the
+     * form {@code class#method}, and its duration in milliseconds separated by whitespace.
+     *
+     * @return the duration of each test, empty if no file was given
+     */
+    private Map<String, Long> parseTestDurations(boolean useStorageService, String filePath) {
+      Map<String, Long> durations = new HashMap<>();
+      if (filePath == null) {
+        return durations;
+      }
+      String storagePath =
+          useStorageService && filePath.startsWith("/") ? filePath.substring(1) : filePath;
+      try (BufferedReader reader =
+          new BufferedReader(new InputStreamReader(testStorage.openInputFile(storagePath)))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          line = line.trim();
+          if (line.isEmpty() || line.startsWith("#")) {
+            continue;
+          }
+          String[] fields = line.split("\\s+");
+          try {
+            if (fields.length != 2) {
+              throw new NumberFormatException("expected a test and a duration");
+            }
+            durations.put(fields[0], Long.parseLong(fields[1]));
+          } catch (NumberFormatException e) {
+            Log.w(LOG_TAG, String.format("Ignoring malformed test duration '%s'", line), e);
+          }
+        }
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Could not read test durations file " + filePath, e);
+      }
+      return durations;
+    }
+
     /** Populate the arg data from the instrumentation:metadata attribute in Manifest. */
     public Builder fromManifest(Instrumentation instr) {
       PackageManager pm = instr.getContext().getPackageManager();
@@ -17,7 +17,14 @@
 package androidx.test.internal.runner;
 
 import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.tracing.Trace;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.junit.runner.Runner;
 import org.junit.runners.model.RunnerBuilder;
 
@@ -26,32 +33,110 @@ import org.junit.runners.model.RunnerBuilder;
  *
  * <p>This is a lenient loader intended for class path scanning cases, where if a class cannot be
  * loaded or is not a test it will be ignored.
+ *
+ * <p>If given a {@link TestDiscoveryIndex}, classes it knows not to be tests are skipped without
+ * being loaded, and the outcome for every other class is recorded into it.
+ *
+ * <p>Classes are loaded concurrently by a bounded number of workers before runners are built, one
+ * class at a time and in the given order, on the calling thread. Runner builders are therefore not
+ * required to be thread safe.
  */
 class ScanningTestLoader extends TestLoader {
 
   private static final String LOG_TAG = "ScanningTestLoader";
 
+  // Loading a class takes well under a millisecond, avoid starting workers for a handful of them.
+  private static final int MIN_CLASSES_PER_WORKER = 32;
+
   private final ClassLoader classLoader;
   private final RunnerBuilder runnerBuilder;
+  @Nullable private final TestDiscoveryIndex discoveryIndex;
+  private final Map<String, Class<?>> loadedClasses = new ConcurrentHashMap<>();
 
   ScanningTestLoader(ClassLoader classLoader, RunnerBuilder runnerBuilder) {
+    this(classLoader, runnerBuilder, null);
+  }
+
+  ScanningTestLoader(
+      ClassLoader classLoader,
+      RunnerBuilder runnerBuilder,
+      @Nullable TestDiscoveryIndex discoveryIndex) {
     this.classLoader = classLoader;
     this.runnerBuilder = runnerBuilder;
+    this.discoveryIndex = discoveryIndex;
+  }
+
+  @Override
+  public List<Runner> getRunnersFor(Collection<String> classNames) {
+    Trace.beginSection("load test classes");
+    try {
+      loadClasses(classNames);
+    } finally {
+      Trace.endSection();
+    }
+    Trace.beginSection("create test runners");
+    try {
+      return super.getRunnersFor(classNames);
+    } finally {
+      Trace.endSection();
+      loadedClasses.clear();
+    }
+  }
+
+  /**
+   * Loads the given classes without initializing them, ignoring failures which are reported when
+   * the runner of the class is created.
+   */
+  private void loadClasses(Collection<String> classNames) {
+    List<String> classNamesToLoad = new ArrayList<>(classNames.size());
+    for (String className : classNames) {
+      if (discoveryIndex == null || !discoveryIndex.isKnownNonTest(className)) {
+        classNamesToLoad.add(className);
+      }
+    }
+    ParallelWorkers.forEach(
+        LOG_TAG,
+        classNamesToLoad,
+        MIN_CLASSES_PER_WORKER,
+        new ParallelWorkers.Task<String, RuntimeException>() {
+          @Override
+          public void run(int index, String className) {
+            try {
+              loadedClasses.put(className, Class.forName(className, false, classLoader));
+            } catch (Throwable e) {
+              // Loaded again, and logged, on the calling thread.
+            }
+          }
+        });
   }
 
   @Override
   protected Runner doCreateRunner(String className) {
+    if (discoveryIndex != null && discoveryIndex.isKnownNonTest(className)) {
+      logDebug("Skipping class %s: indexed as not a test", className);
+      return null;
+    }
     try {
-      Class<?> loadedClass = Class.forName(className, false, classLoader);
+      Class<?> loadedClass = loadedClasses.get(className);
+      if (loadedClass == null) {
+        loadedClass = Class.forName(className, false, classLoader);
+      }
       if (Modifier.isAbstract(loadedClass.getModifiers())) {
         logDebug("Skipping abstract class %s: not a test", loadedClass.getName());
+        recordNonTest(className);
         return null;
       }
       Runner runner = runnerBuilder.runnerForClass(loadedClass);
       if (runner instanceof EmptyTestRunner) {
         logDebug("Skipping class %s: class with no test methods", loadedClass.getName());
+        recordNonTest(className);
         return null;
       }
+      if (runner == null) {
+        recordNonTest(className);
+      } else if (discoveryIndex != null) {
+        discoveryIndex.recordTest(loadedClass, runner);
+      }
       return runner;
     } catch (Throwable e) {
       Log.w(LOG_TAG, String.format("Could not load class: %s", className), e);
@@ -59,6 +144,12 @@ class ScanningTestLoader extends TestLoader {
     }
   }
 
+  private void recordNonTest(String className) {
+    if (discoveryIndex != null) {
+      discoveryIndex.recordNonTest(className);
+    }
+  }
+
   /**
    * Utility method for logging debug messages. Only actually logs a message if LOG_TAG is marked as
    * loggable to limit log spam during normal use.
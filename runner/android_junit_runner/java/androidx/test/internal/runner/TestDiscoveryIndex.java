@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.runner;
+
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.test.platform.io.PlatformTestStorage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+
+/**
+ * A persistent index of the classes found by class path scanning, recording which of them turned
+ * out to be tests along with the annotations each of their tests is filtered on.
+ *
+ * <p>The index is stored in the internal files of a {@link PlatformTestStorage} and is keyed by the
+ * scanned paths and the checksums of the dex files they contain, so it is discarded as soon as the
+ * test apk changes. With an up to date index, class path scanning is skipped entirely and classes
+ * known not to be tests, or without any test matching the annotation filters of the run, are never
+ * loaded.
+ *
+ * <p>This class is not thread safe.
+ */
+final class TestDiscoveryIndex {
+
+  private static final String TAG = "TestDiscoveryIndex";
+
+  private static final String FORMAT_VERSION = "TestDiscoveryIndex v2";
+  private static final String INDEX_DIR = "test_discovery_index/";
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Pattern DEX_ENTRY_NAME = Pattern.compile("classes\\d*\\.dex");
+
+  private static final char NOT_EVALUATED = '?';
+  private static final char NOT_A_TEST = '-';
+  private static final char TEST = '+';
+
+  /** What the index knows about a single scanned class. */
+  static final class ClassEntry {
+    private static final ClassEntry NOT_EVALUATED_ENTRY =
+        new ClassEntry(NOT_EVALUATED, Collections.<String>emptyList(), null);
+    private static final ClassEntry NOT_A_TEST_ENTRY =
+        new ClassEntry(NOT_A_TEST, Collections.<String>emptyList(), null);
+
+    private final char kind;
+    private final List<String> annotations;
+    @Nullable private final List<List<String>> testAnnotations;
+
+    private ClassEntry(
+        char kind, List<String> annotations, @Nullable List<List<String>> testAnnotations) {
+      this.kind = kind;
+      this.annotations = annotations;
+      this.testAnnotations = testAnnotations;
+    }
+
+    boolean isTest() {
+      return kind == TEST;
+    }
+
+    boolean isKnownNonTest() {
+      return kind == NOT_A_TEST;
+    }
+
+    /** Returns the names of the annotations of a test class, including inherited ones. */
+    List<String> getAnnotations() {
+      return annotations;
+    }
+
+    /**
+     * Returns the distinct sets of annotation names found on the tests of a test class, i.e. the
+     * annotations of each test method along with those of the class declaring it, as seen by
+     * annotation filters.
+     */
+    List<List<String>> getTestAnnotations() {
+      return testAnnotations == null ? Collections.<List<String>>emptyList() : testAnnotations;
+    }
+
+    /**
+     * Returns true unless this is a test class none of whose tests can match filters requiring
+     * and excluding the given annotations.
+     *
+     * @param requiredAnnotations groups of annotation names, a test must have at least one
+     *     annotation of each group
+     * @param excludedAnnotations annotation names a test must not have
+     */
+    boolean mayMatch(
+        Collection<? extends Collection<String>> requiredAnnotations,
+        Collection<String> excludedAnnotations) {
+      if (!isTest()) {
+        return true;
+      }
+      for (List<String> test : getTestAnnotations()) {
+        if (matches(test, requiredAnnotations, excludedAnnotations)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static boolean matches(
+        List<String> test,
+        Collection<? extends Collection<String>> requiredAnnotations,
+        Collection<String> excludedAnnotations) {
+      for (String annotation : test) {
+        if (excludedAnnotations.contains(annotation)) {
+          return false;
+        }
+      }
+      for (Collection<String> group : requiredAnnotations) {
+        if (Collections.disjoint(test, group)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final PlatformTestStorage testStorage;
+  private final String key;
+  // Every scanned class name, in scanning order.
+  private final Map<String, ClassEntry> entries = new LinkedHashMap<>();
+  private boolean modified = false;
+
+  @VisibleForTesting
+  TestDiscoveryIndex(PlatformTestStorage testStorage, String key) {
+    this.testStorage = testStorage;
+    this.key = key;
+  }
+
+  /**
+   * Returns a key identifying the content of the given paths, or {@code null} if any of them
+   * cannot be read.
+   *
+   * @param paths the scanned .apk and .dex files
+   * @param discoveryOptions any other option affecting which classes are considered tests, e.g.
+   *     custom runner builders
+   */
+  @Nullable
+  static String computeKey(Collection<String> paths, Collection<String> discoveryOptions) {
+    List<String> sortedPaths = new ArrayList<>(paths);
+    Collections.sort(sortedPaths);
+    StringBuilder key = new StringBuilder();
+    for (String path : sortedPaths) {
+      File file = new File(path);
+      if (!file.isFile()) {
+        return null;
+      }
+      CRC32 checksum = new CRC32();
+      if (path.endsWith(".dex")) {
+        checksum.update(Long.toString(file.length()).getBytes(UTF_8));
+        checksum.update(Long.toString(file.lastModified()).getBytes(UTF_8));
+      } else {
+        // The central directory already holds the checksum of every dex file, no need to
+        // decompress them.
+        try (ZipFile zipFile = new ZipFile(file)) {
+          Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+          while (zipEntries.hasMoreElements()) {
+            ZipEntry entry = zipEntries.nextElement();
+            if (DEX_ENTRY_NAME.matcher(entry.getName()).matches()) {
+              checksum.update(entry.getName().getBytes(UTF_8));
+              checksum.update(Long.toString(entry.getCrc()).getBytes(UTF_8));
+            }
+          }
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to read " + path, e);
+          return null;
+        }
+      }
+      key.append(path).append('@').append(Long.toHexString(checksum.getValue())).append(';');
+    }
+    for (String option : discoveryOptions) {
+      key.append(option).append(';');
+    }
+    return key.toString();
+  }
+
+  /**
+   * Loads the index stored for {@code key}, or returns an empty index if there is none or if it
+   * cannot be read.
+   */
+  static TestDiscoveryIndex load(PlatformTestStorage testStorage, String key) {
+    TestDiscoveryIndex index = new TestDiscoveryIndex(testStorage, key);
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(
+                testStorage.openInternalInputFile(getFileName(key)), UTF_8))) {
+      if (!FORMAT_VERSION.equals(reader.readLine()) || !key.equals(reader.readLine())) {
+        return index;
+      }
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        index.parseEntry(line);
+      }
+      Log.i(TAG, String.format("Loaded test discovery index of %d classes", index.entries.size()));
+    } catch (IOException | RuntimeException e) {
+      Log.d(TAG, "No usable test discovery index found", e);
+      index.entries.clear();
+    }
+    return index;
+  }
+
+  private static String getFileName(String key) {
+    CRC32 checksum = new CRC32();
+    checksum.update(key.getBytes(UTF_8));
+    return INDEX_DIR + Long.toHexString(checksum.getValue()) + ".txt";
+  }
+
+  /** Returns true if the index does not know any class yet, i.e. the class path must be scanned. */
+  boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  /** Sets the class names found by scanning the class path, dropping anything known so far. */
+  void setClassNames(Collection<String> classNames) {
+    entries.clear();
+    for (String className : classNames) {
+      entries.put(className, ClassEntry.NOT_EVALUATED_ENTRY);
+    }
+    modified = true;
+  }
+
+  /** Returns all scanned class names, in scanning order. */
+  Set<String> getClassNames() {
+    return Collections.unmodifiableSet(entries.keySet());
+  }
+
+  /** Returns what is known about the given class, or {@code null} if it was not scanned. */
+  @Nullable
+  ClassEntry getEntry(String className) {
+    return entries.get(className);
+  }
+
+  /** Returns true if the given class was found not to be a test by a previous run. */
+  boolean isKnownNonTest(String className) {
+    ClassEntry entry = entries.get(className);
+    return entry != null && entry.isKnownNonTest();
+  }
+
+  /**
+   * Records that the given class is a test, along with its annotations and those of the tests
+   * described by its runner.
+   */
+  void recordTest(Class<?> testClass, Runner runner) {
+    ClassEntry entry = entries.get(testClass.getName());
+    if (entry != null && entry.isTest()) {
+      return;
+    }
+    Set<List<String>> testAnnotations = new LinkedHashSet<>();
+    addTestAnnotations(testAnnotations, runner.getDescription());
+    entries.put(
+        testClass.getName(),
+        new ClassEntry(
+            TEST,
+            getAnnotationNames(testClass.getAnnotations()),
+            new ArrayList<>(testAnnotations)));
+    modified = true;
+  }
+
+  private static void addTestAnnotations(
+      Set<List<String>> testAnnotations, Description description) {
+    if (!description.isTest()) {
+      for (Description child : description.getChildren()) {
+        addTestAnnotations(testAnnotations, child);
+      }
+      return;
+    }
+    Set<String> annotations = new LinkedHashSet<>();
+    for (Annotation annotation : description.getAnnotations()) {
+      annotations.add(annotation.annotationType().getName());
+    }
+    Class<?> testClass = description.getTestClass();
+    if (testClass != null) {
+      annotations.addAll(getAnnotationNames(testClass.getAnnotations()));
+    }
+    testAnnotations.add(new ArrayList<>(annotations));
+  }
+
+  /** Records that the given class is not a test, so it will not be loaded by later runs. */
+  void recordNonTest(String className) {
+    ClassEntry entry = entries.get(className);
+    if (entry != null && entry.isKnownNonTest()) {
+      return;
+    }
+    entries.put(className, ClassEntry.NOT_A_TEST_ENTRY);
+    modified = true;
+  }
+
+  /** Writes the index back to test storage, if anything was recorded since it was loaded. */
+  void save() {
+    if (!modified) {
+      return;
+    }
+    try (Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(testStorage.openInternalOutputFile(getFileName(key)), UTF_8))) {
+      writer.write(FORMAT_VERSION);
+      writer.write('\n');
+      writer.write(key);
+      writer.write('\n');
+      for (Map.Entry<String, ClassEntry> entry : entries.entrySet()) {
+        writeEntry(writer, entry.getKey(), entry.getValue());
+      }
+      modified = false;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to save the test discovery index", e);
+    }
+  }
+
+  // Each line is: kind <tab> class name [<tab> annotations <tab> test annotations;...], with
+  // annotation names separated by commas and each set of test annotations ended by a semicolon.
+  private static void writeEntry(Writer writer, String className, ClassEntry entry)
+      throws IOException {
+    writer.write(entry.kind);
+    writer.write('\t');
+    writer.write(className);
+    if (entry.isTest()) {
+      writer.write('\t');
+      writer.write(join(entry.annotations, ","));
+      writer.write('\t');
+      for (List<String> test : entry.getTestAnnotations()) {
+        writer.write(join(test, ","));
+        writer.write(';');
+      }
+    }
+    writer.write('\n');
+  }
+
+  private void parseEntry(String line) {
+    String[] fields = line.split("\t", -1);
+    char kind = fields[0].charAt(0);
+    String className = fields[1];
+    switch (kind) {
+      case TEST:
+        List<List<String>> testAnnotations = new ArrayList<>();
+        String tests = fields[3];
+        if (!tests.isEmpty()) {
+          for (String test : tests.substring(0, tests.length() - 1).split(";", -1)) {
+            testAnnotations.add(split(test, ","));
+          }
+        }
+        entries.put(className, new ClassEntry(TEST, split(fields[2], ","), testAnnotations));
+        break;
+      case NOT_A_TEST:
+        entries.put(className, ClassEntry.NOT_A_TEST_ENTRY);
+        break;
+      default:
+        entries.put(className, ClassEntry.NOT_EVALUATED_ENTRY);
+        break;
+    }
+  }
+
+  private static List<String> getAnnotationNames(Annotation[] annotations) {
+    List<String> names = new ArrayList<>(annotations.length);
+    for (Annotation annotation : annotations) {
+      names.add(annotation.annotationType().getName());
+    }
+    return names;
+  }
+
+  private static String join(List<String> values, String separator) {
+    StringBuilder joined = new StringBuilder();
+    for (String value : values) {
+      if (joined.length() > 0) {
+        joined.append(separator);
+      }
+      joined.append(value);
+    }
+    return joined.toString();
+  }
+
+  private static List<String> split(String value, String separator) {
+    if (value.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(value.split(separator));
+  }
+}
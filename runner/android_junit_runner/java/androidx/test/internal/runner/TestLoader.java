@@ -38,13 +38,21 @@ public abstract class TestLoader {
 
     public static TestLoader create(
         @Nullable ClassLoader classLoader, RunnerBuilder runnerBuilder, boolean scanningPath) {
+      return create(classLoader, runnerBuilder, scanningPath, null);
+    }
+
+    static TestLoader create(
+        @Nullable ClassLoader classLoader,
+        RunnerBuilder runnerBuilder,
+        boolean scanningPath,
+        @Nullable TestDiscoveryIndex discoveryIndex) {
 
       if (classLoader == null) {
         classLoader = TestLoader.class.getClassLoader();
       }
 
       if (scanningPath) {
-        return new ScanningTestLoader(classLoader, runnerBuilder);
+        return new ScanningTestLoader(classLoader, runnerBuilder, discoveryIndex);
       } else {
         return new DirectTestLoader(classLoader, runnerBuilder);
       }
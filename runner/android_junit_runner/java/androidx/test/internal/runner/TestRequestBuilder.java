@@ -32,6 +32,8 @@ import androidx.test.internal.runner.ClassPathScanner.InclusivePackageNamesFilte
 import androidx.test.internal.runner.filters.TestsRegExFilter;
 import androidx.test.internal.util.AndroidRunnerParams;
 import androidx.test.internal.util.Checks;
+import androidx.test.platform.io.PlatformTestStorage;
+import androidx.test.platform.io.PlatformTestStorageRegistry;
 import androidx.tracing.Trace;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
@@ -90,6 +92,17 @@ public class TestRequestBuilder {
   private final Instrumentation instr;
   private final Bundle argsBundle;
   private ClassLoader classLoader;
+  private PlatformTestStorage discoveryIndexStorage;
+  // Annotations filtered on, used to skip indexed classes without any test matching the filters
+  // before loading them. A test must have at least one annotation of each required group.
+  private final List<Set<String>> requiredAnnotations = new ArrayList<>();
+  private final Set<String> excludedAnnotations =
+      new HashSet<>(Arrays.asList(androidx.test.filters.Suppress.class.getName()));
+  // Set when sharding by duration, which needs every test to run before sharding them.
+  private Map<String, Long> shardTestDurations;
+  private int numShards;
+  private int shardIndex;
+  private long[] predictedShardDurationsMs;
 
   /**
    * Instructs the test builder if JUnit3 suite() methods should be executed.
@@ -681,6 +694,7 @@ public class TestRequestBuilder {
   public TestRequestBuilder addTestSizeFilter(TestSize forTestSize) {
     if (!TestSize.NONE.equals(forTestSize)) {
       addFilter(new SizeFilter(forTestSize));
+      requiredAnnotations.add(forTestSize.getAnnotationNames());
     } else {
       Log.e(TAG, String.format("Unrecognized test size '%s'", forTestSize.getSizeQualifierName()));
     }
@@ -696,6 +710,7 @@ public class TestRequestBuilder {
     Class<? extends Annotation> annotationClass = loadAnnotationClass(annotation);
     if (annotationClass != null) {
       addFilter(new AnnotationInclusionFilter(annotationClass));
+      requiredAnnotations.add(Collections.singleton(annotationClass.getName()));
     }
     return this;
   }
@@ -709,6 +724,7 @@ public class TestRequestBuilder {
     Class<? extends Annotation> annotationClass = loadAnnotationClass(notAnnotation);
     if (annotationClass != null) {
       addFilter(new AnnotationExclusionFilter(annotationClass));
+      excludedAnnotations.add(annotationClass.getName());
     }
     return this;
   }
@@ -717,6 +733,29 @@ public class TestRequestBuilder {
     return addFilter(new ShardingFilter(numShards, shardIndex));
   }
 
+  /**
+   * Run only the tests of a shard, balancing the expected duration of shards using the durations of
+   * previous runs. Tests without a known duration are sharded as by {@link #addShardingFilter(int,
+   * int)}.
+   *
+   * @param testDurations the duration of tests in milliseconds, keyed by {@code class#method}
+   */
+  public TestRequestBuilder addShardingFilter(
+      int numShards, int shardIndex, Map<String, Long> testDurations) {
+    this.numShards = numShards;
+    this.shardIndex = shardIndex;
+    this.shardTestDurations = testDurations;
+    return this;
+  }
+
+  /**
+   * Returns the expected duration in milliseconds of each shard, if the last {@link #build() built}
+   * request was sharded by duration, or null otherwise.
+   */
+  public long[] getPredictedShardDurationsMs() {
+    return predictedShardDurationsMs;
+  }
+
   public TestRequestBuilder addFilter(Filter filter) {
     this.filter = this.filter.intersect(filter);
     return this;
@@ -737,6 +776,16 @@ public class TestRequestBuilder {
     return this;
   }
 
+  /**
+   * Keep an index of the classes found by class path scanning in the internal files of the given
+   * storage, so later runs against the same test apk skip scanning and do not load classes
+   * already known not to be tests. Passing null disables the index.
+   */
+  public TestRequestBuilder setTestDiscoveryIndexStorage(PlatformTestStorage testStorage) {
+    discoveryIndexStorage = testStorage;
+    return this;
+  }
+
   /** Sets milliseconds timeout value applied to each test where 0 means no timeout */
   public TestRequestBuilder setPerTestTimeout(long millis) {
     perTestTimeout = millis;
@@ -783,7 +832,11 @@ public class TestRequestBuilder {
     if (runnerArgs.numShards > 0
         && runnerArgs.shardIndex >= 0
         && runnerArgs.shardIndex < runnerArgs.numShards) {
-      addShardingFilter(runnerArgs.numShards, runnerArgs.shardIndex);
+      if (runnerArgs.testDurations.isEmpty()) {
+        addShardingFilter(runnerArgs.numShards, runnerArgs.shardIndex);
+      } else {
+        addShardingFilter(runnerArgs.numShards, runnerArgs.shardIndex, runnerArgs.testDurations);
+      }
     }
     if (runnerArgs.logOnly || runnerArgs.listTestsForOrchestrator) {
       setSkipExecution(true);
@@ -797,6 +850,9 @@ public class TestRequestBuilder {
     if (runnerArgs.testsRegEx != null) {
       setTestsRegExFilter(runnerArgs.testsRegEx);
     }
+    if (runnerArgs.useTestDiscoveryIndex) {
+      setTestDiscoveryIndexStorage(PlatformTestStorageRegistry.getInstance());
+    }
     return this;
   }
 
@@ -821,26 +877,59 @@ public class TestRequestBuilder {
           new AndroidRunnerParams(instr, argsBundle, perTestTimeout, ignoreSuiteMethods);
       RunnerBuilder runnerBuilder = getRunnerBuilder(runnerParams);
 
-      TestLoader loader = TestLoader.Factory.create(classLoader, runnerBuilder, scanningPath);
+      TestDiscoveryIndex discoveryIndex = scanningPath ? loadTestDiscoveryIndex() : null;
+      TestLoader loader =
+          TestLoader.Factory.create(classLoader, runnerBuilder, scanningPath, discoveryIndex);
       Collection<String> classNames;
       if (scanningPath) {
         // no class restrictions have been specified. Load all classes.
         Log.d(TAG, "Using class path scanning to discover tests");
-        classNames = getClassNamesFromClassPath();
+        Trace.beginSection("scan class path");
+        try {
+          classNames = getClassNamesFromClassPath(discoveryIndex);
+        } finally {
+          Trace.endSection();
+        }
       } else {
         classNames = includedClasses;
       }
 
       List<Runner> runners = loader.getRunnersFor(classNames);
+      if (discoveryIndex != null) {
+        discoveryIndex.save();
+      }
 
       Suite suite = ExtendedSuite.createSuite(runners);
       Request request = Request.runner(suite);
+      Filter filter = this.filter;
+      if (shardTestDurations != null) {
+        List<Description> tests = new ArrayList<>();
+        addTestsToRun(tests, suite.getDescription(), filter);
+        DurationShardingFilter shardingFilter =
+            DurationShardingFilter.create(tests, shardTestDurations, numShards, shardIndex);
+        predictedShardDurationsMs = shardingFilter.getPredictedShardDurationsMs();
+        Log.i(TAG, shardingFilter.describe());
+        filter = filter.intersect(shardingFilter);
+      }
       return new LenientFilterRequest(request, filter);
     } finally {
       Trace.endSection();
     }
   }
 
+  private static void addTestsToRun(
+      List<Description> tests, Description description, Filter filter) {
+    if (description.isTest()) {
+      if (filter.shouldRun(description)) {
+        tests.add(description);
+      }
+      return;
+    }
+    for (Description child : description.getChildren()) {
+      addTestsToRun(tests, child, filter);
+    }
+  }
+
   /** Validate that the set of options provided to this builder are valid and not conflicting */
   private void validate(Set<String> classNames) {
     if (classNames.isEmpty() && pathsToScan.isEmpty()) {
@@ -868,16 +957,33 @@ public class TestRequestBuilder {
     return builder;
   }
 
-  private Collection<String> getClassNamesFromClassPath() {
+  /**
+   * Loads the index of the classes found in {@link #pathsToScan}, or returns null if the index is
+   * disabled or the paths cannot be read.
+   */
+  private TestDiscoveryIndex loadTestDiscoveryIndex() {
+    if (discoveryIndexStorage == null) {
+      return null;
+    }
+    // Custom runner builders may turn any class into a test.
+    List<String> discoveryOptions = new ArrayList<>();
+    for (Class<? extends RunnerBuilder> runnerBuilderClass : customRunnerBuilderClasses) {
+      discoveryOptions.add(runnerBuilderClass.getName());
+    }
+    String key = TestDiscoveryIndex.computeKey(pathsToScan, discoveryOptions);
+    if (key == null) {
+      Log.w(TAG, "Cannot read paths to scan, ignoring the test discovery index");
+      return null;
+    }
+    return TestDiscoveryIndex.load(discoveryIndexStorage, key);
+  }
+
+  private Collection<String> getClassNamesFromClassPath(TestDiscoveryIndex discoveryIndex) {
     if (pathsToScan.isEmpty()) {
       throw new IllegalStateException("neither test class to execute or class paths were provided");
     }
-    Log.i(TAG, String.format("Scanning classpath to find tests in paths %s", pathsToScan));
-    ClassPathScanner scanner = createClassPathScanner(pathsToScan);
 
     ChainedClassNameFilter filter = new ChainedClassNameFilter();
-    // exclude inner classes
-    filter.add(new ExternalClassNameFilter());
     for (String pkg : ClassPathScanner.getDefaultExcludedPackages()) {
       // Add the test packages to the exclude list unless they were explictly included.
       if (!includedPackages.contains(pkg)) {
@@ -892,7 +998,42 @@ public class TestRequestBuilder {
     }
     filter.add(new ExcludeClassNamesFilter(excludedClasses));
     try {
-      return scanner.getClassPathEntries(filter);
+      if (discoveryIndex == null) {
+        Log.i(TAG, String.format("Scanning classpath to find tests in paths %s", pathsToScan));
+        // exclude inner classes
+        filter.add(new ExternalClassNameFilter());
+        return createClassPathScanner(pathsToScan).getClassPathEntries(filter);
+      }
+      if (discoveryIndex.isEmpty()) {
+        // Index every class but inner ones, so the index can be shared by runs with different
+        // filters.
+        Log.i(TAG, String.format("Scanning classpath to index tests in paths %s", pathsToScan));
+        discoveryIndex.setClassNames(
+            createClassPathScanner(pathsToScan)
+                .getClassPathEntries(new ExternalClassNameFilter()));
+      }
+      Set<String> classNames = new LinkedHashSet<>();
+      int skippedByAnnotations = 0;
+      for (String className : discoveryIndex.getClassNames()) {
+        if (!filter.accept(className)) {
+          continue;
+        }
+        // Tests are filtered on their annotations only after their runner is built, skip loading
+        // classes which are already known to have no test matching the annotation filters.
+        if (!discoveryIndex
+            .getEntry(className)
+            .mayMatch(requiredAnnotations, excludedAnnotations)) {
+          skippedByAnnotations++;
+          continue;
+        }
+        classNames.add(className);
+      }
+      Log.d(
+          TAG,
+          String.format(
+              "Found %d classes in test discovery index, skipped %d by annotation",
+              classNames.size(), skippedByAnnotations));
+      return classNames;
     } catch (IOException e) {
       Log.e(TAG, "Failed to scan classes", e);
     }
@@ -237,6 +237,18 @@ public final class TestSize {
     return Float.compare(testRuntime, runtimeThreshold) < 0;
   }
 
+  /** Returns the names of the annotations marking a test with this size. */
+  Set<String> getAnnotationNames() {
+    Set<String> names = new HashSet<>();
+    if (runnerFilterAnnotationClass != null) {
+      names.add(runnerFilterAnnotationClass.getName());
+    }
+    if (platformAnnotationClass != null) {
+      names.add(platformAnnotationClass.getName());
+    }
+    return names;
+  }
+
   private Class<? extends Annotation> getFrameworkAnnotation() {
     return platformAnnotationClass;
   }
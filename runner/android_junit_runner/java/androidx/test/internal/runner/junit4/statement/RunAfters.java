@@ -32,6 +32,10 @@ public class RunAfters extends UiThreadStatement {
 
   private final List<FrameworkMethod> afters;
 
+  private final boolean[] aftersOnUiThread;
+
+  private final boolean nextOnUiThread;
+
   /**
    * Run all non-overridden {@code @After} methods on this class and superclasses before running
    * {@code next}; all After methods are always executed: exceptions thrown by previous steps are
@@ -39,7 +43,9 @@ public class RunAfters extends UiThreadStatement {
    * MultipleFailureException}.
    *
    * <p>{@code @After} methods that also annotated with <code>@UiThreadTest</code> will be executed
-   * on the UI Thread.
+   * on the UI Thread. Consecutive ones are executed in a single dispatch to the UI thread. If all
+   * of them are, and {@code next} runs entirely on the UI thread, they are executed together with
+   * {@code next}.
    *
    * @param next the original statement
    * @param afters methods annotated with {@code @After}
@@ -51,10 +57,40 @@ public class RunAfters extends UiThreadStatement {
     this.next = next;
     this.afters = afters;
     this.target = target;
+    this.aftersOnUiThread = new boolean[afters.size()];
+    for (int i = 0; i < afters.size(); i++) {
+      aftersOnUiThread[i] = shouldRunOnUiThread(afters.get(i));
+    }
+    this.nextOnUiThread =
+        next instanceof UiThreadStatement && ((UiThreadStatement) next).runsEntirelyOnUiThread();
+  }
+
+  @Override
+  public boolean runsEntirelyOnUiThread() {
+    for (boolean onUiThread : aftersOnUiThread) {
+      if (!onUiThread) {
+        return false;
+      }
+    }
+    return nextOnUiThread;
   }
 
   @Override
   public void evaluate() throws Throwable {
+    if (runsEntirelyOnUiThread()) {
+      evaluateOnUiThread(
+          new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+              evaluateNextAndAfters();
+            }
+          });
+    } else {
+      evaluateNextAndAfters();
+    }
+  }
+
+  private void evaluateNextAndAfters() throws Throwable {
     final List<Throwable> errors = new CopyOnWriteArrayList<>();
 
     try {
@@ -62,28 +98,38 @@ public class RunAfters extends UiThreadStatement {
     } catch (Throwable e) {
       errors.add(e);
     } finally {
-      for (final FrameworkMethod each : afters) {
-        if (shouldRunOnUiThread(each)) {
-          runOnUiThread(
-              new Runnable() {
+      int start = 0;
+      while (start < afters.size()) {
+        int end = start + 1;
+        if (aftersOnUiThread[start]) {
+          while (end < afters.size() && aftersOnUiThread[end]) {
+            end++;
+          }
+          final int from = start;
+          final int to = end;
+          evaluateOnUiThread(
+              new Statement() {
                 @Override
-                public void run() {
-                  try {
-                    each.invokeExplosively(target);
-                  } catch (Throwable throwable) {
-                    errors.add(throwable);
+                public void evaluate() {
+                  for (int i = from; i < to; i++) {
+                    invokeAfter(afters.get(i), errors);
                   }
                 }
               });
         } else {
-          try {
-            each.invokeExplosively(target);
-          } catch (Throwable e) {
-            errors.add(e);
-          }
+          invokeAfter(afters.get(start), errors);
         }
+        start = end;
       }
     }
     MultipleFailureException.assertEmpty(errors);
   }
+
+  private void invokeAfter(FrameworkMethod after, List<Throwable> errors) {
+    try {
+      after.invokeExplosively(target);
+    } catch (Throwable e) {
+      errors.add(e);
+    }
+  }
 }
@@ -19,7 +19,6 @@
 package androidx.test.internal.runner.junit4.statement;
 
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.Statement;
 
@@ -31,12 +30,17 @@ public class RunBefores extends UiThreadStatement {
 
   private final List<FrameworkMethod> befores;
 
+  private final boolean[] beforesOnUiThread;
+
+  private final boolean nextOnUiThread;
+
   /**
    * Run all non-overridden {@code @Before} methods on this class and superclasses before running
    * {@code next}; if any throws an Exception, stop execution and pass the exception on.
    *
    * <p>{@code @Before} methods that also annotated with <code>@UiThreadTest</code> will be executed
-   * on the UI Thread.
+   * on the UI Thread. Consecutive ones are executed in a single dispatch to the UI thread, together
+   * with {@code next} if it runs entirely on the UI thread.
    *
    * @param next the original statement
    * @param befores methods annotated with {@code @Before}
@@ -48,35 +52,60 @@ public class RunBefores extends UiThreadStatement {
     this.next = next;
     this.befores = befores;
     this.target = target;
+    this.beforesOnUiThread = new boolean[befores.size()];
+    for (int i = 0; i < befores.size(); i++) {
+      beforesOnUiThread[i] = shouldRunOnUiThread(befores.get(i));
+    }
+    this.nextOnUiThread =
+        next instanceof UiThreadStatement && ((UiThreadStatement) next).runsEntirelyOnUiThread();
   }
 
   @Override
-  public void evaluate() throws Throwable {
-    final AtomicReference<Throwable> exceptionRef = new AtomicReference<>();
-    for (final FrameworkMethod before : befores) {
-      if (shouldRunOnUiThread(before)) {
-        runOnUiThread(
-            new Runnable() {
-              @Override
-              public void run() {
-                try {
-                  before.invokeExplosively(target);
-                } catch (Throwable throwable) {
-                  exceptionRef.set(throwable);
-                }
-              }
-            });
+  public boolean runsEntirelyOnUiThread() {
+    for (boolean onUiThread : beforesOnUiThread) {
+      if (!onUiThread) {
+        return false;
+      }
+    }
+    return nextOnUiThread;
+  }
 
-        // if any Exception thrown, stop execution and pass the exception on.
-        Throwable throwable = exceptionRef.get();
-        if (throwable != null) {
-          throw throwable;
+  @Override
+  public void evaluate() throws Throwable {
+    int start = 0;
+    while (start < befores.size()) {
+      int end = start + 1;
+      if (beforesOnUiThread[start]) {
+        while (end < befores.size() && beforesOnUiThread[end]) {
+          end++;
+        }
+        if (end == befores.size() && nextOnUiThread) {
+          evaluateOnUiThread(invokeBefores(start, end, next));
+          return;
         }
+        // if any Exception thrown, stop execution and pass the exception on.
+        evaluateOnUiThread(invokeBefores(start, end, null));
       } else {
-        before.invokeExplosively(target);
+        befores.get(start).invokeExplosively(target);
       }
+      start = end;
     }
 
     next.evaluate();
   }
+
+  /** Returns a statement invoking befores {@code [from, to)}, then evaluating {@code then}. */
+  private Statement invokeBefores(final int from, final int to, final Statement then) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        for (int i = from; i < to; i++) {
+          befores.get(i).invokeExplosively(target);
+        }
+        if (then != null) {
+          then.evaluate();
+        }
+      }
+    };
+  }
 }
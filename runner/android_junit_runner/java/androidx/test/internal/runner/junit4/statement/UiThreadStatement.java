@@ -35,6 +35,10 @@ public class UiThreadStatement extends Statement {
 
   private final boolean runOnUiThread;
 
+  // Only accessed on the UI thread, true while evaluating a statement dispatched by
+  // evaluateOnUiThread.
+  private static boolean evaluatingOnUiThread = false;
+
   public UiThreadStatement(Statement base, boolean runOnUiThread) {
     this.base = base;
     this.runOnUiThread = runOnUiThread;
@@ -44,30 +48,50 @@ public class UiThreadStatement extends Statement {
     return runOnUiThread;
   }
 
+  /**
+   * Returns true if this statement is evaluated entirely on the UI thread, in which case statements
+   * wrapping it may dispatch it to the UI thread together with their own UI thread work.
+   */
+  public boolean runsEntirelyOnUiThread() {
+    return runOnUiThread;
+  }
+
   @Override
   public void evaluate() throws Throwable {
     if (runOnUiThread) {
-      final AtomicReference<Throwable> exceptionRef = new AtomicReference<>();
-      runOnUiThread(
-          new Runnable() {
-            @Override
-            public void run() {
-              try {
-                base.evaluate();
-              } catch (Throwable throwable) {
-                exceptionRef.set(throwable);
-              }
-            }
-          });
-      Throwable throwable = exceptionRef.get();
-      if (throwable != null) {
-        throw throwable;
-      }
+      evaluateOnUiThread(base);
     } else {
       base.evaluate();
     }
   }
 
+  /**
+   * Evaluates {@code statement} in a single dispatch to the UI thread. UI thread statements nested
+   * in it are evaluated directly, rather than being dispatched again.
+   */
+  public static void evaluateOnUiThread(final Statement statement) throws Throwable {
+    final AtomicReference<Throwable> exceptionRef = new AtomicReference<>();
+    runOnUiThread(
+        new Runnable() {
+          @Override
+          public void run() {
+            boolean nested = evaluatingOnUiThread;
+            evaluatingOnUiThread = true;
+            try {
+              statement.evaluate();
+            } catch (Throwable throwable) {
+              exceptionRef.set(throwable);
+            } finally {
+              evaluatingOnUiThread = nested;
+            }
+          }
+        });
+    Throwable throwable = exceptionRef.get();
+    if (throwable != null) {
+      throw throwable;
+    }
+  }
+
   public static boolean shouldRunOnUiThread(FrameworkMethod method) {
     Class<? extends Annotation> deprecatedUiThreadTestClass =
         loadUiThreadClass("android.test.UiThreadTest");
@@ -124,10 +148,12 @@ public class UiThreadStatement extends Statement {
 
   public static void runOnUiThread(final Runnable runnable) throws Throwable {
     if (Looper.myLooper() == Looper.getMainLooper()) {
-      Log.w(
-          TAG,
-          "Already on the UI thread, this method should not be called from the "
-              + "main application thread");
+      if (!evaluatingOnUiThread) {
+        Log.w(
+            TAG,
+            "Already on the UI thread, this method should not be called from the "
+                + "main application thread");
+      }
       runnable.run();
     } else {
       FutureTask<Void> task = new FutureTask<>(runnable, null);
@@ -20,6 +20,8 @@ import android.os.Bundle;
 import android.util.Log;
 import androidx.annotation.VisibleForTesting;
 import androidx.test.services.events.internal.StackTrimmer;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.internal.TextListener;
@@ -41,6 +43,10 @@ import org.junit.runner.notification.Failure;
  *
  * <p>When running in normal aka non raw mode, only the value of the
  * Instrumentation.REPORT_KEY_STREAMRESULT key will be displayed.
+ *
+ * <p>If given a {@link #setResultsFile results file}, per test results are written to it as
+ * {@link ResultRecordWriter records} instead, and a single status pointing to the file is sent
+ * when the run starts.
  */
 public class InstrumentationResultPrinter extends InstrumentationRunListener {
 
@@ -92,6 +98,8 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
   public static final int REPORT_VALUE_RESULT_IGNORED = -3;
   /** The test completed with an assumption failure. */
   public static final int REPORT_VALUE_RESULT_ASSUMPTION_FAILURE = -4;
+  /** Not a test result, the results of the run are written to {@link #REPORT_KEY_RESULTS_FILE}. */
+  public static final int REPORT_VALUE_RESULTS_FILE = 2;
 
   /**
    * If included in the status bundle sent to an IInstrumentationWatcher, this key identifies a
@@ -100,12 +108,22 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
    */
   public static final String REPORT_KEY_STACK = "stack";
 
+  /**
+   * If included in the status or final bundle sent to an IInstrumentationWatcher, this key
+   * identifies the test output file the results of every test are written to. Only sent when
+   * results are written to a file, instead of per test status messages.
+   */
+  public static final String REPORT_KEY_RESULTS_FILE = "resultsFile";
+
   private final AtomicInteger testNum = new AtomicInteger(0);
   private Description description = Description.EMPTY;
   private final Bundle resultTemplate;
   @VisibleForTesting Bundle testResult;
   private int testResultCode = -999;
   private String testClass = null;
+  private String resultsFile = null;
+  private ResultRecordWriter resultRecordWriter = null;
+  private String testStackTrace = null;
 
   public InstrumentationResultPrinter() {
     resultTemplate = new Bundle();
@@ -116,6 +134,26 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
   public void testRunStarted(Description description) throws Exception {
     resultTemplate.putString(Instrumentation.REPORT_KEY_IDENTIFIER, REPORT_VALUE_ID);
     resultTemplate.putInt(REPORT_KEY_NUM_TOTAL, description.testCount());
+    if (resultRecordWriter != null) {
+      Bundle pointer = new Bundle(resultTemplate);
+      pointer.putString(REPORT_KEY_RESULTS_FILE, resultsFile);
+      pointer.putString(
+          Instrumentation.REPORT_KEY_STREAMRESULT,
+          String.format("\nWriting test results to %s\n", resultsFile));
+      sendStatus(REPORT_VALUE_RESULTS_FILE, pointer);
+    }
+  }
+
+  /**
+   * Writes the results of every test to the given test output file, rather than sending status
+   * bundles for them. Must be called before the run starts.
+   *
+   * @param resultsFile the name of the file, reported to the instrumentation
+   * @param out the stream to the file
+   */
+  public void setResultsFile(String resultsFile, OutputStream out) throws IOException {
+    this.resultRecordWriter = new ResultRecordWriter(out);
+    this.resultsFile = resultsFile;
   }
 
   /** send a status for the start of a each test, so long tests can be seen as "running" */
@@ -123,6 +161,17 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
   public void testStarted(Description description) throws Exception {
     testNum.incrementAndGet();
     this.description = description; // cache Description in case of a crash
+    if (resultRecordWriter != null) {
+      testStackTrace = null;
+      testResultCode = REPORT_VALUE_RESULT_OK;
+      try {
+        resultRecordWriter.testStarted(
+            testNum.get(), description.getClassName(), description.getMethodName());
+        return;
+      } catch (IOException e) {
+        stopWritingResultsFile(e);
+      }
+    }
     String testClass = description.getClassName();
     String testName = description.getMethodName();
     testResult = new Bundle(resultTemplate);
@@ -144,6 +193,14 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
 
   @Override
   public void testFinished(Description description) throws Exception {
+    if (resultRecordWriter != null) {
+      try {
+        resultRecordWriter.testFinished(testNum.get(), testResultCode, testStackTrace);
+        return;
+      } catch (IOException e) {
+        stopWritingResultsFile(e);
+      }
+    }
     if (testResultCode == REPORT_VALUE_RESULT_OK) {
       testResult.putString(Instrumentation.REPORT_KEY_STREAMRESULT, ".");
     }
@@ -171,16 +228,18 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
   @Override
   public void testAssumptionFailure(Failure failure) {
     testResultCode = REPORT_VALUE_RESULT_ASSUMPTION_FAILURE;
-    testResult.putString(REPORT_KEY_STACK, failure.getTrace());
+    putStackTrace(failure.getTrace());
   }
 
   private void reportFailure(Failure failure) {
     String trace = StackTrimmer.getTrimmedStackTrace(failure);
-    testResult.putString(REPORT_KEY_STACK, trace);
-    // pretty printing
-    testResult.putString(
-        Instrumentation.REPORT_KEY_STREAMRESULT,
-        String.format("\nError in %s:\n%s", failure.getDescription().getDisplayName(), trace));
+    putStackTrace(trace);
+    if (resultRecordWriter == null) {
+      // pretty printing
+      testResult.putString(
+          Instrumentation.REPORT_KEY_STREAMRESULT,
+          String.format("\nError in %s:\n%s", failure.getDescription().getDisplayName(), trace));
+    }
   }
 
   @Override
@@ -201,15 +260,17 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
     try {
       testResultCode = REPORT_VALUE_RESULT_FAILURE;
       Failure failure = new Failure(description, t);
-      testResult.putString(REPORT_KEY_STACK, failure.getTrace());
+      putStackTrace(failure.getTrace());
       // pretty printing
       String errMsgPrefix =
           isAnyTestStarted()
               ? "\nProcess crashed while executing " + description.getDisplayName()
               : "\nProcess crashed before executing the test(s)";
-      testResult.putString(
-          Instrumentation.REPORT_KEY_STREAMRESULT,
-          String.format(errMsgPrefix + ":\n%s", failure.getTrace()));
+      if (resultRecordWriter == null) {
+        testResult.putString(
+            Instrumentation.REPORT_KEY_STREAMRESULT,
+            String.format(errMsgPrefix + ":\n%s", failure.getTrace()));
+      }
       testFinished(description);
     } catch (Exception e) {
       // ignore, about to crash anyway
@@ -231,6 +292,35 @@ public class InstrumentationResultPrinter extends InstrumentationRunListener {
       PrintStream streamResult, Bundle resultBundle, Result junitResults) {
     // reuse JUnit TextListener to display a summary of the run
     new TextListener(streamResult).testRunFinished(junitResults);
+    if (resultRecordWriter != null) {
+      resultBundle.putString(REPORT_KEY_RESULTS_FILE, resultsFile);
+      try {
+        resultRecordWriter.close();
+      } catch (IOException e) {
+        Log.e(TAG, "Failed to close results file " + resultsFile, e);
+      }
+    }
+  }
+
+  private void putStackTrace(String trace) {
+    if (resultRecordWriter != null) {
+      testStackTrace = trace;
+    } else {
+      testResult.putString(REPORT_KEY_STACK, trace);
+    }
+  }
+
+  /** Falls back to status bundles if the results file can no longer be written. */
+  private void stopWritingResultsFile(IOException e) {
+    Log.e(TAG, "Failed to write results file " + resultsFile + ", sending status instead", e);
+    resultRecordWriter = null;
+    testResult = new Bundle(resultTemplate);
+    testResult.putString(REPORT_KEY_NAME_CLASS, description.getClassName());
+    testResult.putString(REPORT_KEY_NAME_TEST, description.getMethodName());
+    testResult.putInt(REPORT_KEY_NUM_CURRENT, testNum.get());
+    if (testStackTrace != null) {
+      testResult.putString(REPORT_KEY_STACK, testStackTrace);
+    }
   }
 
   private boolean isAnyTestStarted() {
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.internal.runner.listener;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes test results as compact, length prefixed binary records, used by {@link
+ * InstrumentationResultPrinter} instead of sending a status bundle for every test.
+ *
+ * <p>The stream starts with the {@link #MAGIC} bytes and the format {@link #VERSION}, followed by
+ * records made of their payload length, as a big endian int, and their payload. Payloads start
+ * with the record type and the sequence number of the test, then:
+ *
+ * <ul>
+ *   <li>{@link #RECORD_TEST_STARTED}: the test class and method names
+ *   <li>{@link #RECORD_TEST_FINISHED}: the instrumentation result code of the test and its stack
+ *       trace, empty if none
+ * </ul>
+ *
+ * <p>Strings are written as their UTF-8 length, as a big endian int, and bytes. Finished records
+ * are flushed, so results up to the last finished test survive a process crash.
+ *
+ * <p>This class is not thread safe.
+ */
+public final class ResultRecordWriter implements Closeable {
+
+  public static final byte[] MAGIC = {'A', 'J', 'U', 'R'};
+  public static final int VERSION = 1;
+
+  public static final byte RECORD_TEST_STARTED = 1;
+  public static final byte RECORD_TEST_FINISHED = 2;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final DataOutputStream out;
+  // Payloads are built here first, so their length can be written before them.
+  private final ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(256);
+  private final DataOutputStream payload = new DataOutputStream(payloadBytes);
+
+  public ResultRecordWriter(OutputStream out) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    this.out.write(MAGIC);
+    this.out.writeInt(VERSION);
+  }
+
+  void testStarted(int testNum, String className, String methodName) throws IOException {
+    payload.writeByte(RECORD_TEST_STARTED);
+    payload.writeInt(testNum);
+    writeString(className);
+    writeString(methodName);
+    writeRecord();
+  }
+
+  void testFinished(int testNum, int resultCode, String stackTrace) throws IOException {
+    payload.writeByte(RECORD_TEST_FINISHED);
+    payload.writeInt(testNum);
+    payload.writeInt(resultCode);
+    writeString(stackTrace);
+    writeRecord();
+    out.flush();
+  }
+
+  private void writeString(String value) throws IOException {
+    if (value == null) {
+      payload.writeInt(0);
+      return;
+    }
+    byte[] bytes = value.getBytes(UTF_8);
+    payload.writeInt(bytes.length);
+    payload.write(bytes);
+  }
+
+  private void writeRecord() throws IOException {
+    out.writeInt(payloadBytes.size());
+    payloadBytes.writeTo(out);
+    payloadBytes.reset();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -48,8 +48,15 @@ public final class OrchestrationListenerManager {
   private final List<OrchestrationRunListener> listeners = new ArrayList<>();
   private final Instrumentation instrumentation;
 
+  // Whether a crash of the test process fails lastDescription: the test running or about to run,
+  // or the last test of the process once every test of the process finished.
   private boolean markTerminationAsFailure = false;
   private ParcelableDescription lastDescription;
+  // Whether the failure of lastDescription was already reported.
+  private boolean lastTestFailed = false;
+  // The number of tests the test process runs, and how many of them already ended.
+  private int processTestCount = 1;
+  private int processTestsEnded = 0;
 
   public OrchestrationListenerManager(Instrumentation instrumentation) {
     if (null == instrumentation) {
@@ -73,22 +80,44 @@ public final class OrchestrationListenerManager {
 
   /** To be called when the test process begins */
   public void testProcessStarted(ParcelableDescription description) {
+    testProcessStarted(description, 1);
+  }
+
+  /**
+   * To be called when a test process running several tests begins.
+   *
+   * <p>A crash in between two tests of the process is not reported as the failure of either, the
+   * tests which did not start can run again instead. A crash after the last test finished, for
+   * instance in an {@code @AfterClass} method, is reported as the failure of the last test.
+   *
+   * @param description the first test of the process
+   * @param testCount the number of tests the process runs
+   */
+  public void testProcessStarted(ParcelableDescription description, int testCount) {
     lastDescription = description;
     markTerminationAsFailure = true;
+    lastTestFailed = false;
+    processTestCount = testCount;
+    processTestsEnded = 0;
   }
 
   /** To be called when the test process terminates, with the result from standard out. */
   public void testProcessFinished(String outputFile) {
     if (markTerminationAsFailure) {
       for (OrchestrationRunListener listener : listeners) {
-        listener.testFailure(
-            new ParcelableFailure(
-                lastDescription,
-                new Throwable(
-                    "Test instrumentation process crashed. Check " + outputFile + " for details")));
+        if (!lastTestFailed) {
+          listener.testFailure(
+              new ParcelableFailure(
+                  lastDescription,
+                  new Throwable(
+                      "Test instrumentation process crashed. Check "
+                          + outputFile
+                          + " for details")));
+        }
         listener.testFinished(lastDescription);
       }
     }
+    markTerminationAsFailure = false;
   }
 
   /**
@@ -106,26 +135,42 @@ public final class OrchestrationListenerManager {
   }
 
   private void cacheStatus(Bundle bundle) {
-    if (getDescription(bundle) != null) {
-      lastDescription = getDescription(bundle);
-    }
-
     TestEvent status = TestEvent.valueOf(bundle.getString(KEY_TEST_EVENT));
     switch (status) {
       case TEST_RUN_STARTED:
         // Likely already set true in testProcessStarted(), but no reason to not set again.
         markTerminationAsFailure = true;
+        if (lastDescription == null) {
+          lastDescription = getDescription(bundle);
+        }
+        break;
+      case TEST_STARTED:
+        // A process running several tests may crash during any of them.
+        markTerminationAsFailure = true;
+        lastDescription = getDescription(bundle);
+        lastTestFailed = false;
         break;
       case TEST_FAILURE:
-        // After failure, no need to report further failures if process crashes
-        markTerminationAsFailure = false;
+        // After failure, only the end of the test needs to be reported if the process crashes.
+        lastTestFailed = true;
+        break;
+      case TEST_FINISHED:
+        // A crash in between tests is not the failure of the test which finished, but a crash
+        // after the last test is, until the run finished.
+        processTestsEnded++;
+        if (processTestsEnded < processTestCount) {
+          markTerminationAsFailure = false;
+        }
+        break;
+      case TEST_IGNORED:
+        processTestsEnded++;
         break;
       case TEST_RUN_FINISHED:
         // It's now ok to terminate safely.
         markTerminationAsFailure = false;
         break;
       default:
-        // We only care about three cases.
+        // We only care about the cases above.
     }
   }
 
@@ -57,6 +57,7 @@ import androidx.test.runner.screenshot.ScreenCaptureProcessor;
 import androidx.test.runner.screenshot.Screenshot;
 import androidx.test.services.storage.TestStorage;
 import androidx.tracing.Trace;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.ServiceLoader;
@@ -192,6 +193,13 @@ import org.junit.runners.model.RunnerBuilder;
  * instrument -w -e numShards 4 -e shardIndex 1
  * com.android.foo/androidx.test.runner.AndroidJUnitRunner
  *
+ * <p><b>(Beta) To balance shards using the durations of previous runs:</b> -e numShards 4 -e
+ * shardIndex 1 -e shardDurationsFile durations.txt The file is read from {@link
+ * androidx.test.platform.io.PlatformTestStorage} and should contain one line per test, in the form
+ * com.android.foo.FooClassName#testMethodName followed by its duration in milliseconds. Tests
+ * without a duration are sharded as usual. The expected duration of every shard is reported in the
+ * predictedShardDurationsMs result.
+ *
  * <p><b>Use custom {@link RunnerBuilder builders} to run test classes:</b> adb shell am instrument
  * -w -e runnerBuilder com.android.foo.MyCustomBuilder,com.android.foo.AnotherCustomBuilder
  * com.android.foo/androidx.test.runner.AndroidJUnitRunner
@@ -257,6 +265,18 @@ import org.junit.runners.model.RunnerBuilder;
  * <p><b>Note:</b> The method must be static. Usually used to initiate a remote testing client that
  * depends on the runner (e.g. Espresso).
  *
+ * <p><b>(Beta) To write test results to a file rather than sending a status for every test:</b> -e
+ * resultsFile results.bin The file is written to {@link
+ * androidx.test.platform.io.PlatformTestStorage} as length prefixed binary records, see {@link
+ * androidx.test.internal.runner.listener.ResultRecordWriter}, and a single status holding the
+ * resultsFile key is sent at the start of the run.
+ *
+ * <p><b>(Beta) To keep an index of the test classes found by class path scanning:</b> -e
+ * useTestDiscoveryIndex true
+ *
+ * <p>The index is kept in test storage and is rebuilt whenever the test apk changes. Later runs
+ * skip class path scanning and do not load classes already known not to be tests.
+ *
  * <p><b>All arguments can also be specified in the in the AndroidManifest via a meta-data tag:</b>
  *
  * <p>eg. using listeners:
@@ -277,10 +297,13 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
     implements TestEventClientConnectListener {
 
   private static final String LOG_TAG = "AndroidJUnitRunner";
+  // Comma separated expected duration of every shard, when sharding by test durations.
+  private static final String REPORT_KEY_PREDICTED_SHARD_DURATIONS = "predictedShardDurationsMs";
 
   private Bundle arguments;
   private InstrumentationResultPrinter instrumentationResultPrinter;
   private RunnerArgs runnerArgs;
+  private long[] predictedShardDurationsMs;
   private TestEventClient testEventClient = TestEventClient.NO_OP_CLIENT;
   private final Set<Throwable> appExceptionsHandled =
       Collections.newSetFromMap(new WeakHashMap<>());
@@ -319,6 +342,15 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
       this.arguments = arguments;
       registerTestStorage(this.arguments);
       parseRunnerArgs(this.arguments);
+      if (runnerArgs.resultsFile != null && instrumentationResultPrinter != null) {
+        try {
+          instrumentationResultPrinter.setResultsFile(
+              runnerArgs.resultsFile,
+              PlatformTestStorageRegistry.getInstance().openOutputFile(runnerArgs.resultsFile));
+        } catch (IOException e) {
+          Log.w(LOG_TAG, "Failed to open results file, sending test status instead", e);
+        }
+      }
 
       if (waitForDebugger(runnerArgs)) {
         Log.i(LOG_TAG, "Waiting for debugger to connect...");
@@ -460,6 +492,10 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
         TestExecutor.Builder executorBuilder = new TestExecutor.Builder(this);
         addListeners(runnerArgs, executorBuilder);
         results = executorBuilder.build().execute(testRequest);
+        if (predictedShardDurationsMs != null) {
+          results.putString(
+              REPORT_KEY_PREDICTED_SHARD_DURATIONS, joinDurations(predictedShardDurationsMs));
+        }
       } catch (Throwable t) {
         final String msg = "Fatal exception when running tests";
         Log.e(LOG_TAG, msg, t);
@@ -663,7 +699,20 @@ public class AndroidJUnitRunner extends MonitoringInstrumentation
     }
     builder.addFromRunnerArgs(runnerArgs);
 
-    return builder.build();
+    Request request = builder.build();
+    predictedShardDurationsMs = builder.getPredictedShardDurationsMs();
+    return request;
+  }
+
+  private static String joinDurations(long[] durationsMs) {
+    StringBuilder joined = new StringBuilder();
+    for (long durationMs : durationsMs) {
+      if (joined.length() > 0) {
+        joined.append(',');
+      }
+      joined.append(durationMs);
+    }
+    return joined.toString();
   }
 
   /** Factory method for {@link TestRequestBuilder}. */
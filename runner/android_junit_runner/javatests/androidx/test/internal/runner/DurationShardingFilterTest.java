@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package androidx.test.internal.runner;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DurationShardingFilter}. */
+@RunWith(AndroidJUnit4.class)
+public class DurationShardingFilterTest {
+
+  private final List<Description> tests = new ArrayList<>();
+  private final Map<String, Long> durations = new HashMap<>();
+
+  private void addTest(String methodName, Long durationMs) {
+    tests.add(Description.createTestDescription("com.example.FooTest", methodName));
+    if (durationMs != null) {
+      durations.put("com.example.FooTest#" + methodName, durationMs);
+    }
+  }
+
+  private Set<String> testsOfShard(int numShards, int shardIndex) {
+    DurationShardingFilter filter =
+        DurationShardingFilter.create(tests, durations, numShards, shardIndex);
+    Set<String> shardTests = new HashSet<>();
+    for (Description test : tests) {
+      if (filter.shouldRun(test)) {
+        shardTests.add(test.getMethodName());
+      }
+    }
+    return shardTests;
+  }
+
+  @Test
+  public void assignsLongestTestsFirstToLeastLoadedShard() {
+    addTest("slow", 300L);
+    addTest("medium", 200L);
+    addTest("fast1", 100L);
+    addTest("fast2", 100L);
+
+    assertThat(testsOfShard(2, 0)).containsExactly("slow", "fast2");
+    assertThat(testsOfShard(2, 1)).containsExactly("medium", "fast1");
+    assertThat(DurationShardingFilter.create(tests, durations, 2, 0).getPredictedShardDurationsMs())
+        .asList()
+        .containsExactly(400L, 300L)
+        .inOrder();
+  }
+
+  @Test
+  public void shardsCoverEveryTestOnce() {
+    for (int i = 0; i < 50; i++) {
+      addTest("test" + i, i % 3 == 0 ? null : (long) (i * 7 % 13));
+    }
+
+    Set<String> allTests = new HashSet<>();
+    int assigned = 0;
+    for (int shard = 0; shard < 4; shard++) {
+      Set<String> shardTests = testsOfShard(4, shard);
+      assigned += shardTests.size();
+      allTests.addAll(shardTests);
+    }
+    assertThat(allTests).hasSize(50);
+    assertThat(assigned).isEqualTo(50);
+  }
+
+  @Test
+  public void unknownTestsAreShardedByHash() {
+    addTest("known", 1000L);
+    addTest("unknown", null);
+    Description unknown = tests.get(1);
+    int unknownShard = Math.abs(unknown.hashCode()) % 3;
+
+    assertThat(testsOfShard(3, unknownShard)).contains("unknown");
+    long[] predicted =
+        DurationShardingFilter.create(tests, durations, 3, 0).getPredictedShardDurationsMs();
+    // The unknown test is expected to last the average known duration.
+    assertThat(predicted[unknownShard]).isAtLeast(1000L);
+  }
+
+  @Test
+  public void suitesAreKept() {
+    addTest("test", 10L);
+
+    assertThat(
+            DurationShardingFilter.create(tests, durations, 2, 1)
+                .shouldRun(Description.createSuiteDescription("com.example.FooTest")))
+        .isTrue();
+  }
+}
@@ -30,8 +30,10 @@ import androidx.test.testing.fixtures.JUnit4Test;
 import androidx.test.testing.fixtures.NotATest;
 import androidx.test.testing.fixtures.SubClassAbstractTest;
 import androidx.test.testing.fixtures.SubClassJUnit4Test;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -152,4 +154,27 @@ public class ScanningTestLoaderTest {
     assertThat(listener.tests).hasSize(1);
     assertThat(listener.tests.get(0).getMethodName()).isEqualTo("thisIsATest");
   }
+
+  /** Verify runners keep the order of the class names when classes are loaded concurrently */
+  @Test
+  public void testLoadTests_manyClassesKeepOrder() {
+    List<String> classNames = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      classNames.add("notexist" + i);
+      classNames.add(NotATest.class.getName());
+    }
+    classNames.add(50, JUnit4Test.class.getName());
+    classNames.add(150, JUnit3Test.class.getName());
+    classNames.add(SubClassJUnit4Test.class.getName());
+
+    List<Runner> runners = loader.getRunnersFor(classNames);
+
+    assertThat(runners).hasSize(3);
+    assertThat(runners.get(0).getDescription().getClassName())
+        .isEqualTo(JUnit4Test.class.getName());
+    assertThat(runners.get(1).getDescription().getClassName())
+        .isEqualTo(JUnit3Test.class.getName());
+    assertThat(runners.get(2).getDescription().getClassName())
+        .isEqualTo(SubClassJUnit4Test.class.getName());
+  }
 }
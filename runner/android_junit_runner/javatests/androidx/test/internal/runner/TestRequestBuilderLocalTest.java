@@ -18,22 +18,40 @@ package androidx.test.internal.runner;
 import static androidx.test.platform.app.InstrumentationRegistry.getArguments;
 import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
+import androidx.test.platform.io.PlatformTestStorage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.Description;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Request;
 import org.junit.runner.RunWith;
 import org.junit.runner.notification.RunListener;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.InitializationError;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
@@ -64,6 +82,33 @@ public class TestRequestBuilderLocalTest {
     public void yetAnotherTestFixture() {}
   }
 
+  public abstract static class AbstractTestFixture {
+
+    @Test
+    public void abstractTest() {}
+  }
+
+  public static class NotATest {}
+
+  /** A runner counting how many times it is created. */
+  public static class CountingRunner extends BlockJUnit4ClassRunner {
+    static int count = 0;
+
+    public CountingRunner(Class<?> testClass) throws InitializationError {
+      super(testClass);
+      count++;
+    }
+  }
+
+  @RunWith(CountingRunner.class)
+  public static class CountedTestFixture {
+
+    @Test
+    public void counted() {}
+  }
+
+  @Rule public TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Mock private ClassPathScanner mockClassPathScanner;
 
   private TestRequestBuilder builder;
@@ -71,13 +116,16 @@ public class TestRequestBuilderLocalTest {
   @Before
   public void setUp() throws Exception {
     MockitoAnnotations.initMocks(this);
-    builder =
-        new TestRequestBuilder(getInstrumentation(), getArguments()) {
-          @Override
-          ClassPathScanner createClassPathScanner(List<String> paths) {
-            return mockClassPathScanner;
-          }
-        };
+    builder = createBuilder();
+  }
+
+  private TestRequestBuilder createBuilder() {
+    return new TestRequestBuilder(getInstrumentation(), getArguments()) {
+      @Override
+      ClassPathScanner createClassPathScanner(List<String> paths) {
+        return mockClassPathScanner;
+      }
+    };
   }
 
   @Test
@@ -123,6 +171,144 @@ public class TestRequestBuilderLocalTest {
         .inOrder();
   }
 
+  @Test
+  public void testDiscoveryIndex_skipsScanningOnLaterRuns() throws IOException {
+    String apkPath = createApk("classes.dex");
+    PlatformTestStorage testStorage = createInMemoryTestStorage();
+    setClassPathScanningResults(
+        TestFixture.class.getName(),
+        AbstractTestFixture.class.getName(),
+        NotATest.class.getName(),
+        "com.android.SomeOtherClass");
+
+    builder.addPathToScan(apkPath).setTestDiscoveryIndexStorage(testStorage);
+    List<String> firstRun = runRequest(builder.build());
+    List<String> secondRun =
+        runRequest(
+            createBuilder()
+                .addPathToScan(apkPath)
+                .setTestDiscoveryIndexStorage(testStorage)
+                .build());
+
+    assertThat(firstRun)
+        .containsExactly(
+            TestFixture.class.getName() + "#match", TestFixture.class.getName() + "#noMatch");
+    assertThat(secondRun).containsExactlyElementsIn(firstRun);
+    verify(mockClassPathScanner, times(1)).getClassPathEntries(ArgumentMatchers.any());
+
+    TestDiscoveryIndex index =
+        TestDiscoveryIndex.load(
+            testStorage,
+            TestDiscoveryIndex.computeKey(
+                Collections.singletonList(apkPath), Collections.<String>emptyList()));
+    assertThat(index.isKnownNonTest(NotATest.class.getName())).isTrue();
+    assertThat(index.isKnownNonTest(AbstractTestFixture.class.getName())).isTrue();
+    assertThat(index.isKnownNonTest("com.android.SomeOtherClass")).isFalse();
+    TestDiscoveryIndex.ClassEntry entry = index.getEntry(TestFixture.class.getName());
+    assertThat(entry.isTest()).isTrue();
+    assertThat(entry.getTestAnnotations())
+        .containsExactly(
+            Arrays.asList(Test.class.getName(), SmallTest.class.getName()),
+            Arrays.asList(Test.class.getName()));
+  }
+
+  @Test
+  public void testDiscoveryIndex_skipsClassesWithoutMatchingAnnotations() throws IOException {
+    String apkPath = createApk("classes.dex");
+    PlatformTestStorage testStorage = createInMemoryTestStorage();
+    setClassPathScanningResults(TestFixture.class.getName(), CountedTestFixture.class.getName());
+
+    builder.addPathToScan(apkPath).setTestDiscoveryIndexStorage(testStorage);
+    runRequest(builder.build());
+    CountingRunner.count = 0;
+    List<String> results =
+        runRequest(
+            createBuilder()
+                .addPathToScan(apkPath)
+                .setTestDiscoveryIndexStorage(testStorage)
+                .addTestSizeFilter(TestSize.SMALL)
+                .build());
+
+    assertThat(results).containsExactly(TestFixture.class.getName() + "#match");
+    assertThat(CountingRunner.count).isEqualTo(0);
+  }
+
+  @Test
+  public void testDiscoveryIndex_appliesFiltersOfEachRun() throws IOException {
+    String apkPath = createApk("classes.dex");
+    PlatformTestStorage testStorage = createInMemoryTestStorage();
+    setClassPathScanningResults(TestFixture.class.getName(), AnotherTestFixture.class.getName());
+
+    builder.addPathToScan(apkPath).setTestDiscoveryIndexStorage(testStorage);
+    runRequest(builder.build());
+    List<String> results =
+        runRequest(
+            createBuilder()
+                .addPathToScan(apkPath)
+                .setTestDiscoveryIndexStorage(testStorage)
+                .removeTestClass(TestFixture.class.getName())
+                .build());
+
+    assertThat(results).containsExactly(AnotherTestFixture.class.getName() + "#anotherTestFixture");
+  }
+
+  @Test
+  public void testDiscoveryIndex_rebuiltWhenApkChanges() throws IOException {
+    String apkPath = createApk("classes.dex");
+    PlatformTestStorage testStorage = createInMemoryTestStorage();
+    setClassPathScanningResults(TestFixture.class.getName());
+
+    builder.addPathToScan(apkPath).setTestDiscoveryIndexStorage(testStorage);
+    runRequest(builder.build());
+    createApk("classes.dex", "classes2.dex");
+    setClassPathScanningResults(TestFixture.class.getName(), AnotherTestFixture.class.getName());
+    List<String> results =
+        runRequest(
+            createBuilder()
+                .addPathToScan(apkPath)
+                .setTestDiscoveryIndexStorage(testStorage)
+                .build());
+
+    assertThat(results).contains(AnotherTestFixture.class.getName() + "#anotherTestFixture");
+    verify(mockClassPathScanner, times(2)).getClassPathEntries(ArgumentMatchers.any());
+  }
+
+  /** Writes a fake apk holding the given dex entries, each with distinct content. */
+  private String createApk(String... dexNames) throws IOException {
+    File apk = new File(tempFolder.getRoot(), "test.apk");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(apk))) {
+      for (String dexName : dexNames) {
+        out.putNextEntry(new ZipEntry(dexName));
+        out.write(dexName.getBytes("UTF-8"));
+        out.closeEntry();
+      }
+    }
+    return apk.getPath();
+  }
+
+  /** Returns a {@link PlatformTestStorage} keeping its internal files in memory. */
+  private static PlatformTestStorage createInMemoryTestStorage() throws IOException {
+    Map<String, ByteArrayOutputStream> files = new HashMap<>();
+    PlatformTestStorage testStorage = mock(PlatformTestStorage.class);
+    when(testStorage.openInternalOutputFile(anyString()))
+        .thenAnswer(
+            invocation -> {
+              ByteArrayOutputStream file = new ByteArrayOutputStream();
+              files.put(invocation.getArgument(0), file);
+              return file;
+            });
+    when(testStorage.openInternalInputFile(anyString()))
+        .thenAnswer(
+            invocation -> {
+              ByteArrayOutputStream file = files.get(invocation.getArgument(0));
+              if (file == null) {
+                throw new IOException("No such file: " + invocation.getArgument(0));
+              }
+              return new ByteArrayInputStream(file.toByteArray());
+            });
+    return testStorage;
+  }
+
   private void setClassPathScanningResults(String... names) throws IOException {
     when(mockClassPathScanner.getClassPathEntries(ArgumentMatchers.any()))
         .thenReturn(new HashSet<>(Arrays.asList(names)));
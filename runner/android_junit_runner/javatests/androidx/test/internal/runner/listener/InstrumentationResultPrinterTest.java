@@ -23,6 +23,13 @@ import static junit.framework.Assert.assertTrue;
 import android.os.Bundle;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import junit.framework.Assert;
 import org.junit.Test;
 import org.junit.runner.Description;
@@ -85,4 +92,117 @@ public class InstrumentationResultPrinterTest {
     assertEquals(d, descriptions[0]);
     assertEquals(d, descriptions[1]);
   }
+
+  @Test
+  public void resultsFile_writesRecordsInsteadOfStatus() throws Exception {
+    List<Integer> codes = new ArrayList<>();
+    List<Bundle> statuses = new ArrayList<>();
+    InstrumentationResultPrinter intrResultPrinter =
+        new InstrumentationResultPrinter() {
+          @Override
+          public void sendStatus(int code, Bundle bundle) {
+            codes.add(code);
+            statuses.add(bundle);
+          }
+        };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    intrResultPrinter.setResultsFile("results.bin", out);
+
+    Description passing = Description.createTestDescription("FooTest", "passing");
+    Description failing = Description.createTestDescription("FooTest", "failing");
+    intrResultPrinter.testRunStarted(Description.EMPTY);
+    intrResultPrinter.testStarted(passing);
+    intrResultPrinter.testFinished(passing);
+    intrResultPrinter.testStarted(failing);
+    intrResultPrinter.testFailure(new Failure(failing, new RuntimeException("boom")));
+    intrResultPrinter.testFinished(failing);
+
+    assertEquals(1, statuses.size());
+    assertEquals(InstrumentationResultPrinter.REPORT_VALUE_RESULTS_FILE, (int) codes.get(0));
+    assertEquals(
+        "results.bin",
+        statuses.get(0).getString(InstrumentationResultPrinter.REPORT_KEY_RESULTS_FILE));
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+    byte[] magic = new byte[ResultRecordWriter.MAGIC.length];
+    in.readFully(magic);
+    assertEquals(new String(ResultRecordWriter.MAGIC, "UTF-8"), new String(magic, "UTF-8"));
+    assertEquals(ResultRecordWriter.VERSION, in.readInt());
+
+    in.readInt(); // record length
+    assertEquals(ResultRecordWriter.RECORD_TEST_STARTED, in.readByte());
+    assertEquals(1, in.readInt());
+    assertEquals("FooTest", readString(in));
+    assertEquals("passing", readString(in));
+
+    in.readInt();
+    assertEquals(ResultRecordWriter.RECORD_TEST_FINISHED, in.readByte());
+    assertEquals(1, in.readInt());
+    assertEquals(InstrumentationResultPrinter.REPORT_VALUE_RESULT_OK, in.readInt());
+    assertEquals("", readString(in));
+
+    in.readInt();
+    assertEquals(ResultRecordWriter.RECORD_TEST_STARTED, in.readByte());
+    assertEquals(2, in.readInt());
+    assertEquals("FooTest", readString(in));
+    assertEquals("failing", readString(in));
+
+    in.readInt();
+    assertEquals(ResultRecordWriter.RECORD_TEST_FINISHED, in.readByte());
+    assertEquals(2, in.readInt());
+    assertEquals(InstrumentationResultPrinter.REPORT_VALUE_RESULT_FAILURE, in.readInt());
+    assertTrue(readString(in).contains("boom"));
+    assertEquals(0, in.available());
+  }
+
+  @Test
+  public void resultsFile_writeFailure_fallsBackToStatus() throws Exception {
+    List<Integer> codes = new ArrayList<>();
+    List<Bundle> statuses = new ArrayList<>();
+    InstrumentationResultPrinter intrResultPrinter =
+        new InstrumentationResultPrinter() {
+          @Override
+          public void sendStatus(int code, Bundle bundle) {
+            codes.add(code);
+            statuses.add(bundle);
+          }
+        };
+    boolean[] failing = new boolean[1];
+    OutputStream out =
+        new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            if (failing[0]) {
+              throw new IOException("disk full");
+            }
+          }
+
+          @Override
+          public void flush() throws IOException {
+            write(0);
+          }
+        };
+    intrResultPrinter.setResultsFile("results.bin", out);
+
+    Description failingTest = Description.createTestDescription("FooTest", "failing");
+    intrResultPrinter.testRunStarted(Description.EMPTY);
+    intrResultPrinter.testStarted(failingTest);
+    failing[0] = true;
+    intrResultPrinter.testFailure(new Failure(failingTest, new RuntimeException("boom")));
+    intrResultPrinter.testFinished(failingTest);
+
+    assertEquals(2, statuses.size());
+    assertEquals(InstrumentationResultPrinter.REPORT_VALUE_RESULT_FAILURE, (int) codes.get(1));
+    Bundle result = statuses.get(1);
+    assertEquals("FooTest", result.getString(InstrumentationResultPrinter.REPORT_KEY_NAME_CLASS));
+    assertEquals("failing", result.getString(InstrumentationResultPrinter.REPORT_KEY_NAME_TEST));
+    assertEquals(1, result.getInt(InstrumentationResultPrinter.REPORT_KEY_NUM_CURRENT));
+    assertTrue(result.getString(REPORT_KEY_STACK).contains("boom"));
+  }
+
+  private static String readString(DataInputStream in) throws Exception {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
 }
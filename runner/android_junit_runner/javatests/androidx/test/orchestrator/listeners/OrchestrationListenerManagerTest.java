@@ -19,8 +19,10 @@ import static androidx.test.orchestrator.junit.BundleJUnitUtils.getDescription;
 import static androidx.test.orchestrator.junit.BundleJUnitUtils.getFailure;
 import static androidx.test.orchestrator.junit.BundleJUnitUtils.getResult;
 import static androidx.test.orchestrator.listeners.OrchestrationListenerManager.KEY_TEST_EVENT;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -28,6 +30,8 @@ import android.app.Instrumentation;
 import android.os.Bundle;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.orchestrator.junit.BundleJUnitUtils;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableFailure;
 import androidx.test.orchestrator.listeners.OrchestrationListenerManager.TestEvent;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,6 +39,7 @@ import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.RunWith;
 import org.junit.runner.notification.Failure;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -155,8 +160,98 @@ public class OrchestrationListenerManagerTest {
     verify(mockRunListener2).testFailure(any());
   }
 
+  @Test
+  public void handleTestProcessFinished_crashAfterFailureOfPreviousTest() throws Exception {
+    listener.testProcessStarted(new ParcelableDescription(makeDescription("testA")), 2);
+    listener.handleNotification(makeTestRunStartedBundle());
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_STARTED, "testA"));
+    listener.handleNotification(makeTestFailureBundle("testA"));
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_FINISHED, "testA"));
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_STARTED, "testB"));
+    listener.testProcessFinished("outputFile");
+
+    ArgumentCaptor<ParcelableFailure> failures = ArgumentCaptor.forClass(ParcelableFailure.class);
+    verify(mockRunListener1, times(2)).testFailure(failures.capture());
+    assertEquals("testA", failures.getAllValues().get(0).getDescription().getMethodName());
+    assertEquals("testB", failures.getAllValues().get(1).getDescription().getMethodName());
+    ArgumentCaptor<ParcelableDescription> finished =
+        ArgumentCaptor.forClass(ParcelableDescription.class);
+    verify(mockRunListener1, times(2)).testFinished(finished.capture());
+    assertEquals("testB", finished.getAllValues().get(1).getMethodName());
+  }
+
+  @Test
+  public void handleTestProcessFinished_crashAfterLastTest() throws Exception {
+    listener.testProcessStarted(new ParcelableDescription(makeDescription("testA")));
+    listener.handleNotification(makeTestRunStartedBundle());
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_STARTED, "testA"));
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_FINISHED, "testA"));
+    listener.testProcessFinished("outputFile");
+
+    // A crash after the test body, e.g. in @AfterClass, fails the test.
+    ArgumentCaptor<ParcelableFailure> failures = ArgumentCaptor.forClass(ParcelableFailure.class);
+    verify(mockRunListener1).testFailure(failures.capture());
+    assertEquals("testA", failures.getValue().getDescription().getMethodName());
+    verify(mockRunListener1, times(2)).testFinished(any());
+  }
+
+  @Test
+  public void handleTestProcessFinished_crashInBetweenTestsOfBatch() throws Exception {
+    listener.testProcessStarted(new ParcelableDescription(makeDescription("testA")), 2);
+    listener.handleNotification(makeTestRunStartedBundle());
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_STARTED, "testA"));
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_FINISHED, "testA"));
+    listener.testProcessFinished("outputFile");
+
+    // The test which passed is neither failed nor finished again, the next one runs again.
+    verify(mockRunListener1, never()).testFailure(any());
+    verify(mockRunListener1, times(1)).testFinished(any());
+  }
+
+  @Test
+  public void handleTestProcessFinished_crashAfterLastTestOfBatch() throws Exception {
+    listener.testProcessStarted(new ParcelableDescription(makeDescription("testA")), 2);
+    listener.handleNotification(makeTestRunStartedBundle());
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_STARTED, "testA"));
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_FINISHED, "testA"));
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_STARTED, "testB"));
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_FINISHED, "testB"));
+    listener.testProcessFinished("outputFile");
+
+    ArgumentCaptor<ParcelableFailure> failures = ArgumentCaptor.forClass(ParcelableFailure.class);
+    verify(mockRunListener1).testFailure(failures.capture());
+    assertEquals("testB", failures.getValue().getDescription().getMethodName());
+  }
+
+  @Test
+  public void handleTestProcessFinished_crashAfterFailureOfRunningTest() throws Exception {
+    listener.testProcessStarted(new ParcelableDescription(makeDescription("testA")), 2);
+    listener.handleNotification(makeTestRunStartedBundle());
+    listener.handleNotification(makeTestBundle(TestEvent.TEST_STARTED, "testA"));
+    listener.handleNotification(makeTestFailureBundle("testA"));
+    listener.testProcessFinished("outputFile");
+
+    // The failure is only reported once, the end of the test is reported on its behalf.
+    verify(mockRunListener1, times(1)).testFailure(any());
+    verify(mockRunListener1, times(1)).testFinished(any());
+  }
+
   // Non test convenience methods
 
+  private static Bundle makeTestBundle(TestEvent event, String methodName) {
+    Bundle bundle = BundleJUnitUtils.getBundleFromDescription(makeDescription(methodName));
+    bundle.putString(KEY_TEST_EVENT, event.toString());
+    return bundle;
+  }
+
+  private static Bundle makeTestFailureBundle(String methodName) {
+    Bundle bundle =
+        BundleJUnitUtils.getBundleFromFailure(
+            new Failure(makeDescription(methodName), new Throwable("Error message")));
+    bundle.putString(KEY_TEST_EVENT, TestEvent.TEST_FAILURE.toString());
+    return bundle;
+  }
+
   private static Bundle makeTestRunStartedBundle() {
     Bundle bundle = BundleJUnitUtils.getBundleFromDescription(makeDescription());
     bundle.putString(KEY_TEST_EVENT, TestEvent.TEST_RUN_STARTED.toString());
@@ -200,8 +295,12 @@ public class OrchestrationListenerManagerTest {
   }
 
   private static Description makeDescription() {
+    return makeDescription("sampleTest");
+  }
+
+  private static Description makeDescription(String methodName) {
     return Description.createTestDescription(
-        androidx.test.orchestrator.SampleJUnitTest.class, "sampleTest");
+        androidx.test.orchestrator.SampleJUnitTest.class, methodName);
   }
 
   private static Failure makeFailure() {
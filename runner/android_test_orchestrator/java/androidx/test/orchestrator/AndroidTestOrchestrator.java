@@ -16,14 +16,20 @@
 
 package androidx.test.orchestrator;
 
+import static androidx.test.orchestrator.OrchestratorConstants.AJUR_ANNOTATION_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.AJUR_CLASS_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.AJUR_COVERAGE;
 import static androidx.test.orchestrator.OrchestratorConstants.AJUR_COVERAGE_FILE;
 import static androidx.test.orchestrator.OrchestratorConstants.CLEAR_PKG_DATA;
+import static androidx.test.orchestrator.OrchestratorConstants.CLEAR_PKG_DATA_FROM_SNAPSHOT;
 import static androidx.test.orchestrator.OrchestratorConstants.COVERAGE_FILE_PATH;
 import static androidx.test.orchestrator.OrchestratorConstants.ISOLATED_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.ORCHESTRATOR_DEBUG_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.ORCHESTRATOR_SERVICE_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.PARALLEL_SAFE_ANNOTATION_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.PARALLEL_USERS_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.TARGET_INSTRUMENTATION_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.TEST_BATCH_SIZE_ARGUMENT;
 import static com.google.common.base.Preconditions.checkState;
 
 import android.Manifest.permission;
@@ -60,10 +66,12 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
@@ -112,9 +120,27 @@ import java.util.regex.Pattern;
  * AndroidJUnitRunner's {@code coverageFile} flag. Since the generated coverage files will overwrite
  * each other.
  *
+ * <p>Pass {@code -e testBatchSize N} flag if you wish the orchestrator to run up to N tests in each
+ * isolated process, rather than a single one. If the process crashes, the test which was running is
+ * reported as failed, and the tests of the batch which did not start yet are run again in a new
+ * process. Tests of a batch share their process, and thus any state it holds.
+ *
+ * <p>Pass {@code -e parallelUsers 10,11} flag if you wish the orchestrator to run tests in
+ * parallel, one isolated process at a time per given Android user. The app under test and the test
+ * app must be installed for each user. Pass {@code -e parallelSafeAnnotation
+ * com.example.ParallelSafe} as well to only run the tests with the given annotation in parallel,
+ * the other tests then run one process at a time afterwards. Tests run in parallel report their
+ * results through the output of their process, package data is not cleared in between them, and
+ * their results are reported in the order of the tests once every earlier batch of tests finished.
+ *
  * <p>Pass {@code -e clearPackageData} flag if you wish the orchestrator to run {@code pm clear
  * context.getPackageName()} and {@code pm clear targetContext.getPackageName()} commands in between
- * test invocations. Note, the context in the clear command is the App under test context.
+ * test invocations. Note, the context in the clear command is the App under test context. When
+ * running batches of tests, package data is cleared in between batches. Pass {@code -e
+ * clearPackageDataFromSnapshot true} as well to take a snapshot of the data of each debuggable
+ * package once cleared, then restore it in between test invocations rather than clearing it, which
+ * is faster but only resets the data directory of the packages. The time spent resetting package
+ * data is reported at the end of the run.
  *
  * <p>Pass {@code -e orchestratorDebug} flag if you need to debug orchestrator itself. Note, to
  * debug test code you still need to pass {@code -e debug}.
@@ -125,10 +151,10 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
   private static final String TAG = "AndroidTestOrchestrator";
   // As defined in the AndroidManifest of the Orchestrator app.
   private static final String ORCHESTRATOR_SERVICE_LOCATION = "OrchestratorService";
-  private static final String ORCHESTRATOR_SERVICE_ARGUMENT = "orchestratorService";
 
   private static final String TEST_COLLECTION_FILENAME = "testCollection.txt";
   private static final String TEST_RUN_FILENAME = "%s.txt";
+  private static final String PARALLEL_TEST_COLLECTION_FILENAME = "parallelTestCollection.txt";
 
   private static final Pattern FULLY_QUALIFIED_CLASS_AND_METHOD =
       Pattern.compile("[\\w\\.?]+#\\w+");
@@ -147,11 +173,16 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
   private volatile CallbackLogic callbackLogic;
 
   private Bundle arguments;
+  private int testBatchSize;
+  private List<Integer> parallelUserIds;
+  // Created on first use, as resolving the target package needs the package manager.
+  private PackageDataCleaner packageDataCleaner;
 
   // TODO(b/73548232) logic that touches these fields has nothing to do with being an
   // instrumentation, it should live in its own state machine class.
+  // The first test of the batch being run, used to name its output file.
   private String test;
-  private Iterator<String> testIterator;
+  private TestBatches testBatches;
 
   public AndroidTestOrchestrator() {
     super();
@@ -180,6 +211,8 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
 
     this.arguments = arguments;
     this.arguments.putString(ORCHESTRATOR_SERVICE_ARGUMENT, ORCHESTRATOR_SERVICE_LOCATION);
+    this.testBatchSize = getTestBatchSize(arguments);
+    this.parallelUserIds = getParallelUserIds(arguments);
 
     super.onCreate(arguments);
     start();
@@ -288,15 +321,25 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
     // The first run complete will occur during test collection.
     if (null == test) {
       List<String> allTests = callbackLogic.provideCollectedTests();
-      testIterator = allTests.iterator();
+      testBatches = new TestBatches(allTests, testBatchSize);
       addListeners(allTests.size());
 
       if (allTests.isEmpty()) {
         finish(Activity.RESULT_CANCELED, createResultBundle());
         return;
       }
+      if (parallelUserIds != null && runsInIsolatedMode(arguments)) {
+        // Test collection is over, executeNextTest() assigns the actual test.
+        test = "";
+        collectParallelSafeTests(allTests);
+        return;
+      }
     } else {
       listenerManager.testProcessFinished(getOutputFile());
+      int retriedTests = testBatches.batchFinished();
+      if (retriedTests > 0) {
+        Log.i(TAG, String.format("Test process crashed, running %d tests again", retriedTests));
+      }
     }
 
     if (runsInIsolatedMode(arguments)) {
@@ -320,21 +363,93 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
             getContext(), getSecret(arguments), arguments, getOutputStream(), this));
   }
 
+  private void collectParallelSafeTests(final List<String> allTests) {
+    String annotation = arguments.getString(PARALLEL_SAFE_ANNOTATION_ARGUMENT);
+    if (annotation == null) {
+      runParallelTests(allTests);
+      return;
+    }
+    Bundle collectionArguments = new Bundle(arguments);
+    String annotations = arguments.getString(AJUR_ANNOTATION_ARGUMENT);
+    if (annotations != null) {
+      // Tests must have every annotation given.
+      annotation = annotations + "," + annotation;
+    }
+    collectionArguments.putString(AJUR_ANNOTATION_ARGUMENT, annotation);
+    callbackLogic.clearCollectedTests();
+    executorService.execute(
+        TestRunnable.testCollectionRunnable(
+            getContext(),
+            getSecret(arguments),
+            collectionArguments,
+            getOutputStream(PARALLEL_TEST_COLLECTION_FILENAME),
+            () -> {
+              // Keep the order of the tests as first collected.
+              Set<String> parallelSafeTests = new HashSet<>(callbackLogic.provideCollectedTests());
+              List<String> parallelTests = new ArrayList<>();
+              for (String collectedTest : allTests) {
+                if (parallelSafeTests.contains(collectedTest)) {
+                  parallelTests.add(collectedTest);
+                }
+              }
+              runParallelTests(parallelTests);
+            }));
+  }
+
+  private void runParallelTests(List<String> parallelTests) {
+    Log.i(
+        TAG,
+        String.format(
+            "Running %d tests in parallel as users %s", parallelTests.size(), parallelUserIds));
+    testBatches.skip(parallelTests);
+    new ParallelTestRunner(
+            parallelUserIds,
+            this::executeParallelBatch,
+            TEST_RUN_FILENAME,
+            Arrays.asList(resultBuilder, resultPrinter))
+        .run(parallelTests, testBatchSize, this::executeNextTest);
+  }
+
+  /** Runs tests as another user, on one of the {@link ParallelTestRunner} threads. */
+  private String executeParallelBatch(List<String> tests, int userId, String outputFile) {
+    Bundle batchArguments = new Bundle(arguments);
+    String coveragePath = addTestCoverageSupport(batchArguments, tests.get(0));
+    if (coveragePath != null) {
+      batchArguments.putString(AJUR_COVERAGE_FILE, coveragePath);
+    }
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    TestRunnable.parallelTestRunnable(
+            getContext(), getSecret(arguments), batchArguments, output, () -> {}, tests, userId)
+        .run();
+    OutputStream outputFileStream = getOutputStream(outputFile);
+    try {
+      try {
+        output.writeTo(outputFileStream);
+      } finally {
+        outputFileStream.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write test output to " + outputFile, e);
+    }
+    return output.toString();
+  }
+
   private void executeNextTest() {
-    if (!testIterator.hasNext()) {
+    if (!testBatches.hasNext()) {
       finish(Activity.RESULT_OK, createResultBundle());
       return;
     }
-    test = testIterator.next();
-    listenerManager.testProcessStarted(new ParcelableDescription(test));
+    List<String> batch = testBatches.next();
+    test = batch.get(0);
+    listenerManager.testProcessStarted(new ParcelableDescription(test), batch.size());
     String coveragePath = addTestCoverageSupport(arguments, test);
     if (coveragePath != null) {
       arguments.putString(AJUR_COVERAGE_FILE, coveragePath);
     }
     clearPackageData();
     executorService.execute(
-        TestRunnable.singleTestRunnable(
-            getContext(), getSecret(arguments), arguments, getOutputStream(), this, test));
+        TestRunnable.testBatchRunnable(
+            getContext(), getSecret(arguments), arguments, getOutputStream(), this, batch));
     if (coveragePath != null) {
       arguments.remove(AJUR_COVERAGE_FILE);
     }
@@ -348,20 +463,23 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
         new Runnable() {
           @Override
           public void run() {
-            execShellCommandSync(
-                getContext(),
-                getSecret(arguments),
-                "pm",
-                Arrays.asList("clear", getTargetPackage(arguments)));
-            execShellCommandSync(
-                getContext(),
-                getSecret(arguments),
-                "pm",
-                Arrays.asList("clear", getTargetInstrPackage(arguments)));
+            getPackageDataCleaner().reset();
           }
         });
   }
 
+  private synchronized PackageDataCleaner getPackageDataCleaner() {
+    if (packageDataCleaner == null) {
+      packageDataCleaner =
+          new PackageDataCleaner(
+              Arrays.asList(getTargetPackage(arguments), getTargetInstrPackage(arguments)),
+              Boolean.parseBoolean(arguments.getString(CLEAR_PKG_DATA_FROM_SNAPSHOT)),
+              (command, params) ->
+                  execShellCommandSync(getContext(), getSecret(arguments), command, params));
+    }
+    return packageDataCleaner;
+  }
+
   @VisibleForTesting
   static String addTestCoverageSupport(Bundle args, String filename) {
     // Only do the aggregate coverage mode if coverage was requested AND we're running in isolation
@@ -385,13 +503,17 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
   }
 
   private OutputStream getOutputStream() {
+    return getOutputStream(getOutputFile());
+  }
+
+  private OutputStream getOutputStream(String outputFile) {
     try {
       Context context = getContext();
       // Support for directBootMode
       if (Build.VERSION.SDK_INT >= 24) {
         context = ContextCompat.createDeviceProtectedStorageContext(context);
       }
-      return context.openFileOutput(getOutputFile(), 0);
+      return context.openFileOutput(outputFile, 0);
     } catch (FileNotFoundException e) {
       throw new RuntimeException("Could not open stream for output");
     }
@@ -408,6 +530,7 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
   private void addListeners(int testSize) {
     listenerManager.addListener(resultBuilder);
     listenerManager.addListener(resultPrinter);
+    listenerManager.addListener(testBatches);
     listenerManager.orchestrationRunStarted(testSize);
   }
 
@@ -419,6 +542,10 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
     try {
       resultBuilder.orchestrationRunFinished();
       resultPrinter.orchestrationRunFinished(writer, resultBuilder.build());
+      String packageDataSummary = getPackageDataSummary();
+      if (packageDataSummary != null) {
+        writer.println(packageDataSummary);
+      }
     } finally {
       writer.close();
     }
@@ -428,6 +555,10 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
     return bundle;
   }
 
+  private synchronized String getPackageDataSummary() {
+    return packageDataCleaner == null ? null : packageDataCleaner.getSummary();
+  }
+
   @Override
   public void finish(int resultCode, Bundle results) {
 
@@ -466,6 +597,42 @@ public final class AndroidTestOrchestrator extends android.app.Instrumentation
         && (path != null && !path.isEmpty());
   }
 
+  @VisibleForTesting
+  static int getTestBatchSize(Bundle arguments) {
+    String batchSize = arguments.getString(TEST_BATCH_SIZE_ARGUMENT);
+    if (batchSize == null) {
+      return 1;
+    }
+    try {
+      int size = Integer.parseInt(batchSize);
+      if (size > 0) {
+        return size;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below.
+    }
+    throw new IllegalArgumentException(
+        "Invalid " + TEST_BATCH_SIZE_ARGUMENT + " [" + batchSize + "], must be a positive number.");
+  }
+
+  @VisibleForTesting
+  static List<Integer> getParallelUserIds(Bundle arguments) {
+    String parallelUsers = arguments.getString(PARALLEL_USERS_ARGUMENT);
+    if (TextUtils.isEmpty(parallelUsers)) {
+      return null;
+    }
+    List<Integer> userIds = new ArrayList<>();
+    for (String userId : parallelUsers.split(",", -1)) {
+      try {
+        userIds.add(Integer.parseInt(userId.trim()));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "Invalid " + PARALLEL_USERS_ARGUMENT + " [" + parallelUsers + "], must be user ids.");
+      }
+    }
+    return userIds;
+  }
+
   private static boolean shouldClearPackageData(Bundle arguments) {
     return Boolean.parseBoolean(arguments.getString(CLEAR_PKG_DATA));
   }
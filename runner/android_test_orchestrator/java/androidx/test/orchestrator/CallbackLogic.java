@@ -63,6 +63,12 @@ class CallbackLogic extends OrchestratorCallback.Stub {
     }
   }
 
+  void clearCollectedTests() {
+    synchronized (testLock) {
+      listOfTests.clear();
+    }
+  }
+
   void setListenerManager(OrchestrationListenerManager mListenerManager) {
     synchronized (testLock) {
       Preconditions.checkState(null == this.listenerManager, "Listener manager assigned twice.");
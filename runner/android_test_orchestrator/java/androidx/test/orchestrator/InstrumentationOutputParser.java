@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import android.app.Activity;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableFailure;
+import androidx.test.orchestrator.listeners.OrchestrationResultPrinter;
+import androidx.test.orchestrator.listeners.OrchestrationRunListener;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses the raw output of {@code am instrument -r} into test events, for test processes which do
+ * not report to the orchestrator service.
+ *
+ * <p>Only statuses of the format sent by {@link OrchestrationResultPrinter} and the
+ * AndroidJUnitRunner InstrumentationResultPrinter are understood.
+ */
+final class InstrumentationOutputParser {
+
+  private static final String STATUS_PREFIX = "INSTRUMENTATION_STATUS: ";
+  private static final String STATUS_CODE_PREFIX = "INSTRUMENTATION_STATUS_CODE: ";
+  private static final String RESULT_PREFIX = "INSTRUMENTATION_RESULT: ";
+  private static final String CODE_PREFIX = "INSTRUMENTATION_CODE: ";
+
+  private final OrchestrationRunListener listener;
+  private final Set<String> startedTests = new HashSet<>();
+  private final Map<String, String> values = new HashMap<>();
+  private String currentKey;
+  // A started test is only reported with its result, since ignored tests are also started.
+  private String startedTest;
+  private boolean runFinished = false;
+
+  InstrumentationOutputParser(OrchestrationRunListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Parses the output of an instrumentation, reporting its tests to the listener.
+   *
+   * @param output the output of the instrumentation
+   * @param outputFile the file the output is kept in, referred to if the instrumentation crashed
+   */
+  void parse(String output, String outputFile) {
+    for (String line : output.split("\r?\n", -1)) {
+      parseLine(line);
+    }
+    if (startedTest != null) {
+      ParcelableDescription description = new ParcelableDescription(startedTest);
+      listener.testStarted(description);
+      listener.testFailure(
+          new ParcelableFailure(
+              description,
+              "Test instrumentation process crashed. Check " + outputFile + " for details"));
+      listener.testFinished(description);
+      startedTest = null;
+    }
+  }
+
+  /** Returns the tests which were started or ignored, as {@code class#method}. */
+  Set<String> getStartedTests() {
+    return startedTests;
+  }
+
+  /** Returns true if the instrumentation finished normally, rather than crashing. */
+  boolean isRunFinished() {
+    return runFinished;
+  }
+
+  private void parseLine(String line) {
+    if (line.startsWith(STATUS_PREFIX)) {
+      String keyValue = line.substring(STATUS_PREFIX.length());
+      int separator = keyValue.indexOf('=');
+      if (separator < 0) {
+        currentKey = null;
+        return;
+      }
+      currentKey = keyValue.substring(0, separator);
+      values.put(currentKey, keyValue.substring(separator + 1));
+    } else if (line.startsWith(STATUS_CODE_PREFIX)) {
+      try {
+        handleStatus(Integer.parseInt(line.substring(STATUS_CODE_PREFIX.length()).trim()));
+      } catch (NumberFormatException e) {
+        // Not a test status.
+      }
+      values.clear();
+      currentKey = null;
+    } else if (line.startsWith(RESULT_PREFIX)) {
+      // The final results, of no interest.
+      values.clear();
+      currentKey = null;
+    } else if (line.startsWith(CODE_PREFIX)) {
+      runFinished =
+          String.valueOf(Activity.RESULT_OK).equals(line.substring(CODE_PREFIX.length()).trim());
+    } else if (currentKey != null) {
+      values.put(currentKey, values.get(currentKey) + "\n" + line);
+    }
+  }
+
+  private void handleStatus(int code) {
+    String className = values.get(OrchestrationResultPrinter.REPORT_KEY_NAME_CLASS);
+    String methodName = values.get(OrchestrationResultPrinter.REPORT_KEY_NAME_TEST);
+    if (className == null) {
+      return;
+    }
+    String test = methodName == null ? className : className + "#" + methodName;
+    if (code == OrchestrationResultPrinter.REPORT_VALUE_RESULT_START) {
+      startedTest = test;
+      startedTests.add(test);
+      return;
+    }
+
+    ParcelableDescription description = new ParcelableDescription(test);
+    String stack = values.get(OrchestrationResultPrinter.REPORT_KEY_STACK);
+    if (code == OrchestrationResultPrinter.REPORT_VALUE_RESULT_IGNORED) {
+      startedTests.add(test);
+      listener.testIgnored(description);
+    } else if (code == OrchestrationResultPrinter.REPORT_VALUE_RESULT_OK) {
+      listener.testStarted(description);
+      listener.testFinished(description);
+    } else if (code == OrchestrationResultPrinter.REPORT_VALUE_RESULT_ASSUMPTION_FAILURE) {
+      listener.testStarted(description);
+      listener.testAssumptionFailure(
+          new ParcelableFailure(description, stack == null ? "" : stack));
+      listener.testFinished(description);
+    } else if (code == OrchestrationResultPrinter.REPORT_VALUE_RESULT_FAILURE) {
+      listener.testStarted(description);
+      listener.testFailure(new ParcelableFailure(description, stack == null ? "" : stack));
+      listener.testFinished(description);
+    } else {
+      // Progress statuses, the test is still running.
+      return;
+    }
+    startedTest = null;
+  }
+}
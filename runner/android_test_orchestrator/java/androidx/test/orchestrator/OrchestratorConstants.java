@@ -23,10 +23,16 @@ final class OrchestratorConstants {
   static final String ORCHESTRATOR_DEBUG_ARGUMENT = "orchestratorDebug";
   static final String COVERAGE_FILE_PATH = "coverageFilePath";
   static final String CLEAR_PKG_DATA = "clearPackageData";
+  static final String CLEAR_PKG_DATA_FROM_SNAPSHOT = "clearPackageDataFromSnapshot";
+  static final String TEST_BATCH_SIZE_ARGUMENT = "testBatchSize";
+  static final String PARALLEL_USERS_ARGUMENT = "parallelUsers";
+  static final String PARALLEL_SAFE_ANNOTATION_ARGUMENT = "parallelSafeAnnotation";
+  static final String ORCHESTRATOR_SERVICE_ARGUMENT = "orchestratorService";
 
   // The following args have equivalents in AJUR:
   static final String AJUR_LIST_TESTS_ARGUMENT = "listTestsForOrchestrator";
   static final String AJUR_CLASS_ARGUMENT = "class";
+  static final String AJUR_ANNOTATION_ARGUMENT = "annotation";
   static final String AJUR_COVERAGE = "coverage";
   static final String AJUR_COVERAGE_FILE = "coverageFile";
 
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resets the data of packages in between test runs.
+ *
+ * <p>By default, runs {@code pm clear} for each package. When restoring from snapshots, the data
+ * directory of each package is copied to a snapshot directory inside it after it was first cleared,
+ * then later resets only delete the files added or changed since and copy back the missing ones,
+ * which is much faster than {@code pm clear} for the small data directories of most apps. A
+ * snapshot is taken and restored through {@code run-as}, so this only works for debuggable
+ * packages; the other packages, and packages whose snapshot could not be restored, are reset with
+ * {@code pm clear}.
+ *
+ * <p>Unlike {@code pm clear}, restoring a snapshot does not reset anything outside of the data
+ * directory, such as the external storage or granted runtime permissions.
+ */
+final class PackageDataCleaner {
+
+  private static final String TAG = "PackageDataCleaner";
+
+  /** Runs shell commands on the device. */
+  interface CommandExecutor {
+    /** Runs {@code command} with {@code params} and returns its output. */
+    String execute(String command, List<String> params);
+  }
+
+  private static final String SNAPSHOT_DIR = ".orchestratorSnapshot";
+  private static final String SUCCESS = "ORCHESTRATOR_SNAPSHOT_OK";
+
+  // run-as starts in the data directory of the package.
+  private static final String TAKE_SNAPSHOT_SCRIPT =
+      "rm -rf "
+          + SNAPSHOT_DIR
+          + " && mkdir "
+          + SNAPSHOT_DIR
+          + " && find . -mindepth 1 -maxdepth 1 ! -name "
+          + SNAPSHOT_DIR
+          + " -exec cp -a {} "
+          + SNAPSHOT_DIR
+          + "/ \\; && echo "
+          + SUCCESS;
+
+  // Deletes what is not in the snapshot or differs from it, then copies back what is missing.
+  private static final String RESTORE_SNAPSHOT_SCRIPT =
+      "S="
+          + SNAPSHOT_DIR
+          + "; [ -d $S ] || exit 1;"
+          + " find . -mindepth 1 ! -path ./$S ! -path \"./$S/*\" | while read -r f; do"
+          + " if [ ! -e \"$S/$f\" ] && [ ! -L \"$S/$f\" ]; then rm -rf \"$f\";"
+          + " elif [ -f \"$f\" ] && [ ! -L \"$f\" ] && ! cmp -s \"$f\" \"$S/$f\"; then"
+          + " rm -f \"$f\";"
+          + " fi; done;"
+          + " cp -an $S/. . && echo "
+          + SUCCESS;
+
+  private final List<String> packages;
+  private final boolean restoreSnapshots;
+  private final CommandExecutor executor;
+
+  private final Set<String> snapshotsTaken = new HashSet<>();
+  private final Set<String> snapshotsAttempted = new HashSet<>();
+  private int resets = 0;
+  private int restores = 0;
+  private int clears = 0;
+  private long totalDurationMs = 0;
+  private long maxDurationMs = 0;
+
+  /**
+   * @param packages the packages to reset the data of
+   * @param restoreSnapshots whether to restore snapshots rather than run {@code pm clear}
+   * @param executor runs the shell commands
+   */
+  PackageDataCleaner(List<String> packages, boolean restoreSnapshots, CommandExecutor executor) {
+    this.packages = packages;
+    this.restoreSnapshots = restoreSnapshots;
+    this.executor = executor;
+  }
+
+  /** Resets the data of every package. */
+  synchronized void reset() {
+    long start = SystemClock.elapsedRealtime();
+    for (String packageName : packages) {
+      if (snapshotsTaken.contains(packageName)) {
+        executor.execute("am", Arrays.asList("force-stop", packageName));
+        if (runAs(packageName, RESTORE_SNAPSHOT_SCRIPT)) {
+          restores++;
+          continue;
+        }
+        Log.w(TAG, "Failed to restore the data snapshot of " + packageName + ", clearing it");
+        snapshotsTaken.remove(packageName);
+      }
+      executor.execute("pm", Arrays.asList("clear", packageName));
+      clears++;
+      if (restoreSnapshots && snapshotsAttempted.add(packageName)) {
+        if (runAs(packageName, TAKE_SNAPSHOT_SCRIPT)) {
+          snapshotsTaken.add(packageName);
+        } else {
+          Log.w(TAG, "Failed to take a data snapshot of " + packageName + ", clearing it instead");
+        }
+      }
+    }
+    long durationMs = SystemClock.elapsedRealtime() - start;
+    resets++;
+    totalDurationMs += durationMs;
+    maxDurationMs = Math.max(maxDurationMs, durationMs);
+    Log.i(TAG, String.format("Reset the data of %s in %d ms", packages, durationMs));
+  }
+
+  /** Returns a summary of the resets so far, or null if no reset ran. */
+  synchronized String getSummary() {
+    if (resets == 0) {
+      return null;
+    }
+    return String.format(
+        "Package data reset %d times in %d ms (average %d ms, max %d ms): "
+            + "%d restored from a snapshot, %d cleared",
+        resets, totalDurationMs, totalDurationMs / resets, maxDurationMs, restores, clears);
+  }
+
+  private boolean runAs(String packageName, String script) {
+    String output = executor.execute("run-as", Arrays.asList(packageName, "sh", "-c", script));
+    return output != null && output.contains(SUCCESS);
+  }
+}
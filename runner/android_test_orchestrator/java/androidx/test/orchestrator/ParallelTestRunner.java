@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import android.util.Log;
+import androidx.test.orchestrator.TestRunnable.RunFinishedListener;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableFailure;
+import androidx.test.orchestrator.listeners.OrchestrationRunListener;
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs batches of tests concurrently, each worker running the target instrumentation as a
+ * different Android user, since an instrumentation stops any other one of the same package.
+ *
+ * <p>Test processes do not report to the orchestrator service, their results are read from their
+ * output instead. Results are reported batch by batch in the order of the tests, whatever order
+ * the batches finish in, so that the results of a run do not depend on scheduling.
+ */
+final class ParallelTestRunner {
+
+  private static final String TAG = "ParallelTestRunner";
+
+  /** Runs tests in the target instrumentation. */
+  interface BatchExecutor {
+    /**
+     * Runs {@code tests} as the Android user {@code userId}.
+     *
+     * @param outputFile the file to keep the output of the instrumentation in
+     * @return the output of the instrumentation
+     */
+    String execute(List<String> tests, int userId, String outputFile);
+  }
+
+  private final List<Integer> userIds;
+  private final BatchExecutor executor;
+  private final String outputFileFormat;
+  private final List<OrchestrationRunListener> listeners;
+
+  // Guarded by this.
+  private final List<BufferingListener> batchResults = new ArrayList<>();
+  private int nextBatchToReport = 0;
+
+  /**
+   * @param userIds the Android users to run tests as, one worker each
+   * @param executor runs the tests
+   * @param outputFileFormat the format of the output file of a batch, given its first test
+   * @param listeners the listeners to report results to
+   */
+  ParallelTestRunner(
+      List<Integer> userIds,
+      BatchExecutor executor,
+      String outputFileFormat,
+      List<OrchestrationRunListener> listeners) {
+    this.userIds = userIds;
+    this.executor = executor;
+    this.outputFileFormat = outputFileFormat;
+    this.listeners = listeners;
+  }
+
+  /**
+   * Runs the tests on worker threads, then calls {@code listener} once all results are reported.
+   */
+  void run(List<String> tests, int batchSize, final RunFinishedListener listener) {
+    final List<List<String>> batches = Lists.partition(tests, batchSize);
+    synchronized (this) {
+      for (int i = 0; i < batches.size(); i++) {
+        batchResults.add(null);
+      }
+    }
+    if (batches.isEmpty()) {
+      listener.runFinished();
+      return;
+    }
+
+    final AtomicInteger nextBatch = new AtomicInteger();
+    final AtomicInteger runningWorkers = new AtomicInteger(userIds.size());
+    for (final int userId : userIds) {
+      Thread worker =
+          new Thread(
+              () -> {
+                for (int i = nextBatch.getAndIncrement();
+                    i < batches.size();
+                    i = nextBatch.getAndIncrement()) {
+                  batchFinished(i, runBatch(batches.get(i), userId));
+                }
+                if (runningWorkers.decrementAndGet() == 0) {
+                  listener.runFinished();
+                }
+              },
+              TAG + "-" + userId);
+      worker.start();
+    }
+  }
+
+  private BufferingListener runBatch(List<String> batch, int userId) {
+    BufferingListener results = new BufferingListener();
+    List<String> remainingTests = batch;
+    while (!remainingTests.isEmpty()) {
+      String outputFile = String.format(outputFileFormat, remainingTests.get(0));
+      String output = executor.execute(remainingTests, userId, outputFile);
+      InstrumentationOutputParser parser = new InstrumentationOutputParser(results);
+      parser.parse(output, outputFile);
+      if (parser.isRunFinished()) {
+        break;
+      }
+
+      // The instrumentation crashed. Run the tests which did not start again, unless no test
+      // started, in which case the first test is blamed so that every attempt makes progress.
+      List<String> retries = new ArrayList<>(remainingTests);
+      if (parser.getStartedTests().isEmpty()) {
+        ParcelableDescription description = new ParcelableDescription(retries.remove(0));
+        results.testStarted(description);
+        results.testFailure(
+            new ParcelableFailure(
+                description,
+                "Test instrumentation process crashed. Check " + outputFile + " for details"));
+        results.testFinished(description);
+      }
+      retries.removeAll(parser.getStartedTests());
+      if (!retries.isEmpty()) {
+        Log.i(
+            TAG,
+            String.format(
+                "Test process of user %d crashed, running %d tests again",
+                userId, retries.size()));
+      }
+      remainingTests = retries;
+    }
+    return results;
+  }
+
+  /** Reports the results of every batch finished so far which follows reported batches. */
+  private synchronized void batchFinished(int index, BufferingListener results) {
+    batchResults.set(index, results);
+    while (nextBatchToReport < batchResults.size()
+        && batchResults.get(nextBatchToReport) != null) {
+      for (OrchestrationRunListener listener : listeners) {
+        batchResults.get(nextBatchToReport).replay(listener);
+      }
+      nextBatchToReport++;
+    }
+  }
+
+  /** Records test events, to report them later. */
+  private static class BufferingListener extends OrchestrationRunListener {
+
+    private interface Event {
+      void replay(OrchestrationRunListener listener);
+    }
+
+    private final List<Event> events = new ArrayList<>();
+
+    void replay(OrchestrationRunListener listener) {
+      for (Event event : events) {
+        event.replay(listener);
+      }
+    }
+
+    @Override
+    public void testStarted(ParcelableDescription description) {
+      events.add(listener -> listener.testStarted(description));
+    }
+
+    @Override
+    public void testFinished(ParcelableDescription description) {
+      events.add(listener -> listener.testFinished(description));
+    }
+
+    @Override
+    public void testFailure(ParcelableFailure failure) {
+      events.add(listener -> listener.testFailure(failure));
+    }
+
+    @Override
+    public void testAssumptionFailure(ParcelableFailure failure) {
+      events.add(listener -> listener.testAssumptionFailure(failure));
+    }
+
+    @Override
+    public void testIgnored(ParcelableDescription description) {
+      events.add(listener -> listener.testIgnored(description));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableResult;
+import androidx.test.orchestrator.listeners.OrchestrationRunListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the tests of an orchestrated run into batches, each run by a single instrumentation.
+ *
+ * <p>Listens to the tests of the current batch to find out which of them ran. If the
+ * instrumentation crashes, the tests of the batch which did not start yet are run again in the
+ * next batch. The test which was running when the instrumentation crashed, or the first test of
+ * the batch if none started, is reported as failed by {@link
+ * androidx.test.orchestrator.listeners.OrchestrationListenerManager} and is not run again.
+ */
+final class TestBatches extends OrchestrationRunListener {
+
+  private final int batchSize;
+  private final Deque<String> pendingTests;
+  private List<String> currentBatch = Collections.emptyList();
+  private final Set<String> startedTests = new HashSet<>();
+  private boolean batchRunFinished = false;
+
+  TestBatches(List<String> tests, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+    }
+    this.batchSize = batchSize;
+    this.pendingTests = new ArrayDeque<>(tests);
+  }
+
+  /** Removes tests run otherwise from the tests to run. */
+  synchronized void skip(Collection<String> tests) {
+    pendingTests.removeAll(tests);
+  }
+
+  synchronized boolean hasNext() {
+    return !pendingTests.isEmpty();
+  }
+
+  /** Returns the tests to run in the next instrumentation. */
+  synchronized List<String> next() {
+    List<String> batch = new ArrayList<>(batchSize);
+    while (batch.size() < batchSize && !pendingTests.isEmpty()) {
+      batch.add(pendingTests.poll());
+    }
+    currentBatch = batch;
+    startedTests.clear();
+    batchRunFinished = false;
+    return batch;
+  }
+
+  /**
+   * To be called when the instrumentation running the current batch terminates.
+   *
+   * @return the number of tests of the batch to run again because the instrumentation crashed
+   */
+  synchronized int batchFinished() {
+    List<String> batch = currentBatch;
+    currentBatch = Collections.emptyList();
+    if (batchRunFinished || batch.isEmpty()) {
+      return 0;
+    }
+    // The target instrumentation may run the tests in another order than given. If no test
+    // started, the first test is blamed for the crash and must not run again so that every batch
+    // makes progress.
+    List<String> retries =
+        new ArrayList<>(startedTests.isEmpty() ? batch.subList(1, batch.size()) : batch);
+    retries.removeAll(startedTests);
+    for (int i = retries.size() - 1; i >= 0; i--) {
+      pendingTests.addFirst(retries.get(i));
+    }
+    return retries.size();
+  }
+
+  @Override
+  public synchronized void testStarted(ParcelableDescription description) {
+    startedTests.add(getTestName(description));
+  }
+
+  @Override
+  public synchronized void testIgnored(ParcelableDescription description) {
+    startedTests.add(getTestName(description));
+  }
+
+  @Override
+  public synchronized void testRunFinished(ParcelableResult result) {
+    batchRunFinished = true;
+  }
+
+  /** Returns the name of a test, as collected by {@link CallbackLogic}. */
+  private static String getTestName(ParcelableDescription description) {
+    String methodName = description.getMethodName();
+    if (methodName == null || methodName.isEmpty()) {
+      return description.getClassName();
+    }
+    return description.getClassName() + "#" + methodName;
+  }
+}
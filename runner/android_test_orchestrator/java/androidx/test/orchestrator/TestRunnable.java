@@ -18,11 +18,16 @@ package androidx.test.orchestrator;
 import static androidx.test.orchestrator.OrchestratorConstants.AJUR_CLASS_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.AJUR_LIST_TESTS_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.ISOLATED_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.ORCHESTRATOR_SERVICE_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.PARALLEL_SAFE_ANNOTATION_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.PARALLEL_USERS_ARGUMENT;
 import static androidx.test.orchestrator.OrchestratorConstants.TARGET_INSTRUMENTATION_ARGUMENT;
+import static androidx.test.orchestrator.OrchestratorConstants.TEST_BATCH_SIZE_ARGUMENT;
 
 import android.content.Context;
 import android.os.Bundle;
 import android.os.RemoteException;
+import android.text.TextUtils;
 import android.util.Log;
 import androidx.annotation.VisibleForTesting;
 import androidx.test.services.shellexecutor.ClientNotConnected;
@@ -46,6 +51,7 @@ public class TestRunnable implements Runnable {
   private final boolean collectTests;
   private final Context context;
   private final String secret;
+  private final Integer userId;
 
   /**
    * Constructs a TestRunnable executes all tests in arguments.
@@ -86,6 +92,60 @@ public class TestRunnable implements Runnable {
     return new TestRunnable(context, secret, arguments, outputStream, listener, test, false);
   }
 
+  /**
+   * Constructs a TestRunnable which will run a batch of tests in a single instrumentation.
+   *
+   * @param context A context
+   * @param secret A string representing the speakeasy binder key
+   * @param arguments contains arguments to be passed to the target instrumentation
+   * @param outputStream the stream to write the results of the test process
+   * @param listener a callback listener to know when the run has completed
+   * @param tests contains the test#method to run. Will override whatever is specified in the
+   *     bundle.
+   */
+  public static TestRunnable testBatchRunnable(
+      Context context,
+      String secret,
+      Bundle arguments,
+      OutputStream outputStream,
+      RunFinishedListener listener,
+      List<String> tests) {
+    return new TestRunnable(
+        context, secret, arguments, outputStream, listener, TextUtils.join(",", tests), false);
+  }
+
+  /**
+   * Constructs a TestRunnable which will run a batch of tests as another Android user. The tests do
+   * not report to the orchestrator service, their results are only written to the output stream.
+   *
+   * @param context A context
+   * @param secret A string representing the speakeasy binder key
+   * @param arguments contains arguments to be passed to the target instrumentation
+   * @param outputStream the stream to write the results of the test process
+   * @param listener a callback listener to know when the run has completed
+   * @param tests contains the test#method to run. Will override whatever is specified in the
+   *     bundle.
+   * @param userId the Android user to run the target instrumentation as
+   */
+  public static TestRunnable parallelTestRunnable(
+      Context context,
+      String secret,
+      Bundle arguments,
+      OutputStream outputStream,
+      RunFinishedListener listener,
+      List<String> tests,
+      int userId) {
+    return new TestRunnable(
+        context,
+        secret,
+        arguments,
+        outputStream,
+        listener,
+        TextUtils.join(",", tests),
+        false,
+        userId);
+  }
+
   /**
    * Constructs a TestRunnable which will ask the instrumentation to list out its tests.
    *
@@ -113,6 +173,18 @@ public class TestRunnable implements Runnable {
       RunFinishedListener listener,
       String test,
       boolean collectTests) {
+    this(context, secret, arguments, outputStream, listener, test, collectTests, null);
+  }
+
+  private TestRunnable(
+      Context context,
+      String secret,
+      Bundle arguments,
+      OutputStream outputStream,
+      RunFinishedListener listener,
+      String test,
+      boolean collectTests,
+      Integer userId) {
     this.context = context;
     this.secret = secret;
     this.arguments = new Bundle(arguments);
@@ -120,6 +192,7 @@ public class TestRunnable implements Runnable {
     this.listener = listener;
     this.test = test;
     this.collectTests = collectTests;
+    this.userId = userId;
   }
 
   /** Called at the end of a test run. */
@@ -164,6 +237,13 @@ public class TestRunnable implements Runnable {
     // Filter out the only argument intended specifically for Listener
     targetArgs.remove(TARGET_INSTRUMENTATION_ARGUMENT);
     targetArgs.remove(ISOLATED_ARGUMENT);
+    targetArgs.remove(TEST_BATCH_SIZE_ARGUMENT);
+    targetArgs.remove(PARALLEL_USERS_ARGUMENT);
+    targetArgs.remove(PARALLEL_SAFE_ANNOTATION_ARGUMENT);
+    if (userId != null) {
+      // The orchestrator service cannot be reached from other users.
+      targetArgs.remove(ORCHESTRATOR_SERVICE_ARGUMENT);
+    }
 
     if (collectTests) {
       targetArgs.putString(AJUR_LIST_TESTS_ARGUMENT, "true");
@@ -189,6 +269,10 @@ public class TestRunnable implements Runnable {
     params.add("instrument");
     params.add("-w");
     params.add("-r");
+    if (userId != null) {
+      params.add("--user");
+      params.add(String.valueOf(userId));
+    }
 
     for (String key : arguments.keySet()) {
       params.add("-e");
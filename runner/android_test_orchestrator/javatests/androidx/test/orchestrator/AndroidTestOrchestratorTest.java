@@ -16,8 +16,11 @@
 package androidx.test.orchestrator;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
+import android.os.Bundle;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -44,4 +47,34 @@ public class AndroidTestOrchestratorTest {
     assertThat(AndroidTestOrchestrator.isSingleMethodTest(null), is(false));
     assertThat(AndroidTestOrchestrator.isSingleMethodTest(""), is(false));
   }
+
+  @Test
+  public void testGetTestBatchSize() {
+    Bundle arguments = new Bundle();
+    assertThat(AndroidTestOrchestrator.getTestBatchSize(arguments), is(1));
+    arguments.putString("testBatchSize", "20");
+    assertThat(AndroidTestOrchestrator.getTestBatchSize(arguments), is(20));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetTestBatchSize_invalid() {
+    Bundle arguments = new Bundle();
+    arguments.putString("testBatchSize", "0");
+    AndroidTestOrchestrator.getTestBatchSize(arguments);
+  }
+
+  @Test
+  public void testGetParallelUserIds() {
+    Bundle arguments = new Bundle();
+    assertThat(AndroidTestOrchestrator.getParallelUserIds(arguments), is(nullValue()));
+    arguments.putString("parallelUsers", "10, 11");
+    assertThat(AndroidTestOrchestrator.getParallelUserIds(arguments), contains(10, 11));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetParallelUserIds_invalid() {
+    Bundle arguments = new Bundle();
+    arguments.putString("parallelUsers", "10,user");
+    AndroidTestOrchestrator.getParallelUserIds(arguments);
+  }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableFailure;
+import androidx.test.orchestrator.listeners.OrchestrationRunListener;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link InstrumentationOutputParser}. */
+@RunWith(AndroidJUnit4.class)
+public class InstrumentationOutputParserTest {
+
+  private static final String PASSING_TEST =
+      "INSTRUMENTATION_STATUS: class=a.A\n"
+          + "INSTRUMENTATION_STATUS: current=1\n"
+          + "INSTRUMENTATION_STATUS: id=AndroidJUnitRunner\n"
+          + "INSTRUMENTATION_STATUS: numtests=3\n"
+          + "INSTRUMENTATION_STATUS: stream=\n"
+          + "a.A:\n"
+          + "INSTRUMENTATION_STATUS: test=one\n"
+          + "INSTRUMENTATION_STATUS_CODE: 1\n"
+          + "INSTRUMENTATION_STATUS: class=a.A\n"
+          + "INSTRUMENTATION_STATUS: current=1\n"
+          + "INSTRUMENTATION_STATUS: stream=.\n"
+          + "INSTRUMENTATION_STATUS: test=one\n"
+          + "INSTRUMENTATION_STATUS_CODE: 0\n";
+
+  private static final String FAILING_TEST =
+      "INSTRUMENTATION_STATUS: class=a.A\n"
+          + "INSTRUMENTATION_STATUS: test=two\n"
+          + "INSTRUMENTATION_STATUS_CODE: 1\n"
+          + "INSTRUMENTATION_STATUS: class=a.A\n"
+          + "INSTRUMENTATION_STATUS: stack=java.lang.AssertionError: boom\n"
+          + "\tat a.A.two(A.java:12)\n"
+          + "INSTRUMENTATION_STATUS: test=two\n"
+          + "INSTRUMENTATION_STATUS_CODE: -2\n";
+
+  private static final String IGNORED_TEST =
+      "INSTRUMENTATION_STATUS: class=a.A\n"
+          + "INSTRUMENTATION_STATUS: test=three\n"
+          + "INSTRUMENTATION_STATUS_CODE: 1\n"
+          + "INSTRUMENTATION_STATUS: class=a.A\n"
+          + "INSTRUMENTATION_STATUS: test=three\n"
+          + "INSTRUMENTATION_STATUS_CODE: -3\n";
+
+  private static final String RUN_FINISHED =
+      "INSTRUMENTATION_RESULT: stream=\n"
+          + "Time: 1\n"
+          + "\n"
+          + "OK (3 tests)\n"
+          + "INSTRUMENTATION_CODE: -1\n";
+
+  private static class RecordingListener extends OrchestrationRunListener {
+    final List<String> events = new ArrayList<>();
+
+    @Override
+    public void testStarted(ParcelableDescription description) {
+      events.add("started " + description.getMethodName());
+    }
+
+    @Override
+    public void testFinished(ParcelableDescription description) {
+      events.add("finished " + description.getMethodName());
+    }
+
+    @Override
+    public void testFailure(ParcelableFailure failure) {
+      events.add("failure " + failure.getDescription().getMethodName() + ": " + failure.getTrace());
+    }
+
+    @Override
+    public void testIgnored(ParcelableDescription description) {
+      events.add("ignored " + description.getMethodName());
+    }
+  }
+
+  private final RecordingListener listener = new RecordingListener();
+  private final InstrumentationOutputParser parser = new InstrumentationOutputParser(listener);
+
+  @Test
+  public void parse_reportsTests() {
+    parser.parse(PASSING_TEST + FAILING_TEST + IGNORED_TEST + RUN_FINISHED, "a.A#one.txt");
+
+    assertThat(
+        listener.events,
+        contains(
+            "started one",
+            "finished one",
+            "started two",
+            "failure two: java.lang.AssertionError: boom\n\tat a.A.two(A.java:12)\n",
+            "finished two",
+            "ignored three"));
+    assertThat(parser.getStartedTests(), containsInAnyOrder("a.A#one", "a.A#two", "a.A#three"));
+    assertThat(parser.isRunFinished(), is(true));
+  }
+
+  @Test
+  public void parse_processCrash_failsRunningTest() {
+    parser.parse(
+        PASSING_TEST
+            + "INSTRUMENTATION_STATUS: class=a.A\n"
+            + "INSTRUMENTATION_STATUS: test=two\n"
+            + "INSTRUMENTATION_STATUS_CODE: 1\n"
+            + "INSTRUMENTATION_RESULT: shortMsg=Process crashed.\n"
+            + "INSTRUMENTATION_CODE: 0\n",
+        "a.A#one.txt");
+
+    assertThat(
+        listener.events,
+        contains(
+            "started one",
+            "finished one",
+            "started two",
+            "failure two: Test instrumentation process crashed. Check a.A#one.txt for details\n",
+            "finished two"));
+    assertThat(parser.getStartedTests(), containsInAnyOrder("a.A#one", "a.A#two"));
+    assertThat(parser.isRunFinished(), is(false));
+  }
+}
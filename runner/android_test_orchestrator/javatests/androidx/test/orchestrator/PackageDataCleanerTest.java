@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PackageDataCleaner}. */
+@RunWith(AndroidJUnit4.class)
+public class PackageDataCleanerTest {
+
+  private final List<String> commands = new ArrayList<>();
+  private boolean runAsSucceeds = true;
+
+  private final PackageDataCleaner.CommandExecutor executor =
+      (command, params) -> {
+        commands.add(command + " " + params.get(0));
+        return command.equals("run-as") && runAsSucceeds ? "ORCHESTRATOR_SNAPSHOT_OK\n" : "";
+      };
+
+  @Test
+  public void reset_clearsPackage() {
+    PackageDataCleaner cleaner =
+        new PackageDataCleaner(Collections.singletonList("a.b"), false, executor);
+    assertThat(cleaner.getSummary(), is(nullValue()));
+
+    cleaner.reset();
+    cleaner.reset();
+
+    assertThat(commands, contains("pm a.b", "pm a.b"));
+    assertThat(cleaner.getSummary(), containsString("reset 2 times"));
+    assertThat(cleaner.getSummary(), containsString("0 restored from a snapshot, 2 cleared"));
+  }
+
+  @Test
+  public void reset_restoresSnapshot() {
+    PackageDataCleaner cleaner =
+        new PackageDataCleaner(Collections.singletonList("a.b"), true, executor);
+
+    cleaner.reset();
+    cleaner.reset();
+    cleaner.reset();
+
+    assertThat(
+        commands,
+        contains(
+            "pm a.b",
+            "run-as a.b",
+            "am a.b",
+            "run-as a.b",
+            "am a.b",
+            "run-as a.b"));
+    assertThat(cleaner.getSummary(), containsString("2 restored from a snapshot, 1 cleared"));
+  }
+
+  @Test
+  public void reset_snapshotFails_clearsPackage() {
+    runAsSucceeds = false;
+    PackageDataCleaner cleaner =
+        new PackageDataCleaner(Collections.singletonList("a.b"), true, executor);
+
+    cleaner.reset();
+    cleaner.reset();
+
+    assertThat(commands, contains("pm a.b", "run-as a.b", "pm a.b"));
+  }
+
+  @Test
+  public void reset_restoreFails_clearsPackage() {
+    PackageDataCleaner cleaner =
+        new PackageDataCleaner(Collections.singletonList("a.b"), true, executor);
+    cleaner.reset();
+    runAsSucceeds = false;
+
+    cleaner.reset();
+    cleaner.reset();
+
+    assertThat(
+        commands,
+        contains("pm a.b", "run-as a.b", "am a.b", "run-as a.b", "pm a.b", "pm a.b"));
+  }
+}
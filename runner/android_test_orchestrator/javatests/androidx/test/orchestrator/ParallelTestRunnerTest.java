@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableFailure;
+import androidx.test.orchestrator.listeners.OrchestrationRunListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelTestRunner}. */
+@RunWith(AndroidJUnit4.class)
+public class ParallelTestRunnerTest {
+
+  private static final List<String> TESTS =
+      Arrays.asList("a.A#one", "a.A#two", "a.A#three", "a.A#four", "a.A#five");
+
+  private static class RecordingListener extends OrchestrationRunListener {
+    final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void testFinished(ParcelableDescription description) {
+      events.add(description.getMethodName());
+    }
+
+    @Override
+    public void testFailure(ParcelableFailure failure) {
+      events.add("failure " + failure.getDescription().getMethodName());
+    }
+  }
+
+  private final RecordingListener listener = new RecordingListener();
+  private final List<String> executions = Collections.synchronizedList(new ArrayList<>());
+
+  private static String passingOutput(List<String> tests) {
+    StringBuilder output = new StringBuilder();
+    for (String test : tests) {
+      output.append(status(test, 1)).append(status(test, 0));
+    }
+    return output.append("INSTRUMENTATION_CODE: -1\n").toString();
+  }
+
+  private static String status(String test, int code) {
+    String[] classAndMethod = test.split("#", -1);
+    return "INSTRUMENTATION_STATUS: class="
+        + classAndMethod[0]
+        + "\nINSTRUMENTATION_STATUS: test="
+        + classAndMethod[1]
+        + "\nINSTRUMENTATION_STATUS_CODE: "
+        + code
+        + "\n";
+  }
+
+  private void run(ParallelTestRunner.BatchExecutor executor, int batchSize) throws Exception {
+    CountDownLatch finished = new CountDownLatch(1);
+    new ParallelTestRunner(
+            Arrays.asList(10, 11, 12), executor, "%s.txt", Collections.singletonList(listener))
+        .run(TESTS, batchSize, finished::countDown);
+    assertThat(finished.await(10, TimeUnit.SECONDS), is(true));
+  }
+
+  @Test
+  public void run_reportsResultsInTestOrder() throws Exception {
+    run(
+        (tests, userId, outputFile) -> {
+          executions.add(tests + " as " + userId);
+          if (tests.contains("a.A#one")) {
+            // The first batch finishes last.
+            try {
+              Thread.sleep(200);
+            } catch (InterruptedException e) {
+              throw new AssertionError(e);
+            }
+          }
+          return passingOutput(tests);
+        },
+        2);
+
+    assertThat(listener.events, contains("one", "two", "three", "four", "five"));
+    assertThat(executions.size(), is(3));
+  }
+
+  @Test
+  public void run_afterCrash_runsTestsNotStartedAgain() throws Exception {
+    run(
+        (tests, userId, outputFile) -> {
+          executions.add(String.valueOf(tests));
+          if (tests.get(0).equals("a.A#one")) {
+            // Crashes while running the second test.
+            return status("a.A#one", 1)
+                + status("a.A#one", 0)
+                + status("a.A#two", 1)
+                + "INSTRUMENTATION_CODE: 0\n";
+          }
+          return passingOutput(tests);
+        },
+        5);
+
+    assertThat(
+        listener.events, contains("one", "failure two", "two", "three", "four", "five"));
+    assertThat(
+        executions,
+        contains(
+            "[a.A#one, a.A#two, a.A#three, a.A#four, a.A#five]",
+            "[a.A#three, a.A#four, a.A#five]"));
+  }
+
+  @Test
+  public void run_crashBeforeAnyTest_blamesFirstTest() throws Exception {
+    run(
+        (tests, userId, outputFile) -> {
+          executions.add(String.valueOf(tests));
+          return tests.get(0).equals("a.A#one") ? "" : passingOutput(tests);
+        },
+        5);
+
+    assertThat(
+        listener.events, contains("failure one", "one", "two", "three", "four", "five"));
+    assertThat(executions.size(), is(2));
+  }
+}
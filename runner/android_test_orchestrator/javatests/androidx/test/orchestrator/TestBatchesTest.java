@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.orchestrator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.orchestrator.junit.ParcelableDescription;
+import androidx.test.orchestrator.junit.ParcelableResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link TestBatches}. */
+@RunWith(AndroidJUnit4.class)
+public class TestBatchesTest {
+
+  private final TestBatches batches =
+      new TestBatches(Arrays.asList("a.A#one", "a.A#two", "a.A#three", "b.B"), 3);
+
+  @Test
+  public void next_splitsTestsInBatches() {
+    assertThat(batches.next(), contains("a.A#one", "a.A#two", "a.A#three"));
+    finishRun("a.A#one", "a.A#two", "a.A#three");
+    assertThat(batches.batchFinished(), is(0));
+
+    assertThat(batches.hasNext(), is(true));
+    assertThat(batches.next(), contains("b.B"));
+    finishRun("b.B");
+    assertThat(batches.batchFinished(), is(0));
+    assertThat(batches.hasNext(), is(false));
+  }
+
+  @Test
+  public void batchFinished_afterCrash_runsTestsNotStartedAgain() {
+    batches.next();
+    batches.testStarted(new ParcelableDescription("a.A#one"));
+    batches.testStarted(new ParcelableDescription("a.A#two"));
+
+    assertThat(batches.batchFinished(), is(1));
+    assertThat(batches.next(), contains("a.A#three", "b.B"));
+  }
+
+  @Test
+  public void batchFinished_afterCrashBeforeAnyTest_skipsFirstTest() {
+    batches.next();
+
+    assertThat(batches.batchFinished(), is(2));
+    assertThat(batches.next(), contains("a.A#two", "a.A#three", "b.B"));
+  }
+
+  @Test
+  public void batchFinished_afterCrash_runsFirstTestAgainIfNotStarted() {
+    batches.next();
+    batches.testStarted(new ParcelableDescription("a.A#two"));
+
+    assertThat(batches.batchFinished(), is(2));
+    assertThat(batches.next(), contains("a.A#one", "a.A#three", "b.B"));
+  }
+
+  @Test
+  public void batchFinished_ignoredTestsAreNotRunAgain() {
+    batches.next();
+    batches.testStarted(new ParcelableDescription("a.A#one"));
+    batches.testIgnored(new ParcelableDescription("a.A#two"));
+
+    assertThat(batches.batchFinished(), is(1));
+    assertThat(batches.next(), contains("a.A#three", "b.B"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void create_invalidBatchSize() {
+    new TestBatches(Arrays.asList("a.A#one"), 0);
+  }
+
+  private void finishRun(String... tests) {
+    for (String test : tests) {
+      batches.testStarted(new ParcelableDescription(test));
+    }
+    batches.testRunFinished(new ParcelableResult(new ArrayList<>()));
+  }
+}
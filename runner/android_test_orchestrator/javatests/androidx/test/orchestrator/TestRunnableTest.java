@@ -155,6 +155,18 @@ public class TestRunnableTest {
         runnable.params, "-e arg1 val1", "-e class com.google.android.example.MyClass#methodName");
   }
 
+  @Test
+  public void testRun_removesTestBatchSize_givenBatchOfTests() {
+    FakeListener listener = new FakeListener();
+    arguments.putString("testBatchSize", "2");
+    FakeTestRunnable runnable =
+        new FakeTestRunnable(
+            null, "secret", arguments, outputStream, listener, "a.A#one,a.A#two", false);
+    runnable.run();
+    assertContainsRunnerArgs(runnable.params, "-e arg1 val1", "-e class a.A#one,a.A#two");
+    assertThat(Joiner.on(" ").join(runnable.params).contains("testBatchSize"), is(false));
+  }
+
   @Test
   public void testRun_buildsParams_givenNullClassNameAndMethodForTestCollection() {
     FakeListener listener = new FakeListener();
@@ -63,6 +63,11 @@ class AndroidXTracer implements Tracer {
     return this;
   }
 
+  /** Returns whether the sections of this tracer are currently recorded. */
+  static boolean isEnabled() {
+    return Trace.isEnabled();
+  }
+
   @NonNull
   @Override
   public Span beginSpan(@NonNull String name) {
@@ -96,6 +96,22 @@ public final class Tracing {
     Log.i(TAG, "Tracer removed: " + (tracer == null ? null : tracer.getClass()));
   }
 
+  /**
+   * Returns whether spans are recorded by any registered tracer, so that callers can skip building
+   * costly span names otherwise. The {@link AndroidXTracer} only counts while Android tracing is
+   * enabled.
+   */
+  public boolean isTracingEnabled() {
+    synchronized (tracers) {
+      for (Tracer tracer : tracers) {
+        if (!(tracer instanceof AndroidXTracer) || AndroidXTracer.isEnabled()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
    * Returns a new Span as a managed resource in a try{} block. {@link Span#close()} is
    * automatically called when the resource is released.
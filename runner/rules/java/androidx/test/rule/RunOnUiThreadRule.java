@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.rule;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getArguments;
+
+import android.util.Log;
+import androidx.test.internal.runner.junit4.statement.UiThreadStatement;
+import org.junit.Test;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * This rule runs each test, together with its <code>@Before</code> and <code>@After</code> methods
+ * and the rules applied after it, in a single dispatch to the application's main thread (or UI
+ * thread).
+ *
+ * <p>Unlike annotating every method with {@link androidx.test.annotation.UiThreadTest}, which may
+ * need a round trip to the UI thread per method, this costs a single round trip per test. All the
+ * methods run on the UI thread, whether they are annotated or not.
+ *
+ * <p>Tests with a timeout, set by {@link Test#timeout()} or by the runner, are run in a separate
+ * thread to enforce it and thus cannot be run by this rule, which leaves them unchanged.
+ */
+public class RunOnUiThreadRule implements TestRule {
+  private static final String TAG = "RunOnUiThreadRule";
+
+  // See androidx.test.internal.runner.RunnerArgs.ARGUMENT_TIMEOUT
+  private static final String ARGUMENT_TIMEOUT = "timeout_msec";
+
+  @Override
+  public Statement apply(final Statement base, Description description) {
+    if (hasTimeout(description)) {
+      Log.w(TAG, description.getDisplayName() + " has a timeout, not running it on the UI thread");
+      return base;
+    }
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        UiThreadStatement.evaluateOnUiThread(base);
+      }
+    };
+  }
+
+  private static boolean hasTimeout(Description description) {
+    Test test = description.getAnnotation(Test.class);
+    if (test != null && test.timeout() > 0) {
+      return true;
+    }
+    String runnerTimeout = getArguments().getString(ARGUMENT_TIMEOUT);
+    try {
+      return runnerTimeout != null && Long.parseLong(runnerTimeout) > 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+}
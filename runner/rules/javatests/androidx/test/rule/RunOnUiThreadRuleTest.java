@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.rule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.runner.JUnitCore.runClasses;
+
+import android.os.Looper;
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RunOnUiThreadRuleTest {
+
+  private static final List<String> calls = new ArrayList<>();
+
+  private static void verifyRunsOnUiThread() {
+    assertTrue("Not running on the UI Thread", Looper.myLooper() == Looper.getMainLooper());
+  }
+
+  private static void verifyRunsNotOnUiThread() {
+    assertFalse("Running on the UI Thread", Looper.myLooper() == Looper.getMainLooper());
+  }
+
+  public static class RunsFixturesOnUiThread {
+    @Rule public RunOnUiThreadRule runOnUiThreadRule = new RunOnUiThreadRule();
+
+    @Before
+    public void before() {
+      verifyRunsOnUiThread();
+      calls.add("before");
+    }
+
+    @Test
+    public void test() {
+      verifyRunsOnUiThread();
+      calls.add("test");
+    }
+
+    @After
+    public void after() {
+      verifyRunsOnUiThread();
+      calls.add("after");
+    }
+  }
+
+  @Test
+  public void runsTestAndFixturesOnUiThread() {
+    calls.clear();
+    Result result = runClasses(RunsFixturesOnUiThread.class);
+    assertEquals(0, result.getFailureCount());
+    assertEquals(Arrays.asList("before", "test", "after"), calls);
+  }
+
+  @RunWith(AndroidJUnit4.class)
+  public static class RunsAnnotatedFixturesOnUiThread {
+    @Rule public RunOnUiThreadRule runOnUiThreadRule = new RunOnUiThreadRule();
+
+    @Before
+    public void before() {
+      verifyRunsOnUiThread();
+      calls.add("before");
+    }
+
+    @Before
+    @UiThreadTest
+    public void uiThreadBefore() {
+      verifyRunsOnUiThread();
+      calls.add("uiThreadBefore");
+    }
+
+    @Test
+    @UiThreadTest
+    public void test() {
+      verifyRunsOnUiThread();
+      calls.add("test");
+    }
+
+    @After
+    @UiThreadTest
+    public void uiThreadAfter() {
+      verifyRunsOnUiThread();
+      calls.add("uiThreadAfter");
+    }
+  }
+
+  @Test
+  public void runsUiThreadTestsAndFixturesOnUiThread() {
+    calls.clear();
+    Result result = runClasses(RunsAnnotatedFixturesOnUiThread.class);
+    assertEquals(0, result.getFailureCount());
+    assertEquals(4, calls.size());
+    assertTrue(
+        calls.containsAll(Arrays.asList("before", "uiThreadBefore", "test", "uiThreadAfter")));
+  }
+
+  public static class WithTimeout {
+    @Rule public RunOnUiThreadRule runOnUiThreadRule = new RunOnUiThreadRule();
+
+    @Test(timeout = 1000)
+    public void test() {
+      verifyRunsNotOnUiThread();
+    }
+  }
+
+  @Test
+  public void leavesTestsWithTimeoutUnchanged() {
+    Result result = runClasses(WithTimeout.class);
+    assertEquals(0, result.getFailureCount());
+  }
+
+  @RunWith(AndroidJUnit4.class)
+  public static class FailingUiThreadFixtures {
+    @Before
+    @UiThreadTest
+    public void before() {
+      calls.add("before");
+      throw new IllegalStateException("before failed");
+    }
+
+    @Test
+    @UiThreadTest
+    public void test() {
+      calls.add("test");
+    }
+
+    @After
+    @UiThreadTest
+    public void firstAfter() {
+      calls.add("after");
+      throw new IllegalStateException("after failed");
+    }
+
+    @After
+    @UiThreadTest
+    public void secondAfter() {
+      calls.add("after");
+    }
+  }
+
+  @Test
+  public void batchedUiThreadFixtures_reportFailures() {
+    calls.clear();
+    Result result = runClasses(FailingUiThreadFixtures.class);
+    assertEquals(2, result.getFailureCount());
+    assertEquals(Arrays.asList("before", "after", "after"), calls);
+  }
+}
@@ -16,6 +16,7 @@
 
 package androidx.test.services.shellexecutor;
 
+import android.os.Bundle;
 import android.text.TextUtils;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -24,7 +25,14 @@ import java.util.List;
 import java.util.Map;
 
 /** Describes a command to be run by ShellCommandExecutor */
-class ShellCommand {
+public class ShellCommand {
+
+  private static final String KEY_COMMAND = "command";
+  private static final String KEY_PARAMETERS = "parameters";
+  private static final String KEY_ENV_NAMES = "envNames";
+  private static final String KEY_ENV_VALUES = "envValues";
+  private static final String KEY_EXECUTE_THROUGH_SHELL = "executeThroughShell";
+  private static final String KEY_TIMEOUT_MS = "timeoutMs";
 
   private final String command;
   private final List<String> parameters;
@@ -34,14 +42,15 @@ class ShellCommand {
 
   /**
    * @param command The command to be executed
-   * @param parameters A list of params to be passed to the command
-   * @param shellEnv A map of environment variables to be set before the command is executed
+   * @param parameters A list of params to be passed to the command, or null for none
+   * @param shellEnv A map of environment variables to be set before the command is executed, or
+   *     null for none
    * @param executeThroughShell If set to {@code true}, the command string will be executed through
    *     the shell with parameters given as additional shell arguments.
    * @param timeoutMs If set to a value > 0, this creates a watcher that kills the subprocess when
    *     it surpasses the timeout.
    */
-  ShellCommand(
+  public ShellCommand(
       String command,
       List<String> parameters,
       Map<String, String> shellEnv,
@@ -53,8 +62,14 @@ class ShellCommand {
     }
 
     this.command = command;
-    this.parameters = Collections.unmodifiableList(new ArrayList<>(parameters));
-    this.shellEnv = Collections.unmodifiableMap(new HashMap<>(shellEnv));
+    this.parameters =
+        parameters == null
+            ? Collections.<String>emptyList()
+            : Collections.unmodifiableList(new ArrayList<>(parameters));
+    this.shellEnv =
+        shellEnv == null
+            ? Collections.<String, String>emptyMap()
+            : Collections.unmodifiableMap(new HashMap<>(shellEnv));
     this.executeThroughShell = executeThroughShell;
     this.timeoutMs = timeoutMs;
   }
@@ -78,4 +93,39 @@ class ShellCommand {
   public long getTimeoutMs() {
     return timeoutMs;
   }
+
+  /** Returns the command as a {@link Bundle}, to send it over binder. */
+  Bundle toBundle() {
+    ArrayList<String> envNames = new ArrayList<>(shellEnv.keySet());
+    ArrayList<String> envValues = new ArrayList<>();
+    for (String name : envNames) {
+      envValues.add(shellEnv.get(name));
+    }
+    Bundle bundle = new Bundle();
+    bundle.putString(KEY_COMMAND, command);
+    bundle.putStringArrayList(KEY_PARAMETERS, new ArrayList<>(parameters));
+    bundle.putStringArrayList(KEY_ENV_NAMES, envNames);
+    bundle.putStringArrayList(KEY_ENV_VALUES, envValues);
+    bundle.putBoolean(KEY_EXECUTE_THROUGH_SHELL, executeThroughShell);
+    bundle.putLong(KEY_TIMEOUT_MS, timeoutMs);
+    return bundle;
+  }
+
+  /** Reads a command written by {@link #toBundle()}. */
+  static ShellCommand fromBundle(Bundle bundle) {
+    Map<String, String> shellEnv = new HashMap<>();
+    List<String> envNames = bundle.getStringArrayList(KEY_ENV_NAMES);
+    List<String> envValues = bundle.getStringArrayList(KEY_ENV_VALUES);
+    if (envNames != null && envValues != null) {
+      for (int i = 0; i < envNames.size() && i < envValues.size(); i++) {
+        shellEnv.put(envNames.get(i), envValues.get(i));
+      }
+    }
+    return new ShellCommand(
+        bundle.getString(KEY_COMMAND),
+        bundle.getStringArrayList(KEY_PARAMETERS),
+        shellEnv,
+        bundle.getBoolean(KEY_EXECUTE_THROUGH_SHELL),
+        bundle.getLong(KEY_TIMEOUT_MS));
+  }
 }
@@ -17,19 +17,28 @@
 package androidx.test.services.shellexecutor;
 
 import android.content.Context;
+import android.os.Bundle;
+import android.os.DeadObjectException;
+import android.os.IBinder;
+import android.os.IBinder.DeathRecipient;
 import android.os.Looper;
 import android.os.ParcelFileDescriptor;
 import android.os.RemoteException;
 import android.text.TextUtils;
 import android.util.Log;
 import androidx.test.services.speakeasy.SpeakEasyProtocol.FindResult;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Client for the ShellCommandExecutor service, to allow an instrumentation to executes a shell
@@ -40,11 +49,17 @@ import java.util.Map;
  * CLASSPATH=$(pm path com.google.android.apps.common.testing.services) app_process /
  * com.google.android.apps.common.testing.services.exec.ShellMain} to start the ShellCommandExecutor
  * service.
+ *
+ * <p>The binder of the service is looked up through SpeakEasy once per secret, then kept until the
+ * service dies. Commands may be executed concurrently from several threads.
  */
 final class ShellCommandClient {
 
   private static final String TAG = "ShellCommandClient";
 
+  // The binders of the services found so far, by secret.
+  private static final ConcurrentMap<String, IBinder> binders = new ConcurrentHashMap<>();
+
   private ShellCommandClient() {
     // Should not be initialized
   }
@@ -61,7 +76,7 @@ final class ShellCommandClient {
    *     shell with parameters given as additional shell arguments.
    * @throws IOException if cannot execute command on executor service.
    */
-  public static synchronized InputStream execOnServer(
+  public static InputStream execOnServer(
       Context context,
       String secret,
       String command,
@@ -70,6 +85,35 @@ final class ShellCommandClient {
       boolean executeThroughShell,
       long timeoutMs)
       throws ClientNotConnected, IOException, RemoteException {
+    return execOnServer(
+        context, secret, command, parameters, shellEnv, executeThroughShell, timeoutMs, false);
+  }
+
+  /**
+   * Execute a command with elevated permissions and return immediately.
+   *
+   * @param context A context
+   * @param secret A string representing the speakeasy binder key
+   * @param command The shell command to be executed.
+   * @param parameters A {@link Map} parameters to be given to the shell command
+   * @param shellEnv A {@link Map} of shell environment variables to be set
+   * @param executeThroughShell If set to true, the command string will be executed through the
+   *     shell with parameters given as additional shell arguments.
+   * @param useSession If set to true, the command is run in a shell session kept by the server for
+   *     the calling process, rather than in a process of its own, unless it sets environment
+   *     variables or has a timeout. Not supported by older versions of the Command server.
+   * @throws IOException if cannot execute command on executor service.
+   */
+  public static InputStream execOnServer(
+      Context context,
+      String secret,
+      String command,
+      List<String> parameters,
+      Map<String, String> shellEnv,
+      boolean executeThroughShell,
+      long timeoutMs,
+      boolean useSession)
+      throws ClientNotConnected, IOException, RemoteException {
 
     if (TextUtils.isEmpty(command)) {
       throw new IllegalArgumentException("Null or empty command");
@@ -88,6 +132,71 @@ final class ShellCommandClient {
       shellEnv = new HashMap<>();
     }
 
+    IBinder binder = getBinder(context, secret);
+    ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+    try {
+      execute(
+          binder,
+          command,
+          parameters,
+          shellEnv,
+          executeThroughShell,
+          pipe[1],
+          timeoutMs,
+          useSession);
+    } catch (DeadObjectException e) {
+      // The service died since it was found, it may have been restarted since.
+      Log.w(TAG, "The binder of the shell command service died, looking it up again", e);
+      binders.remove(secret, binder);
+      execute(
+          getBinder(context, secret),
+          command,
+          parameters,
+          shellEnv,
+          executeThroughShell,
+          pipe[1],
+          timeoutMs,
+          useSession);
+    } finally {
+      // Closes the write pipe client-side. Server-side to be closed by server.
+      pipe[1].close();
+    }
+
+    return new ParcelFileDescriptor.AutoCloseInputStream(pipe[0]);
+  }
+
+  private static void execute(
+      IBinder binder,
+      String command,
+      List<String> parameters,
+      Map<String, String> shellEnv,
+      boolean executeThroughShell,
+      ParcelFileDescriptor pipe,
+      long timeoutMs,
+      boolean useSession)
+      throws RemoteException {
+    Command commandStub = Command.Stub.asInterface(binder);
+    if (useSession && shellEnv.isEmpty() && timeoutMs <= 0L) {
+      // NOTICE: this is not be supported on older versions of the Command server.
+      commandStub.executeInSession(command, parameters, executeThroughShell, pipe);
+    } else if (timeoutMs > 0L) {
+      // Only use timeout version if timeout is greater than 0
+      // NOTICE: this is not be supported on older versions of the Command server.
+      commandStub.executeWithTimeout(
+          command, parameters, shellEnv, executeThroughShell, pipe, timeoutMs);
+    } else {
+      commandStub.execute(command, parameters, shellEnv, executeThroughShell, pipe);
+    }
+  }
+
+  /** Returns the binder of the service published with {@code secret}, found once. */
+  private static IBinder getBinder(Context context, final String secret)
+      throws ClientNotConnected {
+    IBinder binder = binders.get(secret);
+    if (binder != null && binder.isBinderAlive()) {
+      return binder;
+    }
+
     FindResult result;
 
     try {
@@ -104,22 +213,25 @@ final class ShellCommandClient {
           "Search for an androidx.test.services binder was interrupted", e);
     }
 
-    ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+    cacheBinder(secret, result.binder);
+    return result.binder;
+  }
 
-    Command commandStub = Command.Stub.asInterface(result.binder);
-    // Only use timeout version if timeout is greater than 0
-    if (timeoutMs > 0L) {
-      // NOTICE: this is not be supported on older versions of the Command server.
-      commandStub.executeWithTimeout(
-          command, parameters, shellEnv, executeThroughShell, pipe[1], timeoutMs);
-    } else {
-      commandStub.execute(command, parameters, shellEnv, executeThroughShell, pipe[1]);
+  /** Keeps {@code binder} for later commands, until it dies. Visible for testing. */
+  static void cacheBinder(final String secret, final IBinder binder) {
+    try {
+      binder.linkToDeath(
+          new DeathRecipient() {
+            @Override
+            public void binderDied() {
+              binders.remove(secret, binder);
+            }
+          },
+          0);
+      binders.put(secret, binder);
+    } catch (RemoteException e) {
+      // Already dead, the next command looks it up again.
     }
-
-    // Closes the write pipe client-side. Server-side to be closed by server.
-    pipe[1].close();
-
-    return new ParcelFileDescriptor.AutoCloseInputStream(pipe[0]);
   }
 
   /**
@@ -134,7 +246,7 @@ final class ShellCommandClient {
    *     shell with parameters given as additional shell arguments.
    * @throws IOException if cannot execute command on executor service.
    */
-  public static synchronized String execOnServerSync(
+  public static String execOnServerSync(
       Context context,
       String secret,
       String command,
@@ -143,15 +255,154 @@ final class ShellCommandClient {
       boolean executeThroughShell,
       long timeoutMs)
       throws ClientNotConnected, IOException, RemoteException {
+    return execOnServerSync(
+        context, secret, command, parameters, shellEnv, executeThroughShell, timeoutMs, false);
+  }
+
+  /**
+   * Execute a command with elevated permissions and block.
+   *
+   * @param context A context
+   * @param secret A string representing the speakeasy binder key
+   * @param command The shell command to be executed.
+   * @param parameters A {@link Map} parameters to be given to the shell command
+   * @param shellEnv A {@link Map} of shell environment variables to be set
+   * @param executeThroughShell If set to true, the command string will be executed through the
+   *     shell with parameters given as additional shell arguments.
+   * @param useSession If set to true, the command is run in a shell session kept by the server for
+   *     the calling process, as described by {@link #execOnServer(Context, String, String, List,
+   *     Map, boolean, long, boolean)}.
+   * @throws IOException if cannot execute command on executor service.
+   */
+  public static String execOnServerSync(
+      Context context,
+      String secret,
+      String command,
+      List<String> parameters,
+      Map<String, String> shellEnv,
+      boolean executeThroughShell,
+      long timeoutMs,
+      boolean useSession)
+      throws ClientNotConnected, IOException, RemoteException {
     return inputStreamToString(
         execOnServer(
-            context, secret, command, parameters, shellEnv, executeThroughShell, timeoutMs));
+            context,
+            secret,
+            command,
+            parameters,
+            shellEnv,
+            executeThroughShell,
+            timeoutMs,
+            useSession));
+  }
+
+  /**
+   * Execute commands with elevated permissions in a single call to the server and block.
+   *
+   * @param context A context
+   * @param secret A string representing the speakeasy binder key
+   * @param commands The commands to be executed
+   * @param parallel If set to true, the commands are run at the same time, otherwise one after the
+   *     other.
+   * @return the results of the commands, in the order of {@code commands}
+   * @throws IOException if cannot execute commands on executor service.
+   */
+  public static List<ShellCommandResult> execBatchOnServerSync(
+      Context context, String secret, List<ShellCommand> commands, boolean parallel)
+      throws ClientNotConnected, IOException, RemoteException {
+
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      throw new IllegalStateException(
+          "Shell commands are blocking and should not be run from the main thread");
+    }
+
+    List<Bundle> bundles = new ArrayList<>();
+    for (ShellCommand command : commands) {
+      bundles.add(command.toBundle());
+    }
+
+    IBinder binder = getBinder(context, secret);
+    ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+    try {
+      try {
+        // NOTICE: this is not be supported on older versions of the Command server.
+        Command.Stub.asInterface(binder).executeBatch(bundles, parallel, pipe[1]);
+      } catch (DeadObjectException e) {
+        // The service died since it was found, it may have been restarted since.
+        Log.w(TAG, "The binder of the shell command service died, looking it up again", e);
+        binders.remove(secret, binder);
+        Command.Stub.asInterface(getBinder(context, secret))
+            .executeBatch(bundles, parallel, pipe[1]);
+      } finally {
+        // Closes the write pipe client-side. Server-side to be closed by server.
+        pipe[1].close();
+      }
+    } catch (IOException | RemoteException | RuntimeException e) {
+      pipe[0].close();
+      throw e;
+    }
+
+    return readFrames(new ParcelFileDescriptor.AutoCloseInputStream(pipe[0]), commands.size());
+  }
+
+  /**
+   * Reads the frames written by {@link ShellCommandExecutor#executeBatch} until the server closes
+   * the stream.
+   */
+  private static List<ShellCommandResult> readFrames(InputStream inputStream, int count)
+      throws IOException {
+    ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[count];
+    Integer[] exitCodes = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      outputs[i] = new ByteArrayOutputStream();
+    }
+    DataInputStream frames =
+        new DataInputStream(
+            new BufferedInputStream(inputStream, ShellExecSharedConstants.PIPE_BUFFER_SIZE));
+    try {
+      byte[] buffer = new byte[ShellExecSharedConstants.BUFFER_SIZE];
+      while (true) {
+        int index;
+        try {
+          index = frames.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        if (index < 0 || index >= count) {
+          throw new IOException("Unexpected command index " + index);
+        }
+        int length = frames.readInt();
+        if (length == ShellExecSharedConstants.EXIT_FRAME) {
+          exitCodes[index] = frames.readInt();
+          continue;
+        }
+        while (length > 0) {
+          int read = frames.read(buffer, 0, Math.min(length, buffer.length));
+          if (read == -1) {
+            throw new EOFException("Output of command " + index + " is truncated");
+          }
+          outputs[index].write(buffer, 0, read);
+          length -= read;
+        }
+      }
+    } finally {
+      frames.close();
+    }
+
+    List<ShellCommandResult> results = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      if (exitCodes[i] == null) {
+        throw new IOException("The server did not report the end of command " + i);
+      }
+      results.add(new ShellCommandResult(exitCodes[i], outputs[i].toString("UTF-8")));
+    }
+    return results;
   }
 
   private static String inputStreamToString(InputStream inputStream) throws IOException {
     ByteArrayOutputStream result = new ByteArrayOutputStream();
     try {
-      byte[] buffer = new byte[ShellExecSharedConstants.BUFFER_SIZE];
+      byte[] buffer = new byte[ShellExecSharedConstants.PIPE_BUFFER_SIZE];
       int length;
       while ((length = inputStream.read(buffer)) != -1) {
         result.write(buffer, 0, length);
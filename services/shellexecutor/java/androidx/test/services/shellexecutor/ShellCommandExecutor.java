@@ -20,13 +20,20 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import android.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Executor to run shell commands with elevated permissions */
 final class ShellCommandExecutor {
@@ -35,6 +42,9 @@ final class ShellCommandExecutor {
 
   private final ExecutorService executor;
 
+  // The shell sessions of the clients, by process id.
+  private final Map<Integer, ShellSession> sessions = new HashMap<>();
+
   ShellCommandExecutor(ExecutorService executor) {
     if (executor == null) {
       throw new IllegalArgumentException("You must provide an ExecutorService");
@@ -49,7 +59,190 @@ final class ShellCommandExecutor {
   }
 
   public void execute(ShellCommand shellCommand, OutputStream writeStdoutTo) throws IOException {
+    final Process p = startProcess(shellCommand);
+
+    // Using a {@link CountDownLatch} since {@code Process.waitFor(timeout, unit)} isn't supported.
+    CountDownLatch processDone = new CountDownLatch(1);
+    watchTimeout(p, shellCommand.getTimeoutMs(), processDone);
+
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              while (true) {
+                try {
+                  int returnCode = p.waitFor();
+                  debug("Process ended with return code %d", returnCode);
+                  return;
+                } catch (InterruptedException e) {
+                  Log.e(TAG, "Process interrupted", e);
+                  Thread.currentThread().interrupt();
+                }
+              }
+            } finally {
+              // mark subprocess as finished no matter what.
+              processDone.countDown();
+            }
+          }
+        });
+
+    executor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            checkNotNull(p, "Process is null.");
+            InputStream stdout = p.getInputStream();
+
+            checkNotNull(stdout, "Process stdout is null.");
+            checkNotNull(writeStdoutTo, "Process write-stdout-to is null.");
+
+            try {
+              copy(stdout, writeStdoutTo);
+            } catch (IOException e) {
+              // A broken pipe exception is quite possible here and not cause for alarm.
+              Log.i(TAG, "Writer disconnected, terminating");
+            }
+
+            try {
+              writeStdoutTo.close();
+            } catch (IOException ioe) {
+              Log.w(TAG, "Close threw an exception", ioe);
+            }
+          }
+        });
+  }
+
+  /**
+   * Executes {@code commands}, one after the other or all at once, and writes frames of their
+   * output and exit codes to {@code writeFramesTo}, which is closed once every command ended.
+   *
+   * <p>An output frame is the index of the command, the length of the output and the output. An
+   * exit frame, the last frame of a command, is the index of the command, {@link
+   * ShellExecSharedConstants#EXIT_FRAME} and the exit code, or -1 if the command could not run.
+   */
+  public void executeBatch(
+      final List<ShellCommand> commands, boolean parallel, OutputStream writeFramesTo) {
+    final DataOutputStream frames =
+        new DataOutputStream(
+            new BufferedOutputStream(writeFramesTo, ShellExecSharedConstants.PIPE_BUFFER_SIZE));
+    if (commands.isEmpty()) {
+      closeFrames(frames);
+      return;
+    }
+    if (!parallel) {
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              for (int i = 0; i < commands.size(); i++) {
+                executeFramed(i, commands.get(i), frames);
+              }
+              closeFrames(frames);
+            }
+          });
+      return;
+    }
+    final AtomicInteger running = new AtomicInteger(commands.size());
+    for (int i = 0; i < commands.size(); i++) {
+      final int index = i;
+      executor.execute(
+          new Runnable() {
+            @Override
+            public void run() {
+              executeFramed(index, commands.get(index), frames);
+              if (running.decrementAndGet() == 0) {
+                closeFrames(frames);
+              }
+            }
+          });
+    }
+  }
+
+  private void executeFramed(int index, ShellCommand shellCommand, DataOutputStream frames) {
+    int exitCode = -1;
+    Process p = null;
+    try {
+      p = startProcess(shellCommand);
+      CountDownLatch processDone = new CountDownLatch(1);
+      watchTimeout(p, shellCommand.getTimeoutMs(), processDone);
+      try {
+        copy(p.getInputStream(), new FrameOutputStream(index, frames));
+        while (true) {
+          try {
+            exitCode = p.waitFor();
+            debug("Process %d of the batch ended with return code %d", index, exitCode);
+            break;
+          } catch (InterruptedException e) {
+            Log.e(TAG, "Process interrupted", e);
+            Thread.currentThread().interrupt();
+          }
+        }
+      } finally {
+        processDone.countDown();
+      }
+    } catch (IOException e) {
+      // The writer may have disconnected, or the command could not start.
+      Log.i(TAG, "Command " + index + " of the batch failed", e);
+      if (p != null) {
+        p.destroy();
+      }
+    }
 
+    try {
+      synchronized (frames) {
+        frames.writeInt(index);
+        frames.writeInt(ShellExecSharedConstants.EXIT_FRAME);
+        frames.writeInt(exitCode);
+        frames.flush();
+      }
+    } catch (IOException e) {
+      Log.i(TAG, "Writer disconnected, terminating");
+    }
+  }
+
+  private static void closeFrames(OutputStream frames) {
+    try {
+      frames.close();
+    } catch (IOException ioe) {
+      Log.w(TAG, "Close threw an exception", ioe);
+    }
+  }
+
+  /** Writes the output of a command of a batch as frames, in between those of other commands. */
+  private static final class FrameOutputStream extends OutputStream {
+
+    private final int index;
+    private final DataOutputStream frames;
+
+    FrameOutputStream(int index, DataOutputStream frames) {
+      this.index = index;
+      this.frames = frames;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      synchronized (frames) {
+        frames.writeInt(index);
+        frames.writeInt(len);
+        frames.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (frames) {
+        frames.flush();
+      }
+    }
+  }
+
+  private static Process startProcess(ShellCommand shellCommand) throws IOException {
     List<String> toExecute = new ArrayList<>();
 
     if (shellCommand.executeThroughShell()) {
@@ -76,14 +269,17 @@ final class ShellCommandExecutor {
     }
 
     pb.redirectErrorStream(true);
-    final Process p = pb.start();
+    Process p = pb.start();
     p.getOutputStream().close();
     p.getErrorStream().close();
 
-    // Using a {@link CountDownLatch} since {@code Process.waitFor(timeout, unit)} isn't supported.
-    CountDownLatch processDone = new CountDownLatch(1);
+    return p;
+  }
 
-    if (shellCommand.getTimeoutMs() > 0L) {
+  /** Destroys {@code p} if it is still running after {@code timeoutMs}, if positive. */
+  private void watchTimeout(
+      final Process p, final long timeoutMs, final CountDownLatch processDone) {
+    if (timeoutMs > 0L) {
       // Thread waits for the process timeout and then destroys the executed process.
       executor.execute(
           new Runnable() {
@@ -91,7 +287,7 @@ final class ShellCommandExecutor {
             public void run() {
               try {
                 // keep track of overall timeout in case the thread is interrupted
-                long timeout = MILLISECONDS.toNanos(shellCommand.getTimeoutMs());
+                long timeout = MILLISECONDS.toNanos(timeoutMs);
                 long remainingTimeMs = timeout;
                 long startTime = System.nanoTime();
                 while (processDone.getCount() > 0 && remainingTimeMs > 0) {
@@ -113,63 +309,85 @@ final class ShellCommandExecutor {
             }
           });
     }
+  }
+
+  /**
+   * Copies {@code in} to {@code out}. The buffer starts small for the many commands with a short
+   * output, then grows up to the capacity of a pipe while reads fill it. {@code out} is only
+   * flushed when no more input is available yet, rather than after every write.
+   */
+  static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buf = new byte[ShellExecSharedConstants.BUFFER_SIZE];
+    while (true) {
+      int read = in.read(buf);
+      if (read == -1) {
+        out.flush();
+        return;
+      }
+      out.write(buf, 0, read);
+      if (read == buf.length && buf.length < ShellExecSharedConstants.PIPE_BUFFER_SIZE) {
+        buf = new byte[buf.length * 2];
+      }
+      if (in.available() == 0) {
+        out.flush();
+      }
+    }
+  }
 
+  /**
+   * Executes a command in the shell session of the client process {@code clientPid}, starting the
+   * session if needed. Commands which a session cannot run, and commands sent while the session is
+   * busy with another command, are executed as by {@link #execute(ShellCommand, OutputStream)}.
+   */
+  public void executeInSession(
+      final ShellCommand shellCommand, final int clientPid, final OutputStream writeStdoutTo)
+      throws IOException {
+    if (!ShellSession.canRun(shellCommand)) {
+      execute(shellCommand, writeStdoutTo);
+      return;
+    }
+    final ShellSession session = getSession(clientPid);
+    if (!session.tryReserve()) {
+      // Another command of the client, possibly a long or streaming one, is using the session.
+      execute(shellCommand, writeStdoutTo);
+      return;
+    }
     executor.execute(
         new Runnable() {
           @Override
           public void run() {
             try {
-              while (true) {
-                try {
-                  int returnCode = p.waitFor();
-                  debug("Process ended with return code %d", returnCode);
-                  return;
-                } catch (InterruptedException e) {
-                  Log.e(TAG, "Process interrupted", e);
-                  Thread.currentThread().interrupt();
-                }
-              }
+              int exitCode = session.run(shellCommand, writeStdoutTo);
+              debug("Session command ended with return code %d", exitCode);
+            } catch (IOException e) {
+              Log.w(TAG, "Shell session of process " + clientPid + " died", e);
             } finally {
-              // mark subprocess as finished no matter what.
-              processDone.countDown();
-            }
-          }
-        });
-
-    executor.execute(
-        new Runnable() {
-          @Override
-          public void run() {
-            checkNotNull(p, "Process is null.");
-            InputStream stdout = p.getInputStream();
-            byte[] buf = new byte[ShellExecSharedConstants.BUFFER_SIZE];
-
-            checkNotNull(stdout, "Process stdout is null.");
-            checkNotNull(writeStdoutTo, "Process write-stdout-to is null.");
-
-            while (true) {
+              session.release();
               try {
-                int read = stdout.read(buf);
-
-                if (read == -1) {
-                  break;
-                }
-
-                writeStdoutTo.write(buf, 0, read);
-                writeStdoutTo.flush();
-              } catch (IOException e) {
-                // A broken pipe exception is quite possible here and not cause for alarm.
-                Log.i(TAG, "Writer disconnected, terminating");
-                break;
+                writeStdoutTo.close();
+              } catch (IOException ioe) {
+                Log.w(TAG, "Close threw an exception", ioe);
               }
             }
-
-            try {
-              writeStdoutTo.close();
-            } catch (IOException ioe) {
-              Log.w(TAG, "Close threw an exception", ioe);
-            }
           }
         });
   }
+
+  private synchronized ShellSession getSession(int clientPid) throws IOException {
+    // Stop the sessions of clients which are gone.
+    for (Iterator<Map.Entry<Integer, ShellSession>> it = sessions.entrySet().iterator();
+        it.hasNext(); ) {
+      Map.Entry<Integer, ShellSession> entry = it.next();
+      if (!entry.getValue().isAlive() || !new File("/proc/" + entry.getKey()).exists()) {
+        entry.getValue().close();
+        it.remove();
+      }
+    }
+    ShellSession session = sessions.get(clientPid);
+    if (session == null) {
+      session = ShellSession.start();
+      sessions.put(clientPid, session);
+    }
+    return session;
+  }
 }
@@ -16,6 +16,8 @@
 
 package androidx.test.services.shellexecutor;
 
+import android.os.Binder;
+import android.os.Bundle;
 import android.os.HandlerThread;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
@@ -23,6 +25,8 @@ import androidx.test.services.speakeasy.SpeakEasyProtocol.PublishResult;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -91,6 +95,57 @@ final class ShellCommandExecutorServer {
               }
             }
           }
+
+          @Override
+          public void executeInSession(
+              String command,
+              List<String> parameters,
+              boolean executeThroughShell,
+              ParcelFileDescriptor pdf) {
+
+            OutputStream outputReceiver = new ParcelFileDescriptor.AutoCloseOutputStream(pdf);
+
+            try {
+              ShellCommand commandObject =
+                  new ShellCommand(
+                      command,
+                      parameters,
+                      Collections.<String, String>emptyMap(),
+                      executeThroughShell,
+                      0L);
+              shellCommandExecutor.executeInSession(
+                  commandObject, Binder.getCallingPid(), outputReceiver);
+            } catch (IOException e) {
+              Log.w(TAG, "Running command in a shell session threw an exception", e);
+              try {
+                outputReceiver.close();
+                pdf.close();
+              } catch (IOException e2) {
+                Log.w(TAG, "Unable to close the output", e2);
+              }
+            }
+          }
+
+          @Override
+          public void executeBatch(
+              List<Bundle> commands, boolean parallel, ParcelFileDescriptor pdf) {
+            OutputStream outputReceiver = new ParcelFileDescriptor.AutoCloseOutputStream(pdf);
+
+            List<ShellCommand> commandObjects = new ArrayList<>();
+            try {
+              for (Bundle command : commands) {
+                commandObjects.add(ShellCommand.fromBundle(command));
+              }
+            } catch (IllegalArgumentException e) {
+              try {
+                outputReceiver.close();
+              } catch (IOException e2) {
+                Log.w(TAG, "Unable to close the output", e2);
+              }
+              throw e;
+            }
+            shellCommandExecutor.executeBatch(commandObjects, parallel, outputReceiver);
+          }
         };
 
     PublishResult result =
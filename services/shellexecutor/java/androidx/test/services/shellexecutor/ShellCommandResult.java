@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.shellexecutor;
+
+/** The result of a {@link ShellCommand} run as part of a batch. */
+public final class ShellCommandResult {
+
+  /** The exit code reported when the command could not run or its exit code is not known. */
+  public static final int UNKNOWN_EXIT_CODE = -1;
+
+  private final int exitCode;
+  private final String output;
+
+  ShellCommandResult(int exitCode, String output) {
+    this.exitCode = exitCode;
+    this.output = output;
+  }
+
+  /**
+   * Returns the exit code of the command, or {@link #UNKNOWN_EXIT_CODE} if it could not run or the
+   * executor does not report exit codes.
+   */
+  public int getExitCode() {
+    return exitCode;
+  }
+
+  /** Returns the output of the command, including what it printed to stderr. */
+  public String getOutput() {
+    return output;
+  }
+}
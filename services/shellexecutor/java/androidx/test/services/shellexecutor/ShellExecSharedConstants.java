@@ -20,4 +20,8 @@ package androidx.test.services.shellexecutor;
 public class ShellExecSharedConstants {
   public static final String BINDER_KEY = "shellExecKey";
   public static final int BUFFER_SIZE = 1024;
+  // The default capacity of a pipe on Linux, thus the most a single read from a pipe returns.
+  static final int PIPE_BUFFER_SIZE = 64 * 1024;
+  // Written instead of the length of an output frame of a batch, followed by the exit code.
+  static final int EXIT_FRAME = -1;
 }
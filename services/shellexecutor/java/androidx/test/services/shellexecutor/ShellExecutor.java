@@ -19,6 +19,7 @@ package androidx.test.services.shellexecutor;
 import android.os.RemoteException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -110,4 +111,34 @@ public interface ShellExecutor {
       Map<String, String> shellEnv,
       boolean executeThroughShell)
       throws ClientNotConnected, IOException, RemoteException;
+
+  /**
+   * Execute commands with elevated permissions in a single call to the executor service and block.
+   * Not supported by older versions of the test services.
+   *
+   * <p>The default implementation runs the commands one after the other through {@link
+   * #executeShellCommandSync(String, List, Map, boolean, long)}, which does not report exit codes.
+   *
+   * @param commands The shell commands to be executed.
+   * @param parallel If set to true, the commands are run at the same time, otherwise one after the
+   *     other.
+   * @return the {@link ShellCommandResult} of each command, in the order of {@code commands}.
+   * @throws IOException if cannot execute commands on executor service.
+   */
+  default List<ShellCommandResult> executeShellCommandsSync(
+      List<ShellCommand> commands, boolean parallel)
+      throws ClientNotConnected, IOException, RemoteException {
+    List<ShellCommandResult> results = new ArrayList<>(commands.size());
+    for (ShellCommand command : commands) {
+      String output =
+          executeShellCommandSync(
+              command.getCommand(),
+              command.getParameters(),
+              command.getShellEnv(),
+              command.executeThroughShell(),
+              command.getTimeoutMs());
+      results.add(new ShellCommandResult(ShellCommandResult.UNKNOWN_EXIT_CODE, output));
+    }
+    return results;
+  }
 }
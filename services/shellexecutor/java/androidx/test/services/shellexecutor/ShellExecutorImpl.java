@@ -30,8 +30,22 @@ public final class ShellExecutorImpl implements ShellExecutor {
 
   private final Context context;
   private final String binderKey;
+  private final boolean useShellSession;
 
   public ShellExecutorImpl(Context context, String binderKey) {
+    this(context, binderKey, false);
+  }
+
+  /**
+   * @param context A context
+   * @param binderKey A string representing the speakeasy binder key
+   * @param useShellSession If set to true, commands are run one after the other in a long lived
+   *     shell kept by the server for this process, which is much faster than starting a process per
+   *     command. Commands which set environment variables or have a timeout, and commands run
+   *     through the shell with parameters, still run in a process of their own. Not supported by
+   *     older versions of the test services.
+   */
+  public ShellExecutorImpl(Context context, String binderKey, boolean useShellSession) {
     if (null == context) {
       throw new NullPointerException("context, cannot be null!");
     }
@@ -42,6 +56,7 @@ public final class ShellExecutorImpl implements ShellExecutor {
       throw new NullPointerException("binderKey, cannot be null!");
     }
     this.binderKey = binderKey;
+    this.useShellSession = useShellSession;
   }
 
   /** {@inheritDoc} */
@@ -61,7 +76,14 @@ public final class ShellExecutorImpl implements ShellExecutor {
       throws IOException {
     try {
       return ShellCommandClient.execOnServerSync(
-          context, binderKey, command, parameters, shellEnv, executeThroughShell, timeoutMs);
+          context,
+          binderKey,
+          command,
+          parameters,
+          shellEnv,
+          executeThroughShell,
+          timeoutMs,
+          useShellSession);
     } catch (ClientNotConnected e) {
       Log.e(TAG, "ShellCommandClient not connected. Is ShellCommandExecutor service started?", e);
       throw new RuntimeException(e);
@@ -94,7 +116,14 @@ public final class ShellExecutorImpl implements ShellExecutor {
       throws IOException, RemoteException {
     try {
       return ShellCommandClient.execOnServer(
-          context, binderKey, command, parameters, shellEnv, executeThroughShell, timeoutMs);
+          context,
+          binderKey,
+          command,
+          parameters,
+          shellEnv,
+          executeThroughShell,
+          timeoutMs,
+          useShellSession);
     } catch (ClientNotConnected e) {
       Log.e(TAG, "ShellCommandClient not connected. Is ShellCommandExecutor service started?", e);
       throw new RuntimeException(e);
@@ -115,4 +144,20 @@ public final class ShellExecutorImpl implements ShellExecutor {
       throws IOException, RemoteException {
     return executeShellCommand(command, parameters, shellEnv, executeThroughShell, 0L);
   }
+
+  /** {@inheritDoc} */
+  @Override
+  public List<ShellCommandResult> executeShellCommandsSync(
+      List<ShellCommand> commands, boolean parallel) throws IOException {
+    try {
+      return ShellCommandClient.execBatchOnServerSync(context, binderKey, commands, parallel);
+    } catch (ClientNotConnected e) {
+      Log.e(TAG, "ShellCommandClient not connected. Is ShellCommandExecutor service started?", e);
+      throw new RuntimeException(e);
+    } catch (RemoteException e) {
+      Log.e(
+          TAG, "ShellCommandClient connection failed. Is ShellCommandExecutor service started?", e);
+      throw new RuntimeException(e);
+    }
+  }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.shellexecutor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A long lived shell which runs commands one after the other, saving the cost of starting a
+ * process for each of them.
+ *
+ * <p>Each command runs in a subshell, so that it cannot change the state of the session, and is
+ * followed by printing a sentinel unique to the session and the exit code of the command. The
+ * output of the command is everything printed before the sentinel.
+ *
+ * <p>A session runs a single command at a time. Callers reserve it with {@link #tryReserve()} and
+ * run commands which find it busy in a process of their own instead.
+ */
+final class ShellSession {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Process process;
+  private final OutputStream stdin;
+  private final InputStream stdout;
+  private final byte[] sentinel;
+  private final byte[] buffer = new byte[ShellExecSharedConstants.PIPE_BUFFER_SIZE];
+  // Bytes read past the sentinel, or which may be the start of it, in buffer.
+  private int buffered = 0;
+  private boolean alive = true;
+  private final AtomicBoolean reserved = new AtomicBoolean();
+
+  private ShellSession(Process process) {
+    this.process = process;
+    this.stdin = process.getOutputStream();
+    this.stdout = process.getInputStream();
+    this.sentinel = ("ShellSession-" + UUID.randomUUID() + ":").getBytes(UTF_8);
+  }
+
+  /** Starts a shell session. */
+  static ShellSession start() throws IOException {
+    ProcessBuilder pb = new ProcessBuilder("sh");
+    pb.redirectErrorStream(true);
+    return new ShellSession(pb.start());
+  }
+
+  /**
+   * Returns whether a session can run {@code command}. Commands with environment variables or a
+   * timeout, and commands run through the shell with parameters, need a process of their own.
+   */
+  static boolean canRun(ShellCommand command) {
+    return command.getShellEnv().isEmpty()
+        && command.getTimeoutMs() <= 0L
+        && (!command.executeThroughShell() || command.getParameters().isEmpty());
+  }
+
+  synchronized boolean isAlive() {
+    return alive;
+  }
+
+  /** Reserves the session for a command, returning false if another command reserved it. */
+  boolean tryReserve() {
+    return reserved.compareAndSet(false, true);
+  }
+
+  /** Releases the session once the command it was reserved for ended. */
+  void release() {
+    reserved.set(false);
+  }
+
+  /**
+   * Runs {@code command} and writes its output to {@code output}. If writing to {@code output}
+   * fails, for instance because the reader went away, the rest of the output is discarded and the
+   * session stays usable.
+   *
+   * @return the exit code of the command
+   * @throws IOException if the session died, in which case it cannot run more commands
+   */
+  synchronized int run(ShellCommand command, OutputStream output) throws IOException {
+    if (!alive) {
+      throw new IOException("The shell session died");
+    }
+    String script;
+    if (command.executeThroughShell()) {
+      script = command.getCommand();
+    } else {
+      StringBuilder quoted = new StringBuilder(quote(command.getCommand()));
+      for (String parameter : command.getParameters()) {
+        quoted.append(' ').append(quote(parameter));
+      }
+      script = quoted.toString();
+    }
+    // eval keeps the session usable if the command is not valid shell syntax.
+    String line =
+        "( eval "
+            + quote(script)
+            + " ) </dev/null 2>&1; echo "
+            + quote(new String(sentinel, UTF_8))
+            + "$?\n";
+    try {
+      stdin.write(line.getBytes(UTF_8));
+      stdin.flush();
+      copyUntilSentinel(new DiscardOnFailureOutputStream(output));
+      return readExitCode();
+    } catch (IOException e) {
+      close();
+      throw e;
+    }
+  }
+
+  /** Stops the shell. */
+  synchronized void close() {
+    alive = false;
+    process.destroy();
+  }
+
+  private void copyUntilSentinel(OutputStream output) throws IOException {
+    while (true) {
+      int index = indexOf(sentinel, buffered);
+      if (index >= 0) {
+        output.write(buffer, 0, index);
+        consume(index + sentinel.length);
+        return;
+      }
+      // The end of the buffer may be the start of the sentinel, keep it.
+      int writable = Math.max(0, buffered - sentinel.length + 1);
+      output.write(buffer, 0, writable);
+      consume(writable);
+      fill();
+    }
+  }
+
+  private int readExitCode() throws IOException {
+    StringBuilder exitCode = new StringBuilder();
+    while (true) {
+      for (int i = 0; i < buffered; i++) {
+        if (buffer[i] == '\n') {
+          consume(i + 1);
+          try {
+            return Integer.parseInt(exitCode.toString().trim());
+          } catch (NumberFormatException e) {
+            throw new IOException("Unexpected exit code " + exitCode, e);
+          }
+        }
+        exitCode.append((char) buffer[i]);
+      }
+      consume(buffered);
+      fill();
+    }
+  }
+
+  private int indexOf(byte[] target, int end) {
+    outer:
+    for (int i = 0; i + target.length <= end; i++) {
+      for (int j = 0; j < target.length; j++) {
+        if (buffer[i + j] != target[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private void consume(int count) {
+    System.arraycopy(buffer, count, buffer, 0, buffered - count);
+    buffered -= count;
+  }
+
+  private void fill() throws IOException {
+    int read = stdout.read(buffer, buffered, buffer.length - buffered);
+    if (read == -1) {
+      throw new IOException("The shell session ended");
+    }
+    buffered += read;
+  }
+
+  private static String quote(String value) {
+    return "'" + value.replace("'", "'\\''") + "'";
+  }
+
+  /**
+   * Stops writing to the output of a command once a write failed, so that the failures of the
+   * client are not mistaken for failures of the shell.
+   */
+  private static final class DiscardOnFailureOutputStream extends OutputStream {
+
+    private final OutputStream output;
+    private boolean failed = false;
+
+    DiscardOnFailureOutputStream(OutputStream output) {
+      this.output = output;
+    }
+
+    @Override
+    public void write(int b) {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      if (failed || len == 0) {
+        return;
+      }
+      try {
+        output.write(b, off, len);
+      } catch (IOException e) {
+        failed = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.shellexecutor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Measures the throughput of {@link ShellCommandClient} against a fake in process server, so that
+ * only the client and binder overhead is measured.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ShellCommandClientThroughputTest {
+
+  private static final String TAG = "ShellCommandClientThroughputTest";
+  private static final String SECRET = "fakeServerSecret";
+  private static final int THREADS = 4;
+  private static final int COMMANDS_PER_THREAD = 250;
+  private static final int COMMANDS_PER_BATCH = 40;
+  private static final int BATCHES = 25;
+
+  /** Echoes the command back, after an optional barrier shared by all the commands. */
+  private static class FakeServer extends Command.Stub {
+    volatile CyclicBarrier barrier;
+
+    @Override
+    public void execute(
+        String command,
+        List<String> parameters,
+        @SuppressWarnings("rawtypes") Map shellEnv,
+        boolean executeThroughShell,
+        ParcelFileDescriptor pfd) {
+      executeWithTimeout(command, parameters, shellEnv, executeThroughShell, pfd, 0L);
+    }
+
+    @Override
+    public void executeWithTimeout(
+        String command,
+        List<String> parameters,
+        @SuppressWarnings("rawtypes") Map shellEnv,
+        boolean executeThroughShell,
+        ParcelFileDescriptor pfd,
+        long timeoutMs) {
+      executeInSession(command, parameters, executeThroughShell, pfd);
+    }
+
+    @Override
+    public void executeInSession(
+        String command,
+        List<String> parameters,
+        boolean executeThroughShell,
+        ParcelFileDescriptor pfd) {
+      OutputStream output = new ParcelFileDescriptor.AutoCloseOutputStream(pfd);
+      try {
+        try {
+          if (barrier != null) {
+            barrier.await(10, TimeUnit.SECONDS);
+          }
+          output.write(command.getBytes("UTF-8"));
+        } finally {
+          output.close();
+        }
+      } catch (Exception e) {
+        Log.e(TAG, "Fake command failed", e);
+      }
+    }
+
+    @Override
+    public void executeBatch(List<Bundle> commands, boolean parallel, ParcelFileDescriptor pfd) {
+      DataOutputStream output =
+          new DataOutputStream(new ParcelFileDescriptor.AutoCloseOutputStream(pfd));
+      try {
+        try {
+          for (int i = 0; i < commands.size(); i++) {
+            byte[] command =
+                ShellCommand.fromBundle(commands.get(i)).getCommand().getBytes("UTF-8");
+            output.writeInt(i);
+            output.writeInt(command.length);
+            output.write(command);
+            output.writeInt(i);
+            output.writeInt(ShellExecSharedConstants.EXIT_FRAME);
+            output.writeInt(0);
+          }
+        } finally {
+          output.close();
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "Fake batch failed", e);
+      }
+    }
+  }
+
+  private final FakeServer server = new FakeServer();
+  private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+  private Context context;
+
+  @Before
+  public void setUp() {
+    context = InstrumentationRegistry.getInstrumentation().getContext();
+    ShellCommandClient.cacheBinder(SECRET, server);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void commandsRunConcurrently() throws Exception {
+    server.barrier = new CyclicBarrier(THREADS);
+
+    // Every command waits for the others, which would time out if the client serialized them.
+    assertThat(runCommands(1)).isEqualTo(THREADS);
+  }
+
+  @Test
+  public void throughput() throws Exception {
+    long start = SystemClock.elapsedRealtime();
+    int commands = runCommands(COMMANDS_PER_THREAD);
+    long durationMs = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+    assertThat(commands).isEqualTo(THREADS * COMMANDS_PER_THREAD);
+    Log.i(
+        TAG,
+        String.format(
+            "Ran %d commands on %d threads in %d ms, %d commands/s",
+            commands, THREADS, durationMs, commands * 1000L / durationMs));
+  }
+
+  @Test
+  public void batchThroughput() throws Exception {
+    List<ShellCommand> commands = new ArrayList<>();
+    for (int i = 0; i < COMMANDS_PER_BATCH; i++) {
+      commands.add(new ShellCommand("command" + i, null, null, false, 0L));
+    }
+
+    long start = SystemClock.elapsedRealtime();
+    for (int i = 0; i < BATCHES; i++) {
+      List<ShellCommandResult> results =
+          ShellCommandClient.execBatchOnServerSync(context, SECRET, commands, false);
+      assertThat(results).hasSize(COMMANDS_PER_BATCH);
+      for (int j = 0; j < COMMANDS_PER_BATCH; j++) {
+        assertThat(results.get(j).getOutput()).isEqualTo("command" + j);
+        assertThat(results.get(j).getExitCode()).isEqualTo(0);
+      }
+    }
+    long durationMs = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+    int count = BATCHES * COMMANDS_PER_BATCH;
+    Log.i(
+        TAG,
+        String.format(
+            "Ran %d commands in batches of %d in %d ms, %d commands/s",
+            count, COMMANDS_PER_BATCH, durationMs, count * 1000L / durationMs));
+  }
+
+  /** Runs commands on every thread, returning the number of commands which succeeded. */
+  private int runCommands(final int commandsPerThread) throws Exception {
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      final String command = "command" + i;
+      results.add(
+          executor.submit(
+              new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                  int succeeded = 0;
+                  for (int j = 0; j < commandsPerThread; j++) {
+                    String output =
+                        ShellCommandClient.execOnServerSync(
+                            context, SECRET, command, null, null, false, 0L);
+                    if (command.equals(output)) {
+                      succeeded++;
+                    }
+                  }
+                  return succeeded;
+                }
+              }));
+    }
+    int succeeded = 0;
+    for (Future<Integer> result : results) {
+      succeeded += result.get(30, TimeUnit.SECONDS);
+    }
+    return succeeded;
+  }
+}
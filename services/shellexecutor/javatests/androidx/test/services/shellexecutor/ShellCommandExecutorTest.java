@@ -17,14 +17,20 @@
 package androidx.test.services.shellexecutor;
 
 import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -70,4 +76,142 @@ public class ShellCommandExecutorTest {
 
     assertThat(outputStream.toString("UTF-8")).containsMatch("Hello Shell Exec");
   }
+
+  @Test
+  public void shellCommandExecutorExecuteInSession() throws IOException, InterruptedException {
+    assertThat(executeInSession("echo", ImmutableList.of("Hello", "it's me"), false))
+        .isEqualTo("Hello it's me\n");
+    // Commands cannot change the state of the session.
+    assertThat(executeInSession("cd /; export NAME=value; pwd", ImmutableList.of(), true))
+        .isEqualTo("/\n");
+    assertThat(executeInSession("echo \"$NAME\"", ImmutableList.of(), true)).isEqualTo("\n");
+    // Invalid commands do not break the session.
+    assertThat(executeInSession("echo '", ImmutableList.of(), true)).isNotEmpty();
+    assertThat(executeInSession("printf Hello; exit 3", ImmutableList.of(), true))
+        .isEqualTo("Hello");
+  }
+
+  @Test
+  public void shellCommandExecutorExecuteInSession_survivesClientFailures()
+      throws IOException, InterruptedException {
+    CountDownLatch closeLatch = new CountDownLatch(1);
+    OutputStream failingStream =
+        new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            throw new IOException("Reader went away");
+          }
+
+          @Override
+          public void close() {
+            closeLatch.countDown();
+          }
+        };
+    shellCommandExecutor.executeInSession(
+        new ShellCommand("echo lost", null, null, true, 0), /* clientPid= */ 1, failingStream);
+    assertThat(closeLatch.await(5, SECONDS)).isTrue();
+
+    assertThat(executeInSession("echo still alive", ImmutableList.of(), true))
+        .isEqualTo("still alive\n");
+  }
+
+  @Test
+  public void shellCommandExecutorExecuteInSession_busySessionFallsBack()
+      throws IOException, InterruptedException {
+    CountDownLatch closeLatch = new CountDownLatch(1);
+    ByteArrayOutputStream slowOutput =
+        new ByteArrayOutputStream() {
+          @Override
+          public void close() throws IOException {
+            super.close();
+            closeLatch.countDown();
+          }
+        };
+    shellCommandExecutor.executeInSession(
+        new ShellCommand("sleep 3", null, null, true, 0), /* clientPid= */ 1, slowOutput);
+
+    // Does not wait for the sleep to end.
+    long start = System.nanoTime();
+    assertThat(executeInSession("echo concurrent", ImmutableList.of(), true))
+        .isEqualTo("concurrent\n");
+    assertThat(NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000L);
+    assertThat(closeLatch.await(5, SECONDS)).isTrue();
+  }
+
+  @Test
+  public void shellCommandExecutorExecuteBatch() throws IOException, InterruptedException {
+    List<ShellCommand> commands =
+        ImmutableList.of(
+            new ShellCommand("echo", ImmutableList.of("first"), null, false, 0),
+            new ShellCommand(
+                "echo $NAME; exit 3", null, ImmutableMap.of("NAME", "second"), true, 0),
+            new ShellCommand("sleep 10", null, null, true, /* timeoutMs= */ 100));
+
+    for (boolean parallel : new boolean[] {false, true}) {
+      CountDownLatch closeLatch = new CountDownLatch(1);
+      ByteArrayOutputStream outputStream =
+          new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+              super.close();
+              closeLatch.countDown();
+            }
+          };
+
+      shellCommandExecutor.executeBatch(commands, parallel, outputStream);
+
+      assertThat(closeLatch.await(5, SECONDS)).isTrue();
+      String[] outputs = {"", "", ""};
+      Integer[] exitCodes = new Integer[3];
+      DataInputStream frames =
+          new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+      while (true) {
+        int index;
+        try {
+          index = frames.readInt();
+        } catch (EOFException e) {
+          break;
+        }
+        int length = frames.readInt();
+        if (length == ShellExecSharedConstants.EXIT_FRAME) {
+          exitCodes[index] = frames.readInt();
+        } else {
+          byte[] output = new byte[length];
+          frames.readFully(output);
+          outputs[index] += new String(output, "UTF-8");
+        }
+      }
+      assertThat(outputs).asList().containsExactly("first\n", "second\n", "").inOrder();
+      assertThat(exitCodes[0]).isEqualTo(0);
+      assertThat(exitCodes[1]).isEqualTo(3);
+      // Destroyed by the timeout.
+      assertThat(exitCodes[2]).isNotEqualTo(0);
+    }
+  }
+
+  private String executeInSession(
+      String command, ImmutableList<String> parameters, boolean executeThroughShell)
+      throws IOException, InterruptedException {
+    CountDownLatch closeLatch = new CountDownLatch(1);
+    ByteArrayOutputStream outputStream =
+        new ByteArrayOutputStream() {
+          @Override
+          public void close() throws IOException {
+            super.close();
+            closeLatch.countDown();
+          }
+        };
+    ShellCommand shellCommand =
+        new ShellCommand(
+            command,
+            parameters,
+            /* shellEnv */ ImmutableMap.of(),
+            executeThroughShell,
+            /* timeoutMs */ 0);
+
+    shellCommandExecutor.executeInSession(shellCommand, /* clientPid= */ 1, outputStream);
+
+    assertThat(closeLatch.await(5, SECONDS)).isTrue();
+    return outputStream.toString("UTF-8");
+  }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package androidx.test.services.shellexecutor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Measures the throughput of the output of {@link ShellCommandExecutor}. */
+@RunWith(AndroidJUnit4.class)
+public class ShellCommandExecutorThroughputTest {
+
+  private static final String TAG = "ShellCommandExecutorThroughputTest";
+  private static final int OUTPUT_MB = 50;
+
+  private static final ExecutorService executor =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("ShellCommandExecutorThroughputTest#%d")
+              .build());
+
+  private final ShellCommandExecutor shellCommandExecutor = new ShellCommandExecutor(executor);
+
+  /** Counts the bytes written to it. */
+  private static class CountingOutputStream extends OutputStream {
+    final CountDownLatch closeLatch = new CountDownLatch(1);
+    volatile long count = 0;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+
+    @Override
+    public void close() {
+      closeLatch.countDown();
+    }
+  }
+
+  @Test
+  public void largeOutput() throws Exception {
+    CountingOutputStream outputStream = new CountingOutputStream();
+    ShellCommand shellCommand =
+        new ShellCommand(
+            "dd if=/dev/zero bs=1048576 count=" + OUTPUT_MB + " 2>/dev/null",
+            /* parameters= */ ImmutableList.of(),
+            /* shellEnv */ ImmutableMap.of(),
+            /* executeThroughShell= */ true,
+            /* timeoutMs */ 0);
+
+    long start = SystemClock.elapsedRealtime();
+    shellCommandExecutor.execute(shellCommand, outputStream);
+    assertThat(outputStream.closeLatch.await(60, SECONDS)).isTrue();
+    long durationMs = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+    assertThat(outputStream.count).isEqualTo(OUTPUT_MB * 1024L * 1024L);
+    Log.i(
+        TAG,
+        String.format(
+            "Streamed %d MB in %d ms, %d MB/s",
+            OUTPUT_MB, durationMs, OUTPUT_MB * 1000L / durationMs));
+  }
+}
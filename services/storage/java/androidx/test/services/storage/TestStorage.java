@@ -32,13 +32,18 @@ import androidx.test.services.storage.file.HostedFile.FileHost;
 import androidx.test.services.storage.file.PropertyFile;
 import androidx.test.services.storage.file.PropertyFile.Authority;
 import androidx.test.services.storage.internal.TestStorageUtil;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.HashMap;
@@ -52,6 +57,11 @@ import java.util.Map;
 public final class TestStorage implements PlatformTestStorage {
   private static final String TAG = TestStorage.class.getSimpleName();
   private static final String PROPERTIES_FILE_NAME = "properties.dat";
+  // The number of records appended by this process after which the properties file is compacted.
+  private static final int COMPACTION_INTERVAL = 1024;
+
+  private static final Object propertiesLock = new Object();
+  private static int appendedRecords = 0;
 
   private final ContentResolver contentResolver;
 
@@ -245,6 +255,10 @@ public final class TestStorage implements PlatformTestStorage {
    *
    * <p>Adding a property with the same name would append new values and overwrite the old values if
    * keys already exist.
+   *
+   * <p>The properties are appended to the properties file as records, each holding the name and
+   * the serialized value of a property, rather than rewriting every property recorded so far. The
+   * file is compacted to a record per property every 1024 appended records.
    */
   @Override
   public void addOutputProperties(Map<String, Serializable> properties) {
@@ -252,25 +266,18 @@ public final class TestStorage implements PlatformTestStorage {
       return;
     }
 
-    Map<String, Serializable> allProperties = getOutputProperties();
-    allProperties.putAll(properties);
-
-    Uri propertyFileUri = getPropertyFileUri();
-    ObjectOutputStream objectOutputStream = null;
+    byte[] records;
     try {
-      // Buffered to improve performance and avoid the unbuffered IO violation when running under
-      // strict mode.
-      OutputStream outputStream =
-          new BufferedOutputStream(
-              TestStorageUtil.getOutputStream(propertyFileUri, contentResolver));
-      objectOutputStream = new ObjectOutputStream(outputStream);
-      objectOutputStream.writeObject(allProperties);
-    } catch (FileNotFoundException ex) {
-      throw new TestStorageException("Unable to create file", ex);
+      records = toRecords(properties);
     } catch (IOException e) {
-      throw new TestStorageException("I/O error occurred during reading test properties.", e);
-    } finally {
-      silentlyClose(objectOutputStream);
+      throw new TestStorageException("Unable to serialize test properties.", e);
+    }
+    synchronized (propertiesLock) {
+      writePropertyFile(records, true);
+      appendedRecords += properties.size();
+      if (appendedRecords >= COMPACTION_INTERVAL) {
+        compactPropertyFile();
+      }
     }
   }
 
@@ -282,27 +289,102 @@ public final class TestStorage implements PlatformTestStorage {
   public Map<String, Serializable> getOutputProperties() {
     Uri propertyFileUri = getPropertyFileUri();
 
-    ObjectInputStream in = null;
-    InputStream rawStream = null;
+    Map<String, Serializable> properties = new HashMap<>();
+    DataInputStream in = null;
     try {
-      rawStream = TestStorageUtil.getInputStream(propertyFileUri, contentResolver);
-      in = new ObjectInputStream(rawStream);
-      @SuppressWarnings("unchecked")
-      Map<String, Serializable> recordedProperties = (Map<String, Serializable>) in.readObject();
-      if (recordedProperties == null) {
-        return new HashMap<>();
-      } else {
-        return recordedProperties;
-      }
+      in = new DataInputStream(TestStorageUtil.getInputStream(propertyFileUri, contentResolver));
+      readProperties(in, properties);
     } catch (FileNotFoundException fnfe) {
       Log.i(TAG, String.format("%s: does not exist, we must be the first call.", propertyFileUri));
     } catch (IOException | ClassNotFoundException e) {
+      // A record may be truncated if a test process died while appending it.
       Log.w(TAG, "Failed to read recorded stats!", e);
     } finally {
       silentlyClose(in);
-      silentlyClose(rawStream);
     }
-    return new HashMap<>();
+    return properties;
+  }
+
+  /** Rewrites the properties file with a single record per property. */
+  private void compactPropertyFile() {
+    try {
+      writePropertyFile(toRecords(getOutputProperties()), false);
+    } catch (IOException e) {
+      throw new TestStorageException("Unable to serialize test properties.", e);
+    }
+    appendedRecords = 0;
+  }
+
+  private void writePropertyFile(byte[] records, boolean append) {
+    Uri propertyFileUri = getPropertyFileUri();
+    OutputStream outputStream = null;
+    try {
+      outputStream = TestStorageUtil.getOutputStream(propertyFileUri, contentResolver, append);
+      // Written at once, so that records appended by different processes are not interleaved.
+      outputStream.write(records);
+    } catch (FileNotFoundException ex) {
+      throw new TestStorageException("Unable to create file", ex);
+    } catch (IOException e) {
+      throw new TestStorageException("I/O error occurred during writing test properties.", e);
+    } finally {
+      silentlyClose(outputStream);
+    }
+  }
+
+  /** Returns the records of {@code properties}, each the name, length and serialized value. */
+  private static byte[] toRecords(Map<String, Serializable> properties) throws IOException {
+    ByteArrayOutputStream records = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(records);
+    for (Map.Entry<String, Serializable> property : properties.entrySet()) {
+      ByteArrayOutputStream value = new ByteArrayOutputStream();
+      ObjectOutputStream valueOut = new ObjectOutputStream(value);
+      valueOut.writeObject(property.getValue());
+      valueOut.close();
+
+      out.writeUTF(property.getKey());
+      out.writeInt(value.size());
+      value.writeTo(out);
+    }
+    out.flush();
+    return records.toByteArray();
+  }
+
+  /**
+   * Reads the records of a properties file into {@code properties}, the latest value of a property
+   * overwriting the previous ones. Files written as a single serialized map by earlier versions are
+   * read as well.
+   */
+  private static void readProperties(DataInputStream in, Map<String, Serializable> properties)
+      throws IOException, ClassNotFoundException {
+    in.mark(2);
+    int magic;
+    try {
+      magic = in.readUnsignedShort();
+    } catch (EOFException e) {
+      return;
+    }
+    in.reset();
+    if (magic == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF)) {
+      @SuppressWarnings("unchecked")
+      Map<String, Serializable> recordedProperties =
+          (Map<String, Serializable>) new ObjectInputStream(in).readObject();
+      if (recordedProperties != null) {
+        properties.putAll(recordedProperties);
+      }
+    }
+
+    while (true) {
+      String name;
+      try {
+        name = in.readUTF();
+      } catch (EOFException e) {
+        return;
+      }
+      byte[] value = new byte[in.readInt()];
+      in.readFully(value);
+      properties.put(
+          name, (Serializable) new ObjectInputStream(new ByteArrayInputStream(value)).readObject());
+    }
   }
 
   /**
@@ -21,13 +21,15 @@ import static junit.framework.TestCase.fail;
 import static org.junit.Assert.assertEquals;
 
 import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.test.services.storage.file.HostedFile;
 import androidx.test.services.storage.internal.TestStorageUtil;
 import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
@@ -35,6 +37,7 @@ import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -43,10 +46,18 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public final class TestStorageTest {
 
+  private static final String TAG = "TestStorageTest";
   private static final String OUTPUT_PATH = "parent_dir/output_file";
+  private static final int BENCHMARK_PROPERTIES = 10000;
 
   private final TestStorage testStorage = new TestStorage();
 
+  @Before
+  public void clearOutputProperties() throws IOException {
+    // Truncates the properties file left by other tests.
+    openPropertiesFile().close();
+  }
+
   @Test
   public void readNonExistentInputFile() {
     try {
@@ -81,18 +92,53 @@ public final class TestStorageTest {
     propertyMap.put("property-b", "test-updated");
     testStorage.addOutputProperties(new HashMap<String, Serializable>(propertyMap));
 
-    Uri dataUri = HostedFile.buildUri(HostedFile.FileHost.EXPORT_PROPERTIES, "properties.dat");
-    InputStream rawStream =
-        TestStorageUtil.getInputStream(dataUri, getApplicationContext().getContentResolver());
+    assertEquals(
+        "Properties not written to the properties file",
+        propertyMap,
+        testStorage.getOutputProperties());
+  }
 
-    ObjectInputStream in = null;
-    try {
-      in = new ObjectInputStream(rawStream);
-      Map<String, Serializable> recordedStats = (Map<String, Serializable>) in.readObject();
-      assertEquals("Properties not written to the properties file", propertyMap, recordedStats);
-    } catch (IOException | ClassNotFoundException e) {
-      closeInputStream(in);
+  @Test
+  public void addOutputProperties_toPropertiesOfEarlierVersions() throws Exception {
+    HashMap<String, Serializable> earlierProperties = new HashMap<>();
+    earlierProperties.put("property-a", "test");
+    earlierProperties.put("property-b", "test");
+    try (ObjectOutputStream out = new ObjectOutputStream(openPropertiesFile())) {
+      out.writeObject(earlierProperties);
+    }
+
+    Map<String, Serializable> propertyMap = new HashMap<String, Serializable>();
+    propertyMap.put("property-b", "test-updated");
+    propertyMap.put("property-c", 3);
+    testStorage.addOutputProperties(propertyMap);
+
+    Map<String, Serializable> expected = new HashMap<>(earlierProperties);
+    expected.putAll(propertyMap);
+    assertThat(testStorage.getOutputProperties()).isEqualTo(expected);
+  }
+
+  @Test
+  public void addOutputProperties_benchmark() {
+    long start = SystemClock.elapsedRealtime();
+    for (int i = 0; i < BENCHMARK_PROPERTIES; i++) {
+      Map<String, Serializable> propertyMap = new HashMap<String, Serializable>();
+      propertyMap.put("property-" + i, i);
+      testStorage.addOutputProperties(propertyMap);
     }
+    long durationMs = SystemClock.elapsedRealtime() - start;
+
+    Map<String, Serializable> recordedProperties = testStorage.getOutputProperties();
+    assertThat(recordedProperties).hasSize(BENCHMARK_PROPERTIES);
+    assertThat(recordedProperties).containsEntry("property-0", 0);
+    assertThat(recordedProperties)
+        .containsEntry("property-" + (BENCHMARK_PROPERTIES - 1), BENCHMARK_PROPERTIES - 1);
+    Log.i(
+        TAG,
+        String.format(
+            "Added %d output properties in %d ms, %d us per call",
+            BENCHMARK_PROPERTIES,
+            durationMs,
+            durationMs * 1000 / BENCHMARK_PROPERTIES));
   }
 
   @Test
@@ -130,13 +176,8 @@ public final class TestStorageTest {
     assertThat(new String(data, Charset.defaultCharset())).isEqualTo("hello world");
   }
 
-  private void closeInputStream(ObjectInputStream in) {
-    if (in != null) {
-      try {
-        in.close();
-      } catch (IOException e) {
-        // do nothing.
-      }
-    }
+  private static OutputStream openPropertiesFile() throws FileNotFoundException {
+    Uri dataUri = HostedFile.buildUri(HostedFile.FileHost.EXPORT_PROPERTIES, "properties.dat");
+    return TestStorageUtil.getOutputStream(dataUri, getApplicationContext().getContentResolver());
   }
 }